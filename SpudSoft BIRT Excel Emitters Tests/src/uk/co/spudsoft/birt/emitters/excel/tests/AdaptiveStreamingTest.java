@@ -0,0 +1,63 @@
+package uk.co.spudsoft.birt.emitters.excel.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.eclipse.birt.core.exception.BirtException;
+import org.junit.Test;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.STCellType;
+
+public class AdaptiveStreamingTest extends ReportRunner {
+	
+	@Test
+	public void testSmallXlsxStaysInMemory() throws BirtException, IOException {
+
+		streamingThreshold = 1000;
+		InputStream inputStream = runAndRenderReport("Grouping.rptdesign", "xlsx");
+		assertNotNull(inputStream);
+		try {
+			
+			XSSFWorkbook workbook = new XSSFWorkbook(inputStream);
+			assertNotNull(workbook);
+			
+			assertEquals( 3, workbook.getNumberOfSheets() );
+			XSSFSheet sheet0 = workbook.getSheetAt(0);
+			
+			// SXSSF would have lost the outlines and written every string inline
+			assertEquals( 1, sheet0.getRow( 1 ).getCTRow().getOutlineLevel() );
+			assertEquals( 0, sheet0.getRow( 3 ).getCTRow().getOutlineLevel() );
+			assertEquals( STCellType.S, sheet0.getRow( 0 ).getCell( 0 ).getCTCell().getT() );
+			assertTrue( workbook.getSharedStringSource().getUniqueCount() > 0 );
+			
+		} finally {
+			inputStream.close();
+		}
+	}
+	
+	@Test
+	public void testMegaXlsxAdaptive() throws BirtException, IOException, XMLStreamException {
+
+		streamingThreshold = 5000;
+		InputStream inputStream = runAndRenderReport("MegaSize.rptdesign", "xlsx");
+		assertNotNull(inputStream);
+		try {
+			
+			// More rows than xls allows, none of them written twice or out of order, with their values and styles intact
+			MegaSizeChecker checker = new MegaSizeChecker();
+			assertTrue( this.countRowsInFirstSheet(inputStream, checker) > 65536 );
+			checker.assertComplete( 65536 );
+			
+		} finally {
+			inputStream.close();
+		}
+	}
+	
+}
@@ -0,0 +1,158 @@
+package uk.co.spudsoft.birt.emitters.excel.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.birt.report.engine.css.engine.CSSEngine;
+import org.eclipse.birt.report.engine.css.engine.StyleConstants;
+import org.eclipse.birt.report.engine.css.engine.value.StringValue;
+import org.junit.Test;
+
+import uk.co.spudsoft.birt.emitters.excel.AreaBorders;
+import uk.co.spudsoft.birt.emitters.excel.AreaBordersIndex;
+import uk.co.spudsoft.birt.emitters.excel.BirtStyle;
+
+/**
+ * Check that AreaBordersIndex gives the same answers as considering every border, as HandlerState used to.
+ * <br/>
+ * The index may return borders that cannot apply to a cell, so the answers are compared after discarding those,
+ * in the same way that StyleManagerUtils.applyAreaBordersToCell does.
+ */
+public class AreaBordersIndexTest {
+
+	private static final int[] BORDER_PROPERTIES = new int[] {
+		StyleConstants.STYLE_BORDER_TOP_STYLE, StyleConstants.STYLE_BORDER_TOP_WIDTH, StyleConstants.STYLE_BORDER_TOP_COLOR,
+		StyleConstants.STYLE_BORDER_LEFT_STYLE, StyleConstants.STYLE_BORDER_LEFT_WIDTH, StyleConstants.STYLE_BORDER_LEFT_COLOR,
+		StyleConstants.STYLE_BORDER_RIGHT_STYLE, StyleConstants.STYLE_BORDER_RIGHT_WIDTH, StyleConstants.STYLE_BORDER_RIGHT_COLOR,
+		StyleConstants.STYLE_BORDER_BOTTOM_STYLE, StyleConstants.STYLE_BORDER_BOTTOM_WIDTH, StyleConstants.STYLE_BORDER_BOTTOM_COLOR,
+	};
+	private static final String[] BORDER_VALUES = new String[] { "solid", "thin", "black" };
+
+	private static AreaBorders createBorders( boolean isMergedCells, int top, int left, int bottom, int right ) {
+		BirtStyle style = new BirtStyle( (CSSEngine)null );
+		for( int i = 0; i < BORDER_PROPERTIES.length; ++i ) {
+			style.setProperty( BORDER_PROPERTIES[ i ], new StringValue( StringValue.CSS_IDENT, BORDER_VALUES[ i % 3 ] ) );
+		}
+		AreaBorders result = AreaBorders.create( isMergedCells, bottom, left, right, top, style );
+		assertNotNull( result );
+		return result;
+	}
+
+	/**
+	 * The conditions under which StyleManagerUtils.applyAreaBordersToCell uses a border for a cell.
+	 */
+	private static boolean appliesToCell( AreaBorders areaBorders, int row, int col ) {
+		boolean inRows = ( areaBorders.top <= row ) && ( ( areaBorders.bottom < 0 ) || ( areaBorders.bottom >= row ) );
+		boolean inCols = ( areaBorders.left <= col ) && ( areaBorders.right >= col );
+		return ( ( areaBorders.bottom == row ) && inCols )
+				|| ( ( areaBorders.left == col ) && inRows )
+				|| ( ( areaBorders.right == col ) && inRows )
+				|| ( ( areaBorders.top == row ) && inCols );
+	}
+
+	private static List<AreaBorders> applying( List<AreaBorders> candidates, int row, int col ) {
+		List<AreaBorders> result = new ArrayList<AreaBorders>();
+		for( AreaBorders areaBorders : candidates ) {
+			if( appliesToCell( areaBorders, row, col ) ) {
+				result.add( areaBorders );
+			}
+		}
+		return result;
+	}
+
+	private static List<AreaBorders> mergedOnRow( List<AreaBorders> candidates, int row ) {
+		List<AreaBorders> result = new ArrayList<AreaBorders>();
+		for( AreaBorders areaBorders : candidates ) {
+			if( areaBorders.isMergedCells && ( areaBorders.top <= row ) && ( areaBorders.bottom >= row ) ) {
+				result.add( areaBorders );
+			}
+		}
+		return result;
+	}
+
+	private static void assertSameAnswers( AreaBordersIndex index, List<AreaBorders> borders, int row ) {
+		assertEquals( "Merged cells on row " + row, mergedOnRow( borders, row ), mergedOnRow( index.getBorders( row ), row ) );
+		for( int col = 0; col < 16; ++col ) {
+			assertEquals( "Borders for [" + row + "," + col + "]", applying( borders, row, col ), applying( index.findBorders( row, col ), row, col ) );
+		}
+	}
+
+	@Test
+	public void testTableBordersStayActive() {
+		AreaBordersIndex index = new AreaBordersIndex();
+		List<AreaBorders> borders = new ArrayList<AreaBorders>();
+
+		// A table with no bottom row yet, a merged cell and a row, both of which end long before the last query
+		AreaBorders table = createBorders( false, 0, 0, -1, 5 );
+		AreaBorders merged = createBorders( true, 1, 2, 3, 4 );
+		AreaBorders row = createBorders( false, 2, 0, 2, 5 );
+		index.add( table );
+		borders.add( table );
+		index.add( merged );
+		borders.add( merged );
+		index.add( row );
+		borders.add( row );
+
+		for( int r = 0; r < 10; ++r ) {
+			assertSameAnswers( index, borders, r );
+		}
+		// A nested table returning to the row that it started on
+		assertSameAnswers( index, borders, 2 );
+
+		index.remove( table );
+		borders.remove( table );
+		assertSameAnswers( index, borders, 10 );
+	}
+
+	@Test
+	public void testRandomBorders() {
+		Random random = new Random( 21 );
+		AreaBordersIndex index = new AreaBordersIndex();
+		List<AreaBorders> borders = new ArrayList<AreaBorders>();
+		List<AreaBorders> openTables = new ArrayList<AreaBorders>();
+
+		for( int r = 0; r < 200; ++r ) {
+			if( random.nextInt( 20 ) == 0 ) {
+				int left = random.nextInt( 8 );
+				AreaBorders table = createBorders( false, r, left, -1, left + random.nextInt( 6 ) );
+				index.add( table );
+				borders.add( table );
+				openTables.add( table );
+			}
+			if( ( ! openTables.isEmpty() ) && ( random.nextInt( 15 ) == 0 ) ) {
+				AreaBorders table = openTables.remove( random.nextInt( openTables.size() ) );
+				index.remove( table );
+				borders.remove( table );
+			}
+			AreaBorders row = createBorders( false, r, 0, r, 10 );
+			index.add( row );
+			borders.add( row );
+			if( random.nextInt( 4 ) == 0 ) {
+				int left = random.nextInt( 10 );
+				AreaBorders merged = createBorders( true, r, left, r + random.nextInt( 4 ), left + random.nextInt( 3 ) );
+				index.add( merged );
+				borders.add( merged );
+			}
+
+			assertSameAnswers( index, borders, r );
+			if( random.nextInt( 10 ) == 0 ) {
+				// A nested table returning to the row that it started on
+				assertSameAnswers( index, borders, Math.max( 0, r - 1 - random.nextInt( 8 ) ) );
+			}
+
+			if( random.nextInt( 2 ) == 0 ) {
+				index.remove( row );
+				borders.remove( row );
+			}
+		}
+
+		index.clear();
+		borders.clear();
+		assertSameAnswers( index, borders, 0 );
+	}
+
+}
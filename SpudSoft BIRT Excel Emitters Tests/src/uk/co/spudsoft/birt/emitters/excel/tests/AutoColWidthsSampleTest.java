@@ -0,0 +1,127 @@
+package uk.co.spudsoft.birt.emitters.excel.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import uk.co.spudsoft.birt.emitters.excel.ExcelEmitter;
+
+/**
+ * Check the rows that are considered when calculating column widths.
+ * <br/>
+ * In AutoColWidthsSample.rptdesign the longest name is on row 30, beyond the default sample of detail rows,
+ * and the longest description is on row 5, within it.
+ */
+public class AutoColWidthsSampleTest extends ReportRunner {
+
+	/**
+	 * The widths calculated from the default sample of detail rows.
+	 */
+	private static final int[] SAMPLED_WIDTHS = { 6127, 2048, 4999, 3812, 3812, 2048, 3166, 2822, 2048 };
+	
+	@Test
+	public void testFullScanFindsLongestValue() throws Exception {
+		
+		autoColWidthsSampleRows = 0;
+		geometryMode = ExcelEmitter.GEOMETRY_APPROXIMATE;
+		InputStream inputStream = runAndRenderReport("AutoColWidthsSample.rptdesign", "xlsx");
+		assertNotNull(inputStream);
+		try {
+			XSSFWorkbook workbook = new XSSFWorkbook(inputStream);
+			assertNotNull(workbook);
+			
+			Sheet sheet = workbook.getSheetAt(0);
+			assertEquals(41, this.firstNullRow(sheet));
+			
+			Cell longestName = sheet.getRow(30).getCell(0);
+			assertEquals( "Row 30 is much longer than any of the rows in the sample", longestName.getStringCellValue() );
+			Cell longestDescription = sheet.getRow(5).getCell(1);
+			assertEquals( "Row 5 is in the sample and longer than the others", longestDescription.getStringCellValue() );
+			
+			assertEquals( approximateColumnWidth( workbook, longestName ), sheet.getColumnWidth( 0 ) );
+			assertEquals( approximateColumnWidth( workbook, longestDescription ), sheet.getColumnWidth( 1 ) );
+			
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	@Test
+	public void testSampleMissesLongestValue() throws Exception {
+		
+		geometryMode = ExcelEmitter.GEOMETRY_APPROXIMATE;
+		InputStream inputStream = runAndRenderReport("AutoColWidthsSample.rptdesign", "xlsx");
+		assertNotNull(inputStream);
+		try {
+			XSSFWorkbook workbook = new XSSFWorkbook(inputStream);
+			assertNotNull(workbook);
+			
+			Sheet sheet = workbook.getSheetAt(0);
+			assertEquals(41, this.firstNullRow(sheet));
+			
+			// The names in the sample all fit within the default width, the longest name is not sampled
+			Cell longestName = sheet.getRow(30).getCell(0);
+			assertTrue( approximateColumnWidth( workbook, longestName ) > 256 * sheet.getDefaultColumnWidth() );
+			assertEquals( 256 * sheet.getDefaultColumnWidth(), sheet.getColumnWidth( 0 ) );
+			assertEquals( approximateColumnWidth( workbook, sheet.getRow(5).getCell(1) ), sheet.getColumnWidth( 1 ) );
+			
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	@Test
+	public void testFullScan() throws Exception {
+		
+		autoColWidthsSampleRows = 0;
+		InputStream inputStream = runAndRenderReport("AutoColWidths.rptdesign", "xlsx");
+		assertNotNull(inputStream);
+		try {
+			XSSFWorkbook workbook = new XSSFWorkbook(inputStream);
+			assertNotNull(workbook);
+			
+			Sheet sheet = workbook.getSheetAt(0);
+			assertEquals(23, this.firstNullRow(sheet));
+			
+			// Considering every detail row can only make columns wider
+			for( int col = 0; col < SAMPLED_WIDTHS.length; ++col ) {
+				assertTrue( "Column " + col + " is " + sheet.getColumnWidth( col ), sheet.getColumnWidth( col ) >= SAMPLED_WIDTHS[ col ] );
+			}
+			
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	@Test
+	public void testPercentile() throws Exception {
+		
+		autoColWidthsPercentile = 50;
+		InputStream inputStream = runAndRenderReport("AutoColWidths.rptdesign", "xlsx");
+		assertNotNull(inputStream);
+		try {
+			XSSFWorkbook workbook = new XSSFWorkbook(inputStream);
+			assertNotNull(workbook);
+			
+			Sheet sheet = workbook.getSheetAt(0);
+			assertEquals(23, this.firstNullRow(sheet));
+			
+			// Ignoring the widest cells can only make columns narrower, but never narrower than the default
+			for( int col = 0; col < SAMPLED_WIDTHS.length; ++col ) {
+				assertTrue( "Column " + col + " is " + sheet.getColumnWidth( col ), sheet.getColumnWidth( col ) <= SAMPLED_WIDTHS[ col ] );
+				assertTrue( "Column " + col + " is " + sheet.getColumnWidth( col ), sheet.getColumnWidth( col ) >= 256 * sheet.getDefaultColumnWidth() );
+			}
+			
+		} finally {
+			inputStream.close();
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+package uk.co.spudsoft.birt.emitters.excel.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.eclipse.birt.core.exception.BirtException;
+import org.junit.Test;
+
+/**
+ * Check that cell handlers reused from one cell to the next carry nothing over.
+ * <br/>
+ * Each row of CellReuse.rptdesign has a nested grid between a rich text cell and a hyperlink,
+ * followed by a plain cell and another rich text cell, which is followed by the plain cell at the start of the next row.
+ */
+public class CellReuseTest extends ReportRunner {
+
+	private static void assertPlain( Workbook workbook, Cell cell ) {
+		String where = "[" + cell.getRowIndex() + "," + cell.getColumnIndex() + "]";
+		assertNull( "Hyperlink at " + where, cell.getHyperlink() );
+		assertEquals( "Boldness at " + where, Font.BOLDWEIGHT_NORMAL, workbook.getFontAt( cell.getCellStyle().getFontIndex() ).getBoldweight() );
+		if( cell.getCellType() == Cell.CELL_TYPE_STRING ) {
+			assertEquals( "Formatting runs at " + where, 0, cell.getRichStringCellValue().numFormattingRuns() );
+		}
+	}
+
+	@Test
+	public void testNoStateCarriedBetweenCells() throws BirtException, IOException {
+
+		InputStream inputStream = runAndRenderReport("CellReuse.rptdesign", "xlsx");
+		assertNotNull(inputStream);
+		try {
+			XSSFWorkbook workbook = new XSSFWorkbook(inputStream);
+			assertNotNull(workbook);
+
+			assertEquals( 1, workbook.getNumberOfSheets() );
+			Sheet sheet = workbook.getSheetAt(0);
+
+			int plainCells = 0;
+			int richCells = 0;
+			int nestedCells = 0;
+			int linkCells = 0;
+			int numericCells = 0;
+			for( Row row : sheet ) {
+				for( Cell cell : row ) {
+					if( cell.getCellType() == Cell.CELL_TYPE_NUMERIC ) {
+						assertPlain( workbook, cell );
+						++numericCells;
+					} else if( cell.getCellType() == Cell.CELL_TYPE_STRING ) {
+						String value = cell.getStringCellValue().trim();
+						if( value.startsWith( "Bold " ) ) {
+							assertNull( cell.getHyperlink() );
+							assertTrue( cell.getRichStringCellValue().numFormattingRuns() > 0 );
+							++richCells;
+						} else if( value.startsWith( "Link " ) ) {
+							assertNotNull( cell.getHyperlink() );
+							assertEquals( "http://www.spudsoft.co.uk/?p=" + value.substring( 5 ), cell.getHyperlink().getAddress() );
+							assertEquals( 0, cell.getRichStringCellValue().numFormattingRuns() );
+							++linkCells;
+						} else {
+							assertPlain( workbook, cell );
+							if( value.startsWith( "Plain " ) ) {
+								++plainCells;
+							} else if( value.equals( "Nested" ) ) {
+								++nestedCells;
+							}
+						}
+					}
+				}
+			}
+
+			assertEquals( 5, plainCells );
+			assertEquals( 10, richCells );
+			// One in the header
+			assertEquals( 6, nestedCells );
+			assertEquals( 5, linkCells );
+			assertEquals( 5, numericCells );
+
+		} finally {
+			inputStream.close();
+		}
+	}
+
+}
@@ -0,0 +1,124 @@
+package uk.co.spudsoft.birt.emitters.excel.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import uk.co.spudsoft.birt.emitters.excel.Coordinate;
+import uk.co.spudsoft.birt.emitters.excel.CoordinateMap;
+
+/**
+ * Check that CoordinateMap behaves like a HashMap keyed by cell location.
+ */
+public class CoordinateMapTest {
+
+	/**
+	 * The home slot of a cell in a CoordinateMap that has not grown beyond its initial 16 slots.
+	 */
+	private static int initialHomeSlot( int row, int col ) {
+		return (int)( ( Coordinate.pack( row, col ) * 0x9E3779B97F4A7C15L ) >>> 32 ) & 15;
+	}
+
+	/**
+	 * Find cells, on successive rows, whose home slot is the given slot.
+	 */
+	private static List<int[]> cellsWithHomeSlot( int slot, int count ) {
+		List<int[]> result = new ArrayList<int[]>();
+		for( int row = 0; result.size() < count; ++row ) {
+			if( initialHomeSlot( row, 3 ) == slot ) {
+				result.add( new int[] { row, 3 } );
+			}
+		}
+		return result;
+	}
+
+	private static void assertSameContents( CoordinateMap<String> map, Map<Long, String> expected, int rows, int cols ) {
+		assertEquals( expected.size(), map.size() );
+		assertEquals( expected.isEmpty(), map.isEmpty() );
+		for( int row = 0; row < rows; ++row ) {
+			for( int col = 0; col < cols; ++col ) {
+				String value = expected.get( Coordinate.pack( row, col ) );
+				assertEquals( "Value at [" + row + "," + col + "]", value, map.get( row, col ) );
+				assertEquals( "Contains [" + row + "," + col + "]", value != null, map.containsKey( row, col ) );
+			}
+		}
+	}
+
+	@Test
+	public void testPutGetRemove() {
+		CoordinateMap<String> map = new CoordinateMap<String>();
+		assertTrue( map.isEmpty() );
+		assertNull( map.put( 1, 2, "a" ) );
+		assertEquals( "a", map.put( 1, 2, "b" ) );
+		assertEquals( 1, map.size() );
+		assertEquals( "b", map.get( 1, 2 ) );
+		assertNull( map.get( 2, 1 ) );
+		assertFalse( map.containsKey( 2, 1 ) );
+		assertNull( map.remove( 2, 1 ) );
+		assertEquals( "b", map.remove( 1, 2 ) );
+		assertTrue( map.isEmpty() );
+		assertNull( map.get( 1, 2 ) );
+	}
+
+	@Test
+	public void testRemoveAcrossWraparound() {
+		CoordinateMap<String> map = new CoordinateMap<String>();
+		Map<Long, String> expected = new HashMap<Long, String>();
+
+		// Three cells that all belong in the last slot, so two of them wrap around to the start of the table,
+		// then a cell that belongs in the first slot, which is pushed along behind them
+		List<int[]> cells = cellsWithHomeSlot( 15, 3 );
+		cells.addAll( cellsWithHomeSlot( 0, 1 ) );
+		int rows = 0;
+		for( int[] cell : cells ) {
+			map.put( cell[0], cell[1], "R" + cell[0] );
+			expected.put( Coordinate.pack( cell[0], cell[1] ), "R" + cell[0] );
+			rows = Math.max( rows, cell[0] + 1 );
+		}
+		assertSameContents( map, expected, rows, 4 );
+
+		// Removing the first cell has to move the others back across the end of the table
+		for( int[] cell : cells ) {
+			assertEquals( "R" + cell[0], map.remove( cell[0], cell[1] ) );
+			expected.remove( Coordinate.pack( cell[0], cell[1] ) );
+			assertSameContents( map, expected, rows, 4 );
+		}
+	}
+
+	@Test
+	public void testRandomOperations() {
+		Random random = new Random( 24 );
+		CoordinateMap<String> map = new CoordinateMap<String>();
+		Map<Long, String> expected = new HashMap<Long, String>();
+
+		for( int i = 0; i < 20000; ++i ) {
+			int row = random.nextInt( 64 );
+			int col = random.nextInt( 16 );
+			long key = Coordinate.pack( row, col );
+			if( random.nextInt( 3 ) == 0 ) {
+				assertEquals( expected.remove( key ), map.remove( row, col ) );
+			} else {
+				String value = Integer.toString( i );
+				assertEquals( expected.put( key, value ), map.put( row, col, value ) );
+			}
+			if( i % 1000 == 0 ) {
+				assertSameContents( map, expected, 64, 16 );
+			}
+		}
+		assertSameContents( map, expected, 64, 16 );
+
+		map.clear();
+		expected.clear();
+		assertSameContents( map, expected, 64, 16 );
+	}
+
+}
@@ -0,0 +1,80 @@
+package uk.co.spudsoft.birt.emitters.excel.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.eclipse.birt.core.exception.BirtException;
+import org.eclipse.core.runtime.ILog;
+import org.eclipse.core.runtime.ILogListener;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
+import org.junit.Test;
+
+/**
+ * Check that tracing events leaves the output unchanged, and that the requested dump holds the most recent events.
+ */
+public class EventTraceTest extends ReportRunner {
+	
+	@Test
+	public void testTraceDoesNotChangeOutput() throws BirtException, IOException {
+
+		// A buffer much smaller than the number of events, so that it wraps
+		traceEvents = 16;
+		traceDump = Boolean.TRUE;
+		
+		final List<String> dumps = new ArrayList<String>();
+		ILogListener listener = new ILogListener() {
+			@Override
+			public void logging(IStatus status, String plugin) {
+				if( status.getMessage().startsWith( "Trace requested" ) ) {
+					dumps.add( status.getMessage() );
+				}
+			}
+		};
+		ILog emitterLog = Platform.getLog( Platform.getBundle( "uk.co.spudsoft.birt.emitters.excel" ) );
+		emitterLog.addLogListener( listener );
+		InputStream inputStream;
+		try {
+			inputStream = runAndRenderReport("AutoColWidths.rptdesign", "xlsx");
+		} finally {
+			emitterLog.removeLogListener( listener );
+		}
+		
+		assertEquals( 1, dumps.size() );
+		String[] lines = dumps.get( 0 ).split( "\n" );
+		assertTrue( lines[0], lines[0].startsWith( "Trace requested, the last 16 of " ) );
+		assertEquals( 17, lines.length );
+		// The dump is taken as the report ends, after the last page has ended
+		assertTrue( lines[15], lines[15].contains( " endPage [" ) );
+		assertTrue( lines[16], lines[16].contains( " end [" ) );
+		assertTrue( lines[16], lines[16].endsWith( " PageHandler" ) );
+		
+		assertNotNull(inputStream);
+		try {
+			XSSFWorkbook workbook = new XSSFWorkbook(inputStream);
+			assertNotNull(workbook);
+			
+			assertEquals( 1, workbook.getNumberOfSheets() );
+			
+			Sheet sheet = workbook.getSheetAt(0);
+			assertEquals(23, this.firstNullRow(sheet));
+			
+			assertEquals( 6127, sheet.getColumnWidth( 0 ) );
+			assertEquals( 2048, sheet.getColumnWidth( 1 ) );
+			assertEquals( 4999, sheet.getColumnWidth( 2 ) );
+			assertEquals( "Name", sheet.getRow(1).getCell(0).getStringCellValue());
+
+		} finally {
+			inputStream.close();
+		}
+	}
+	
+}
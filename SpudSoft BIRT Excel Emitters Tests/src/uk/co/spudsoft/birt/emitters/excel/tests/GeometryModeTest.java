@@ -0,0 +1,98 @@
+package uk.co.spudsoft.birt.emitters.excel.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import uk.co.spudsoft.birt.emitters.excel.ExcelEmitter;
+
+public class GeometryModeTest extends ReportRunner {
+
+	private void assertApproximately( int expected, int actual, double tolerance ) {
+		assertTrue( "Expected approximately " + expected + " but was " + actual, Math.abs( actual - expected ) <= expected * tolerance );
+	}
+	
+	@Test
+	public void testApproximateColWidths() throws Exception {
+		
+		geometryMode = ExcelEmitter.GEOMETRY_APPROXIMATE;
+		InputStream inputStream = runAndRenderReport("AutoColWidths.rptdesign", "xlsx");
+		assertNotNull(inputStream);
+		try {
+			XSSFWorkbook workbook = new XSSFWorkbook(inputStream);
+			assertNotNull(workbook);
+			
+			Sheet sheet = workbook.getSheetAt(0);
+			assertEquals(23, this.firstNullRow(sheet));
+			
+			// The exact widths are 6127, 2048, 4999, 3812, 3812, 2048, 3166, 2822, 2048
+			assertApproximately( 6127,             sheet.getColumnWidth( 0 ), 0.2 );
+			assertEquals( 2048,                    sheet.getColumnWidth( 1 ) );
+			assertApproximately( 4999,             sheet.getColumnWidth( 2 ), 0.2 );
+			assertApproximately( 3812,             sheet.getColumnWidth( 3 ), 0.2 );
+			assertApproximately( 3812,             sheet.getColumnWidth( 4 ), 0.2 );
+			assertEquals( 2048,                    sheet.getColumnWidth( 5 ) );
+			assertApproximately( 3166,             sheet.getColumnWidth( 6 ), 0.2 );
+			assertApproximately( 2822,             sheet.getColumnWidth( 7 ), 0.2 );
+			assertEquals( 2048,                    sheet.getColumnWidth( 8 ) );
+			
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	@Test
+	public void testApproximateRowHeights() throws Exception {
+		
+		geometryMode = ExcelEmitter.GEOMETRY_APPROXIMATE;
+		InputStream inputStream = runAndRenderReport("AutoRowHeight.rptdesign", "xlsx");
+		assertNotNull(inputStream);
+		try {
+			XSSFWorkbook workbook = new XSSFWorkbook(inputStream);
+			assertNotNull(workbook);
+			
+			Sheet sheet = workbook.getSheetAt(0);
+			assertEquals( 7, this.firstNullRow(sheet));
+			
+			assertEquals( 300, sheet.getRow(0).getHeight() );
+			assertApproximately( 992, sheet.getRow(1).getHeight(), 0.25 );
+			assertApproximately( 826, sheet.getRow(2).getHeight(), 0.25 );
+			assertApproximately( 1405, sheet.getRow(3).getHeight(), 0.25 );
+			assertApproximately( 2988, sheet.getRow(4).getHeight(), 0.25 );
+			assertEquals( 300, sheet.getRow(5).getHeight() );
+			assertApproximately( 4103, sheet.getRow(6).getHeight(), 0.25 );
+			
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	@Test
+	public void testNoGeometry() throws Exception {
+		
+		geometryMode = ExcelEmitter.GEOMETRY_NONE;
+		InputStream inputStream = runAndRenderReport("AutoColWidths.rptdesign", "xlsx");
+		assertNotNull(inputStream);
+		try {
+			XSSFWorkbook workbook = new XSSFWorkbook(inputStream);
+			assertNotNull(workbook);
+			
+			Sheet sheet = workbook.getSheetAt(0);
+			assertEquals(23, this.firstNullRow(sheet));
+			
+			for( int col = 0; col < 9; ++col ) {
+				assertEquals( 256 * sheet.getDefaultColumnWidth(), sheet.getColumnWidth( col ) );
+			}
+			
+		} finally {
+			inputStream.close();
+		}
+	}
+
+}
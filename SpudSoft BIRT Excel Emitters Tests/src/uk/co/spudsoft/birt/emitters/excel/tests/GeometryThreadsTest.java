@@ -0,0 +1,99 @@
+package uk.co.spudsoft.birt.emitters.excel.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.InputStream;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+public class GeometryThreadsTest extends ReportRunner {
+
+	@Test
+	public void testDeferredRowHeightsXlsx() throws Exception {
+		
+		geometryThreads = 4;
+		InputStream inputStream = runAndRenderReport("AutoRowHeight.rptdesign", "xlsx");
+		assertNotNull(inputStream);
+		try {
+			XSSFWorkbook workbook = new XSSFWorkbook(inputStream);
+			assertNotNull(workbook);
+			
+			// The heights must match those calculated inline
+			Sheet sheet = workbook.getSheetAt(0);
+			assertEquals( 7, this.firstNullRow(sheet));
+			
+			assertEquals( 300, sheet.getRow(0).getHeight() );
+			assertEquals( 992, sheet.getRow(1).getHeight() );
+			assertEquals( 826, sheet.getRow(2).getHeight() );
+			assertEquals( 1405, sheet.getRow(3).getHeight() );
+			assertEquals( 2988, sheet.getRow(4).getHeight() );
+			assertEquals( 300, sheet.getRow(5).getHeight() );
+			assertEquals( 4103, sheet.getRow(6).getHeight() );
+			
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	@Test
+	public void testDeferredRowHeightsXls() throws Exception {
+		
+		geometryThreads = 4;
+		InputStream inputStream = runAndRenderReport("AutoRowHeight.rptdesign", "xls");
+		assertNotNull(inputStream);
+		try {
+			HSSFWorkbook workbook = new HSSFWorkbook(inputStream);
+			assertNotNull(workbook);
+			
+			Sheet sheet = workbook.getSheetAt(0);
+			assertEquals( 7, this.firstNullRow(sheet));
+			
+			assertEquals( 275, sheet.getRow(0).getHeight() );
+			assertEquals( 992, sheet.getRow(1).getHeight() );
+			assertEquals( 826, sheet.getRow(2).getHeight() );
+			assertEquals( 1405, sheet.getRow(3).getHeight() );
+			assertEquals( 2988, sheet.getRow(4).getHeight() );
+			assertEquals( 275, sheet.getRow(5).getHeight() );
+			assertEquals( 4103, sheet.getRow(6).getHeight() );
+			
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	/**
+	 * Column widths are not measured on the pool, but must be unaffected by row heights being deferred to it.
+	 */
+	@Test
+	public void testColWidthsWithGeometryThreads() throws Exception {
+		
+		geometryThreads = 4;
+		InputStream inputStream = runAndRenderReport("AutoColWidths.rptdesign", "xlsx");
+		assertNotNull(inputStream);
+		try {
+			XSSFWorkbook workbook = new XSSFWorkbook(inputStream);
+			assertNotNull(workbook);
+			
+			Sheet sheet = workbook.getSheetAt(0);
+			assertEquals(23, this.firstNullRow(sheet));
+			
+			assertEquals( 6127,                    sheet.getColumnWidth( 0 ) );
+			assertEquals( 2048,                    sheet.getColumnWidth( 1 ) );
+			assertEquals( 4999,                    sheet.getColumnWidth( 2 ) );
+			assertEquals( 3812,                    sheet.getColumnWidth( 3 ) );
+			assertEquals( 3812,                    sheet.getColumnWidth( 4 ) );
+			assertEquals( 2048,                    sheet.getColumnWidth( 5 ) );
+			assertEquals( 3166,                    sheet.getColumnWidth( 6 ) );
+			assertEquals( 2822,                    sheet.getColumnWidth( 7 ) );
+			assertEquals( 2048,                    sheet.getColumnWidth( 8 ) );
+			
+		} finally {
+			inputStream.close();
+		}
+	}
+
+}
@@ -0,0 +1,72 @@
+package uk.co.spudsoft.birt.emitters.excel.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.eclipse.birt.core.exception.BirtException;
+import org.junit.Test;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.STCellType;
+
+public class InlineStringsTest extends ReportRunner {
+	
+	private static STCellType.Enum cellType( Cell cell ) {
+		return ((XSSFCell)cell).getCTCell().getT();
+	}
+	
+	@Test
+	public void testInlineStringsAboveThreshold() throws BirtException, IOException {
+
+		inlineStringsThreshold = 2;
+		InputStream inputStream = runAndRenderReport("AutoColWidths.rptdesign", "xlsx");
+		assertNotNull(inputStream);
+		try {
+			XSSFWorkbook workbook = new XSSFWorkbook(inputStream);
+			assertNotNull(workbook);
+			
+			assertEquals( 1, workbook.getNumberOfSheets() );
+			assertEquals( 2, workbook.getSharedStringSource().getUniqueCount() );
+			
+			Sheet sheet = workbook.getSheetAt(0);
+			assertEquals(23, this.firstNullRow(sheet));
+			
+			// The first two strings written, the long label and the first column heading, fill the shared string table
+			assertEquals( STCellType.S,            cellType(sheet.getRow(0).getCell(0)));
+			assertEquals( STCellType.S,            cellType(sheet.getRow(1).getCell(0)));
+			assertEquals( 0,                       Integer.parseInt(((XSSFCell)sheet.getRow(0).getCell(0)).getCTCell().getV()));
+			assertEquals( 1,                       Integer.parseInt(((XSSFCell)sheet.getRow(1).getCell(0)).getCTCell().getV()));
+			// Every string after that is written inline
+			for( int col = 1; col < 8; ++col ) {
+				assertEquals( "Heading " + col,    STCellType.INLINE_STR, cellType(sheet.getRow(1).getCell(col)));
+			}
+			for( int row = 2; row < 23; ++row ) {
+				Cell cell = sheet.getRow(row).getCell(0);
+				if( ( cell != null ) && ( cell.getCellType() == Cell.CELL_TYPE_STRING ) ) {
+					assertEquals( "Name on row " + row, STCellType.INLINE_STR, cellType(cell));
+				}
+			}
+			
+			DataFormatter formatter = new DataFormatter();
+			
+			assertEquals( Cell.CELL_TYPE_STRING,   sheet.getRow(1).getCell(3).getCellType());
+			assertEquals( "Name",                  sheet.getRow(1).getCell(0).getStringCellValue());
+			assertEquals( "Integer",               sheet.getRow(1).getCell(1).getStringCellValue());
+			assertEquals( "DateTime",              sheet.getRow(1).getCell(2).getStringCellValue());
+			assertEquals( "Decimal",               sheet.getRow(1).getCell(3).getStringCellValue());
+			assertEquals( "1",                     formatter.formatCellValue(sheet.getRow(2).getCell(1)));
+			assertEquals( "2019-10-11 13:18:46",   formatter.formatCellValue(sheet.getRow(2).getCell(2)));
+			assertEquals( "3.1415926536",          formatter.formatCellValue(sheet.getRow(2).getCell(3)));
+
+		} finally {
+			inputStream.close();
+		}
+	}
+	
+}
@@ -0,0 +1,73 @@
+package uk.co.spudsoft.birt.emitters.excel.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+
+/**
+ * Check the cells of MegaSize.rptdesign as they are read from a sheet that is too big to load into a workbook.
+ * <br/>
+ * Every detail row should have fourteen bordered numbers in the report font, however long ago the row was flushed,
+ * and every header cell should have the name of its column.
+ */
+public class MegaSizeChecker implements ReportRunner.SheetCellChecker {
+
+	private static final int COLUMNS = 14;
+	
+	private int headerCells;
+	private int detailRows;
+	private int currentRow = -1;
+	private int cellsInCurrentRow;
+	
+	private void assertBorder( String where, String side, short border ) {
+		assertTrue( side + " border at " + where, border != CellStyle.BORDER_NONE );
+	}
+	
+	private void endRow() {
+		if( cellsInCurrentRow > 0 ) {
+			assertEquals( "Numbers in row " + currentRow, COLUMNS, cellsInCurrentRow );
+			++detailRows;
+		}
+		cellsInCurrentRow = 0;
+	}
+	
+	@Override
+	public void checkCell( int row, int col, String value, boolean numeric, XSSFCellStyle style ) {
+		if( value == null ) {
+			return ;
+		}
+		String where = "[" + row + "," + col + "]";
+		assertEquals( "Font size at " + where, 10, style.getFont().getFontHeightInPoints() );
+		if( numeric ) {
+			// Throws if the value is not a number
+			Double.parseDouble( value );
+			assertBorder( where, "Top", style.getBorderTop() );
+			assertBorder( where, "Bottom", style.getBorderBottom() );
+			assertBorder( where, "Left", style.getBorderLeft() );
+			assertBorder( where, "Right", style.getBorderRight() );
+			if( row != currentRow ) {
+				endRow();
+				currentRow = row;
+			}
+			++cellsInCurrentRow;
+		} else {
+			assertEquals( "Header at " + where, "Col" + ( col + 1 ), value );
+			++headerCells;
+		}
+	}
+	
+	/**
+	 * Check that the whole sheet has been seen.
+	 * @param minimumDetailRows
+	 * The number of detail rows that the sheet must have more than.
+	 */
+	public void assertComplete( int minimumDetailRows ) {
+		endRow();
+		assertTrue( "Detail rows " + detailRows, detailRows > minimumDetailRows );
+		assertTrue( "Header cells " + headerCells, headerCells >= COLUMNS );
+		assertEquals( "Header cells " + headerCells, 0, headerCells % COLUMNS );
+	}
+	
+}
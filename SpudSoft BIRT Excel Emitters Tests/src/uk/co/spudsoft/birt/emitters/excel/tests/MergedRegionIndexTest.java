@@ -0,0 +1,110 @@
+package uk.co.spudsoft.birt.emitters.excel.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.junit.Test;
+
+import uk.co.spudsoft.birt.emitters.excel.MergedRegionIndex;
+
+/**
+ * Check that MergedRegionIndex gives the same answers as a scan of every merged region on the sheet.
+ */
+public class MergedRegionIndexTest {
+
+	private static CellRangeAddress linearFindBegunBy( List<CellRangeAddress> regions, int row, int col ) {
+		for( CellRangeAddress region : regions ) {
+			if( ( region.getFirstRow() == row ) && ( region.getFirstColumn() == col ) ) {
+				return region;
+			}
+		}
+		return null;
+	}
+
+	private static List<CellRangeAddress> linearFindOverlapping( List<CellRangeAddress> regions, int firstRow, int lastRow ) {
+		List<CellRangeAddress> result = new ArrayList<CellRangeAddress>();
+		for( CellRangeAddress region : regions ) {
+			if( ( region.getFirstRow() <= lastRow ) && ( region.getLastRow() >= firstRow ) ) {
+				result.add( region );
+			}
+		}
+		return result;
+	}
+
+	private static void assertSameRegions( MergedRegionIndex index, List<CellRangeAddress> regions, Sheet sheet ) {
+		for( int row = 0; row < 40; ++row ) {
+			for( int col = 0; col < 8; ++col ) {
+				assertSame( "Region begun by [" + row + "," + col + "]", linearFindBegunBy( regions, row, col ), index.findRegionBegunBy( row, col ) );
+			}
+			assertEquals( "Regions overlapping row " + row, linearFindOverlapping( regions, row, row + 2 ), index.findRegionsOverlapping( row, row + 2 ) );
+		}
+
+		int existing = sheet.getNumMergedRegions();
+		index.addTo( sheet );
+		assertEquals( existing + regions.size(), sheet.getNumMergedRegions() );
+		for( int i = 0; i < regions.size(); ++i ) {
+			assertEquals( regions.get( i ).formatAsString(), sheet.getMergedRegion( existing + i ).formatAsString() );
+		}
+		assertNull( index.findRegionBegunBy( regions.isEmpty() ? 0 : regions.get( 0 ).getFirstRow(), regions.isEmpty() ? 0 : regions.get( 0 ).getFirstColumn() ) );
+	}
+
+	@Test
+	public void testRemoveRegionsWithSameTopLeft() {
+		MergedRegionIndex index = new MergedRegionIndex();
+		List<CellRangeAddress> regions = new ArrayList<CellRangeAddress>();
+
+		CellRangeAddress first = new CellRangeAddress( 1, 2, 1, 3 );
+		CellRangeAddress other = new CellRangeAddress( 4, 4, 0, 5 );
+		CellRangeAddress second = new CellRangeAddress( 1, 1, 1, 2 );
+		CellRangeAddress third = new CellRangeAddress( 1, 3, 1, 1 );
+		for( CellRangeAddress region : new CellRangeAddress[] { first, other, second, third } ) {
+			index.add( region );
+			regions.add( region );
+		}
+
+		assertSame( first, index.removeRegionBegunBy( 1, 1 ) );
+		regions.remove( first );
+		assertSame( second, index.findRegionBegunBy( 1, 1 ) );
+		assertSame( second, index.removeRegionBegunBy( 1, 1 ) );
+		regions.remove( second );
+		assertSame( third, index.findRegionBegunBy( 1, 1 ) );
+		assertNull( index.removeRegionBegunBy( 0, 0 ) );
+
+		assertSameRegions( index, regions, new HSSFWorkbook().createSheet() );
+	}
+
+	@Test
+	public void testRandomRegions() {
+		Random random = new Random( 22 );
+		MergedRegionIndex index = new MergedRegionIndex();
+		List<CellRangeAddress> regions = new ArrayList<CellRangeAddress>();
+		Sheet sheet = new HSSFWorkbook().createSheet();
+
+		for( int page = 0; page < 3; ++page ) {
+			for( int i = 0; i < 300; ++i ) {
+				int row = random.nextInt( 30 );
+				int col = random.nextInt( 6 );
+				if( random.nextInt( 4 ) == 0 ) {
+					CellRangeAddress expected = linearFindBegunBy( regions, row, col );
+					assertSame( expected, index.removeRegionBegunBy( row, col ) );
+					regions.remove( expected );
+				} else {
+					CellRangeAddress region = new CellRangeAddress( row, row + random.nextInt( 3 ), col, col + random.nextInt( 3 ) );
+					index.add( region );
+					regions.add( region );
+				}
+			}
+			assertSameRegions( index, regions, sheet );
+			regions.clear();
+		}
+	}
+
+}
@@ -0,0 +1,182 @@
+package uk.co.spudsoft.birt.emitters.excel.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import uk.co.spudsoft.birt.emitters.excel.handlers.NestedTableHandler;
+import uk.co.spudsoft.birt.emitters.excel.handlers.NestedTableIndex;
+
+/**
+ * Check that NestedTableIndex gives the same answers as considering every nested table, as the table and list handlers used to.
+ */
+public class NestedTableIndexTest {
+
+	/**
+	 * Stands in for a nested table that has ended, using the same row arithmetic as NestedTableHandler.
+	 */
+	private static class EndedNestedTable extends NestedTableHandler {
+		private final int firstRow;
+		private final int lastRow;
+		private final int parentRowSpan;
+
+		public EndedNestedTable( int firstRow, int lastRow, int parentRowSpan ) {
+			super( null, null, null, parentRowSpan );
+			this.firstRow = firstRow;
+			this.lastRow = lastRow;
+			this.parentRowSpan = parentRowSpan;
+		}
+
+		@Override
+		public boolean includesRow( int rowNum ) {
+			return ( firstRow <= rowNum ) && ( lastRow >= rowNum );
+		}
+
+		@Override
+		public boolean endsAbove( int rowNum ) {
+			return lastRow < rowNum;
+		}
+
+		@Override
+		public int getExtendedParentRow() {
+			return firstRow + parentRowSpan - 1;
+		}
+
+		@Override
+		public int extendParentsRowBy( int rowNum ) {
+			if( ( rowNum == firstRow + parentRowSpan - 1 ) && ( lastRow - firstRow >= parentRowSpan - 1 ) ) {
+				return 2 + lastRow - firstRow - parentRowSpan;
+			}
+			return 1;
+		}
+
+		@Override
+		public String toString() {
+			return "EndedNestedTable [" + firstRow + "-" + lastRow + ", parentRowSpan=" + parentRowSpan + "]";
+		}
+	}
+
+	private static NestedTableHandler linearFindIncluding( List<NestedTableHandler> tables, int rowNum ) {
+		for( NestedTableHandler table : tables ) {
+			if( table.includesRow( rowNum ) ) {
+				return table;
+			}
+		}
+		return null;
+	}
+
+	private static int linearExtendRowBy( List<NestedTableHandler> tables, int rowNum ) {
+		int offset = 1;
+		for( NestedTableHandler table : tables ) {
+			int tableOffset = table.extendParentsRowBy( rowNum );
+			if( tableOffset > offset ) {
+				offset = tableOffset;
+			}
+		}
+		return offset;
+	}
+
+	/**
+	 * The calculation in AbstractRealTableHandler.extendRowBy and AbstractRealListHandler.extendRowBy.
+	 */
+	private static int indexedExtendRowBy( NestedTableIndex index, int rowNum ) {
+		int offset = 1;
+		NestedTableHandler table = index.findTableExtending( rowNum );
+		if( ( table != null ) && ( table.extendParentsRowBy( rowNum ) > offset ) ) {
+			offset = table.extendParentsRowBy( rowNum );
+		}
+		return offset;
+	}
+
+	private static void add( NestedTableIndex index, List<NestedTableHandler> tables, NestedTableHandler table ) {
+		index.add( table );
+		tables.add( table );
+	}
+
+	private static void assertSameAnswers( NestedTableIndex index, List<NestedTableHandler> tables, int rowNum ) {
+		assertSame( "Table including row " + rowNum, linearFindIncluding( tables, rowNum ), index.findTableIncluding( rowNum ) );
+		assertEquals( "Extension of row " + rowNum, linearExtendRowBy( tables, rowNum ), indexedExtendRowBy( index, rowNum ) );
+	}
+
+	@Test
+	public void testExtendParentRow() {
+		NestedTableIndex index = new NestedTableIndex();
+		List<NestedTableHandler> tables = new ArrayList<NestedTableHandler>();
+
+		// Three nested tables in parent cells that span rows 5 and 6, so they can only extend row 6
+		add( index, tables, new EndedNestedTable( 5, 9, 2 ) );
+		add( index, tables, new EndedNestedTable( 5, 6, 2 ) );
+		NestedTableHandler longest = new EndedNestedTable( 5, 11, 2 );
+		add( index, tables, longest );
+		// A nested table too short to extend the row it ends on
+		add( index, tables, new EndedNestedTable( 12, 12, 2 ) );
+
+		assertEquals( 1, indexedExtendRowBy( index, 5 ) );
+		assertEquals( 6, indexedExtendRowBy( index, 6 ) );
+		assertSame( longest, index.findTableExtending( 6 ) );
+		assertEquals( 1, indexedExtendRowBy( index, 13 ) );
+		for( int row = 0; row < 15; ++row ) {
+			assertSameAnswers( index, tables, row );
+		}
+	}
+
+	@Test
+	public void testTablesRetiredAsRowsAdvance() {
+		NestedTableIndex index = new NestedTableIndex();
+		List<NestedTableHandler> tables = new ArrayList<NestedTableHandler>();
+
+		NestedTableHandler first = new EndedNestedTable( 0, 1, 1 );
+		NestedTableHandler second = new EndedNestedTable( 2, 2, 1 );
+		NestedTableHandler third = new EndedNestedTable( 4, 8, 1 );
+		add( index, tables, first );
+		add( index, tables, second );
+		add( index, tables, third );
+
+		assertSame( first, index.findTableIncluding( 1 ) );
+		// first ends above row 2, so it is retired
+		assertSame( second, index.findTableIncluding( 2 ) );
+		assertNull( index.findTableIncluding( 3 ) );
+		assertSame( third, index.findTableIncluding( 4 ) );
+		assertNull( index.findTableIncluding( 9 ) );
+		// A query above the retired rows still finds the tables that were retired
+		assertSame( first, index.findTableIncluding( 1 ) );
+		assertSame( second, index.findTableIncluding( 2 ) );
+
+		// A table added after others have been retired, which itself ends above the retired rows
+		NestedTableHandler late = new EndedNestedTable( 3, 3, 1 );
+		add( index, tables, late );
+		assertSame( late, index.findTableIncluding( 3 ) );
+		for( int row = 0; row < 10; ++row ) {
+			assertSameAnswers( index, tables, row );
+		}
+	}
+
+	@Test
+	public void testRandomTables() {
+		Random random = new Random( 23 );
+		NestedTableIndex index = new NestedTableIndex();
+		List<NestedTableHandler> tables = new ArrayList<NestedTableHandler>();
+
+		for( int row = 0; row < 200; ++row ) {
+			// Nested tables are added when they end, so the ones added on this row started on or above it
+			int tablesEndingOnRow = random.nextInt( 3 );
+			for( int i = 0; i < tablesEndingOnRow; ++i ) {
+				int firstRow = Math.max( 0, row - random.nextInt( 6 ) );
+				add( index, tables, new EndedNestedTable( firstRow, row, 1 + random.nextInt( 3 ) ) );
+			}
+			assertSameAnswers( index, tables, row );
+			assertSameAnswers( index, tables, row + 1 );
+			if( random.nextInt( 10 ) == 0 ) {
+				// A parent returning to the row that it started on
+				assertSameAnswers( index, tables, Math.max( 0, row - 1 - random.nextInt( 8 ) ) );
+			}
+		}
+	}
+
+}
@@ -0,0 +1,129 @@
+package uk.co.spudsoft.birt.emitters.excel.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.eclipse.birt.core.exception.BirtException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import uk.co.spudsoft.birt.emitters.excel.ExcelEmitter;
+
+/**
+ * Check that every way of writing an xlsx workbook produces the same sheets for AutoColWidths.rptdesign and AutoColWidthsSample.rptdesign.
+ * <br/>
+ * The streaming window is never less than ExcelEmitter.MINIMUM_STREAMING_WINDOW rows, so only AutoColWidthsSample.rptdesign
+ * is long enough for the widest cells to have been flushed before its table ends.
+ */
+@RunWith(Parameterized.class)
+public class OutputModesAutoColWidthsTest extends ReportRunner {
+
+	@Parameters
+	public static Collection<Object[]> outputModes() {
+		return Arrays.asList( new Object[][] {
+				// mode,                   streamingWindow, spillSheets, streamingThreshold, sizeHint
+				{ "in memory",             null,            null,        null,               null },
+				{ "streamed",              1,               null,        null,               null },
+				{ "spilled",               null,            true,        null,               null },
+				{ "below threshold",       null,            null,        1000,               null },
+				{ "threshold crossed",     null,            null,        16,                 null },
+				{ "size hint",             null,            null,        1000,               1000000 },
+		} );
+	}
+
+	private final String mode;
+
+	public OutputModesAutoColWidthsTest( String mode, Integer streamingWindow, Boolean spillSheets, Integer streamingThreshold, Integer sizeHint ) {
+		this.mode = mode;
+		this.streamingWindow = streamingWindow;
+		this.spillSheets = spillSheets;
+		this.streamingThreshold = streamingThreshold;
+		this.sizeHint = sizeHint;
+	}
+
+	@Test
+	public void testAutoColWidths() throws BirtException, IOException {
+
+		InputStream inputStream = runAndRenderReport("AutoColWidths.rptdesign", "xlsx");
+		assertNotNull(mode, inputStream);
+		try {
+
+			XSSFWorkbook workbook = new XSSFWorkbook(inputStream);
+			assertNotNull(mode, workbook);
+
+			assertEquals( mode, 1, workbook.getNumberOfSheets() );
+			assertEquals( mode, "AutoColWidths Test Report", workbook.getSheetAt(0).getSheetName());
+
+			Sheet sheet = workbook.getSheetAt(0);
+			assertEquals( mode, 23, this.firstNullRow(sheet));
+
+			assertEquals( mode, 6127,                    sheet.getColumnWidth( 0 ) );
+			assertEquals( mode, 2048,                    sheet.getColumnWidth( 1 ) );
+			assertEquals( mode, 4999,                    sheet.getColumnWidth( 2 ) );
+			assertEquals( mode, 3812,                    sheet.getColumnWidth( 3 ) );
+			assertEquals( mode, 3812,                    sheet.getColumnWidth( 4 ) );
+			assertEquals( mode, 2048,                    sheet.getColumnWidth( 5 ) );
+			assertEquals( mode, 3166,                    sheet.getColumnWidth( 6 ) );
+			assertEquals( mode, 2822,                    sheet.getColumnWidth( 7 ) );
+			assertEquals( mode, 2048,                    sheet.getColumnWidth( 8 ) );
+
+			DataFormatter formatter = new DataFormatter();
+
+			assertEquals( mode, "1",                     formatter.formatCellValue(sheet.getRow(2).getCell(1)));
+			assertEquals( mode, "2019-10-11 13:18:46",   formatter.formatCellValue(sheet.getRow(2).getCell(2)));
+			assertEquals( mode, "3.1415926536",          formatter.formatCellValue(sheet.getRow(2).getCell(3)));
+			assertEquals( mode, "3.1415926536",          formatter.formatCellValue(sheet.getRow(2).getCell(4)));
+			assertEquals( mode, "false",                 formatter.formatCellValue(sheet.getRow(2).getCell(5)));
+			assertEquals( mode, "Oct 11, 2019",          formatter.formatCellValue(sheet.getRow(2).getCell(6)));
+			assertEquals( mode, "1:18:46 PM",            formatter.formatCellValue(sheet.getRow(2).getCell(7)));
+
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	@Test
+	public void testAutoColWidthsFullScan() throws BirtException, IOException {
+
+		autoColWidthsSampleRows = 0;
+		geometryMode = ExcelEmitter.GEOMETRY_APPROXIMATE;
+		InputStream inputStream = runAndRenderReport("AutoColWidthsSample.rptdesign", "xlsx");
+		assertNotNull(mode, inputStream);
+		try {
+
+			XSSFWorkbook workbook = new XSSFWorkbook(inputStream);
+			assertNotNull(mode, workbook);
+
+			assertEquals( mode, 1, workbook.getNumberOfSheets() );
+
+			Sheet sheet = workbook.getSheetAt(0);
+			assertTrue( mode, ExcelEmitter.MINIMUM_STREAMING_WINDOW < this.firstNullRow(sheet) );
+			assertEquals( mode, 41, this.firstNullRow(sheet));
+
+			for( int row = 1; row < 41; ++row ) {
+				assertEquals( mode, row == 30 ? "Row 30 is much longer than any of the rows in the sample" : "Row " + row, sheet.getRow(row).getCell(0).getStringCellValue() );
+			}
+			
+			Cell longestName = sheet.getRow(30).getCell(0);
+			Cell longestDescription = sheet.getRow(5).getCell(1);
+			assertEquals( mode, approximateColumnWidth( workbook, longestName ),        sheet.getColumnWidth( 0 ) );
+			assertEquals( mode, approximateColumnWidth( workbook, longestDescription ), sheet.getColumnWidth( 1 ) );
+
+		} finally {
+			inputStream.close();
+		}
+	}
+
+}
@@ -0,0 +1,116 @@
+package uk.co.spudsoft.birt.emitters.excel.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.eclipse.birt.core.exception.BirtException;
+import org.eclipse.birt.report.engine.api.IReportEngine;
+import org.eclipse.birt.report.engine.api.IReportRunnable;
+import org.eclipse.birt.report.engine.api.IRunAndRenderTask;
+import org.junit.Test;
+
+import uk.co.spudsoft.birt.emitters.excel.RenderMetrics;
+import uk.co.spudsoft.birt.emitters.excel.RenderMetricsListener;
+import uk.co.spudsoft.birt.emitters.excel.framework.ExcelEmitterPlugin;
+import uk.co.spudsoft.birt.emitters.excel.framework.RenderStatistics;
+
+public class RenderMetricsTest extends ReportRunner {
+	
+	private RenderMetrics received;
+	
+	@Test
+	public void testMetricsListener() throws BirtException, IOException {
+
+		metricsListener = new RenderMetricsListener() {
+			@Override
+			public void renderComplete(RenderMetrics metrics) {
+				received = metrics;
+			}
+		};
+		InputStream inputStream = runAndRenderReport("AutoColWidths.rptdesign", "xlsx");
+		assertNotNull(inputStream);
+		try {
+			XSSFWorkbook workbook = new XSSFWorkbook(inputStream);
+			assertNotNull(workbook);
+			
+			Sheet sheet = workbook.getSheetAt(0);
+			assertEquals(23, this.firstNullRow(sheet));
+			
+			assertNotNull( received );
+			assertFalse( received.isFailed() );
+			assertEquals( workbook.getNumberOfSheets(), received.getSheets() );
+			assertEquals( sheet.getPhysicalNumberOfRows(), received.getRows() );
+			assertEquals( sheet.getNumMergedRegions(), received.getMergedRegions() );
+			assertTrue( received.getCells() > 0 );
+			assertTrue( received.getStylesCreated() > 0 );
+			assertTrue( received.getStylesCreated() <= received.getStyleRequests() );
+			assertTrue( received.getFontsCreated() <= received.getFontRequests() );
+			assertTrue( received.getStyleHitRatio() >= 0.0 );
+			assertTrue( received.getStyleHitRatio() < 1.0 );
+			assertEquals( 0, received.getImages() );
+			assertTrue( received.getCallbackNanos() > 0 );
+			assertTrue( received.getWriteNanos() > 0 );
+
+		} finally {
+			inputStream.close();
+		}
+	}
+	
+	@Test
+	public void testFailedRenderPublished() throws BirtException, IOException {
+
+		metricsListener = new RenderMetricsListener() {
+			@Override
+			public void renderComplete(RenderMetrics metrics) {
+				received = metrics;
+			}
+		};
+		RenderStatistics statistics = ExcelEmitterPlugin.getDefault().getStatistics();
+		long renders = statistics.getRenders();
+		long failedRenders = statistics.getFailedRenders();
+		
+		IReportEngine reportEngine = createReportEngine();
+		InputStream resourceStream = openFileStream( "AutoColWidths.rptdesign" );
+		assertNotNull( resourceStream );
+		try {
+			IReportRunnable reportRunnable = reportEngine.openReportDesign( resourceStream );
+			assertNotNull(reportRunnable);
+			
+			IRunAndRenderTask reportRunRenderTask = reportEngine.createRunAndRenderTask( reportRunnable );
+			assertNotNull(reportRunRenderTask);
+			File tempOutput = createTempFile( "FailedRender", ".xlsx" );
+			try {
+				// The stream is closed before the render starts, so writing the workbook fails
+				FileOutputStream outputStream = new FileOutputStream( tempOutput );
+				outputStream.close();
+				reportRunRenderTask.setRenderOption(prepareRenderOptions( "xlsx", outputStream ));
+				try {
+					reportRunRenderTask.run();
+				} catch( BirtException ex ) {
+					// The engine may report the failure either by throwing or via getErrors
+				}
+			} finally {
+				reportRunRenderTask.close();
+				tempOutput.delete();
+			}
+		} finally {
+			resourceStream.close();
+		}
+		
+		assertNotNull( received );
+		assertTrue( received.isFailed() );
+		assertTrue( received.getCells() > 0 );
+		assertEquals( renders + 1, statistics.getRenders() );
+		assertEquals( failedRenders + 1, statistics.getFailedRenders() );
+	}
+	
+}
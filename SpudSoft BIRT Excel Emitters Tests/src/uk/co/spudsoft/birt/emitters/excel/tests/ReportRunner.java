@@ -23,6 +23,7 @@ package uk.co.spudsoft.birt.emitters.excel.tests;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
@@ -35,11 +36,27 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Iterator;
 import java.util.Map.Entry;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
 import org.eclipse.birt.core.archive.FileArchiveWriter;
 import org.eclipse.birt.core.archive.IDocArchiveWriter;
 import org.eclipse.birt.core.exception.BirtException;
@@ -59,8 +76,12 @@ import org.eclipse.birt.report.engine.api.RenderOption;
 import org.eclipse.birt.report.engine.api.impl.ReportEngine;
 import org.eclipse.birt.report.model.api.IResourceLocator;
 
+import org.xml.sax.SAXException;
+
 import uk.co.spudsoft.birt.emitters.bugfix.FixedRenderTask;
+import uk.co.spudsoft.birt.emitters.excel.ApproximateTextMetrics;
 import uk.co.spudsoft.birt.emitters.excel.ExcelEmitter;
+import uk.co.spudsoft.birt.emitters.excel.RenderMetricsListener;
 import uk.co.spudsoft.birt.emitters.excel.tests.framework.Activator;
 
 public class ReportRunner {
@@ -77,6 +98,18 @@ public class ReportRunner {
 	protected Boolean displayZeros = null;
 	protected Boolean disableGrouping = null;
 	protected Boolean structuredHeader = null;
+	protected Integer streamingWindow = null;
+	protected Boolean spillSheets = null;
+	protected Integer streamingThreshold = null;
+	protected Integer sizeHint = null;
+	protected Integer inlineStringsThreshold = null;
+	protected String geometryMode = null;
+	protected Integer geometryThreads = null;
+	protected Integer autoColWidthsSampleRows = null;
+	protected Integer autoColWidthsPercentile = null;
+	protected Integer traceEvents = null;
+	protected Boolean traceDump = null;
+	protected RenderMetricsListener metricsListener = null;
 	
 	protected Map<String,Object> parameters = new HashMap<String, Object>();
 	protected long startTime;
@@ -119,6 +152,112 @@ public class ReportRunner {
 		return i;
 	}
 	
+	/**
+	 * Receives the cells of a sheet that is read without loading it into a workbook.
+	 */
+	protected interface SheetCellChecker {
+		/**
+		 * Check a single cell.
+		 * @param row
+		 * The index of the row containing the cell.
+		 * @param col
+		 * The index of the column containing the cell.
+		 * @param value
+		 * The text of a string cell (whether it is shared or inline), the value of any other cell, or null if the cell has no value.
+		 * @param numeric
+		 * True if the cell is numeric.
+		 * @param style
+		 * The style of the cell.
+		 */
+		void checkCell( int row, int col, String value, boolean numeric, XSSFCellStyle style );
+	}
+	
+	protected int countRowsInFirstSheet(InputStream inputStream) throws IOException, XMLStreamException {
+		return countRowsInFirstSheet(inputStream, null);
+	}
+	
+	/**
+	 * Read the first sheet of an xlsx package without loading it into a workbook, checking that each row is written once and in order.
+	 * @param inputStream
+	 * The xlsx package.
+	 * @param checker
+	 * Passed every cell of the sheet, or null if the rows are only to be counted.
+	 * @return
+	 * The number of rows written to the first sheet.
+	 */
+	protected int countRowsInFirstSheet(InputStream inputStream, SheetCellChecker checker) throws IOException, XMLStreamException {
+		XSSFReader xssfReader;
+		StylesTable styles;
+		ReadOnlySharedStringsTable strings;
+		Iterator<InputStream> sheets;
+		try {
+			OPCPackage pkg = OPCPackage.open( inputStream );
+			xssfReader = new XSSFReader( pkg );
+			styles = xssfReader.getStylesTable();
+			strings = new ReadOnlySharedStringsTable( pkg );
+			sheets = xssfReader.getSheetsData();
+		} catch( OpenXML4JException ex ) {
+			throw new IOException( ex );
+		} catch( SAXException ex ) {
+			throw new IOException( ex );
+		}
+		if( ! sheets.hasNext() ) {
+			fail( "No first sheet in package" );
+		}
+		
+		XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader( sheets.next() );
+		int count = 0;
+		int lastRow = 0;
+		CellReference cellRef = null;
+		String cellType = null;
+		XSSFCellStyle cellStyle = null;
+		String cellValue = null;
+		while( reader.hasNext() ) {
+			int event = reader.next();
+			if( event == XMLStreamConstants.START_ELEMENT ) {
+				String name = reader.getLocalName();
+				if( "row".equals( name ) ) {
+					int row = Integer.parseInt( reader.getAttributeValue( null, "r" ) );
+					assertTrue( "Row " + row + " written after row " + lastRow, row > lastRow );
+					lastRow = row;
+					++count;
+				} else if( "c".equals( name ) ) {
+					cellRef = new CellReference( reader.getAttributeValue( null, "r" ) );
+					cellType = reader.getAttributeValue( null, "t" );
+					String styleIndex = reader.getAttributeValue( null, "s" );
+					cellStyle = styles.getStyleAt( styleIndex == null ? 0 : Integer.parseInt( styleIndex ) );
+					cellValue = null;
+				} else if( "v".equals( name ) ) {
+					cellValue = reader.getElementText();
+				} else if( "t".equals( name ) ) {
+					// Inline strings may be split into runs
+					cellValue = ( cellValue == null ? "" : cellValue ) + reader.getElementText();
+				}
+			} else if( ( event == XMLStreamConstants.END_ELEMENT ) && "c".equals( reader.getLocalName() ) && ( checker != null ) ) {
+				if( "s".equals( cellType ) && ( cellValue != null ) ) {
+					cellValue = strings.getEntryAt( Integer.parseInt( cellValue ) );
+				}
+				checker.checkCell( cellRef.getRow(), cellRef.getCol(), cellValue, ( cellType == null ) || "n".equals( cellType ), cellStyle );
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Calculate the width that approximate geometry gives a column whose widest cell is the given cell.
+	 * @param workbook
+	 * The workbook containing the cell.
+	 * @param cell
+	 * A cell containing a single line of text.
+	 * @return
+	 * The width of the column, in the units used by Sheet.getColumnWidth.
+	 */
+	protected int approximateColumnWidth( Workbook workbook, Cell cell ) {
+		Font font = workbook.getFontAt( cell.getCellStyle().getFontIndex() );
+		double width = ApproximateTextMetrics.lineWidthPoints( cell.getStringCellValue(), font ) / ApproximateTextMetrics.calculateDefaultCharWidth( workbook );
+		return (int)( width * 256 );
+	}
+	
 	protected int greatestNumColumns(Sheet sheet) {
 		int result = 0;
 		for(Row row : sheet) {
@@ -528,6 +667,42 @@ public class ReportRunner {
 		if( structuredHeader != null ) {
 			renderOptions.setOption( ExcelEmitter.STRUCTURED_HEADER, structuredHeader );
 		}
+		if( streamingWindow != null ) {
+			renderOptions.setOption( ExcelEmitter.STREAMING_WINDOW, streamingWindow );
+		}
+		if( streamingThreshold != null ) {
+			renderOptions.setOption( ExcelEmitter.STREAMING_THRESHOLD, streamingThreshold );
+		}
+		if( sizeHint != null ) {
+			renderOptions.setOption( ExcelEmitter.SIZE_HINT, sizeHint );
+		}
+		if( spillSheets != null ) {
+			renderOptions.setOption( ExcelEmitter.SPILL_SHEETS, spillSheets );
+		}
+		if( inlineStringsThreshold != null ) {
+			renderOptions.setOption( ExcelEmitter.INLINE_STRINGS_THRESHOLD, inlineStringsThreshold );
+		}
+		if( geometryMode != null ) {
+			renderOptions.setOption( ExcelEmitter.GEOMETRY_MODE, geometryMode );
+		}
+		if( geometryThreads != null ) {
+			renderOptions.setOption( ExcelEmitter.GEOMETRY_THREADS, geometryThreads );
+		}
+		if( autoColWidthsSampleRows != null ) {
+			renderOptions.setOption( ExcelEmitter.AUTO_COL_WIDTHS_SAMPLE_ROWS, autoColWidthsSampleRows );
+		}
+		if( autoColWidthsPercentile != null ) {
+			renderOptions.setOption( ExcelEmitter.AUTO_COL_WIDTHS_PERCENTILE, autoColWidthsPercentile );
+		}
+		if( traceEvents != null ) {
+			renderOptions.setOption( ExcelEmitter.TRACE_EVENTS, traceEvents );
+		}
+		if( traceDump != null ) {
+			renderOptions.setOption( ExcelEmitter.TRACE_DUMP, traceDump );
+		}
+		if( metricsListener != null ) {
+			renderOptions.setOption( ExcelEmitter.METRICS_LISTENER, metricsListener );
+		}
 		
 		return renderOptions;
 	}
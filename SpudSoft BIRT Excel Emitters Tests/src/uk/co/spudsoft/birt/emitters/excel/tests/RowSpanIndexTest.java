@@ -0,0 +1,109 @@
+package uk.co.spudsoft.birt.emitters.excel.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import uk.co.spudsoft.birt.emitters.excel.Area;
+import uk.co.spudsoft.birt.emitters.excel.RowSpanIndex;
+import uk.co.spudsoft.birt.emitters.excel.framework.Logger;
+
+/**
+ * Check that RowSpanIndex gives the same answers as considering every span, as HandlerState used to.
+ */
+public class RowSpanIndexTest {
+
+	private static int linearNumberSpanBefore( List<Area> spans, int row, int col ) {
+		int i = 0;
+		for( Area a : spans ) {
+			if( a.getLastRow() < row ) {
+				continue;
+			}
+			if( a.getFirstCol() <= col ) {
+				col += ( a.getLastCol() - a.getFirstCol() ) + 1;
+			}
+			if( ( row > a.getFirstRow() ) && ( a.getFirstCol() <= col ) ) {
+				i += ( a.getLastCol() - a.getFirstCol() ) + 1;
+			}
+		}
+		return i;
+	}
+
+	private static int linearRowsSpanned( List<Area> spans, int row, int col ) {
+		for( Area a : spans ) {
+			if( ( a.getFirstRow() == row ) && ( a.getFirstCol() == col ) ) {
+				return a.getLastRow() - a.getFirstRow();
+			}
+		}
+		return 0;
+	}
+
+	private static void assertSameAnswers( RowSpanIndex index, List<Area> spans, int row ) {
+		for( int col = 0; col < 16; ++col ) {
+			assertEquals( "Spans before [" + row + "," + col + "]", linearNumberSpanBefore( spans, row, col ), index.computeNumberSpanBefore( row, col ) );
+			assertEquals( "Rows spanned from [" + row + "," + col + "]", linearRowsSpanned( spans, row, col ), index.findRowsSpanned( row, col ) );
+		}
+	}
+
+	@Test
+	public void testSpansRetiredAsRowsAdvance() {
+		RowSpanIndex index = new RowSpanIndex( new Logger( "RowSpanIndexTest" ) );
+		List<Area> spans = new ArrayList<Area>();
+
+		// Three spans in the same column, one ending before each of the others
+		Area[] areas = new Area[] { new Area( 0, 1, 2, 1 ), new Area( 0, 3, 5, 4 ), new Area( 3, 1, 4, 1 ) };
+		for( Area a : areas ) {
+			index.add( a );
+			spans.add( a );
+		}
+		for( int row = 0; row < 8; ++row ) {
+			assertSameAnswers( index, spans, row );
+		}
+		// A nested table returning to the row that it started on
+		assertSameAnswers( index, spans, 1 );
+		assertSameAnswers( index, spans, 6 );
+	}
+
+	@Test
+	public void testRandomSpans() {
+		Random random = new Random( 20 );
+		RowSpanIndex index = new RowSpanIndex( new Logger( "RowSpanIndexTest" ) );
+		List<Area> spans = new ArrayList<Area>();
+
+		for( int row = 0; row < 200; ++row ) {
+			int spansOnRow = random.nextInt( 3 );
+			for( int i = 0; i < spansOnRow; ++i ) {
+				int firstCol = random.nextInt( 12 );
+				Area a = new Area( row, firstCol, row + random.nextInt( 6 ), firstCol + random.nextInt( 3 ) );
+				index.add( a );
+				spans.add( a );
+			}
+			assertSameAnswers( index, spans, row );
+			if( random.nextInt( 10 ) == 0 ) {
+				// A nested table returning to the row that it started on
+				assertSameAnswers( index, spans, Math.max( 0, row - 1 - random.nextInt( 8 ) ) );
+			}
+			if( random.nextInt( 20 ) == 0 ) {
+				int removeCol = random.nextInt( 12 );
+				index.removeSpansInRowOrColumn( row, removeCol );
+				for( Iterator<Area> iter = spans.iterator(); iter.hasNext(); ) {
+					Area a = iter.next();
+					if( ( a.getFirstRow() == row ) || ( a.getFirstCol() == removeCol ) ) {
+						iter.remove();
+					}
+				}
+				assertSameAnswers( index, spans, row );
+			}
+		}
+
+		index.clear();
+		spans.clear();
+		assertSameAnswers( index, spans, 0 );
+	}
+
+}
@@ -0,0 +1,80 @@
+package uk.co.spudsoft.birt.emitters.excel.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.InputStream;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+public class SpillSheetsTest extends ReportRunner {
+
+	private int countStreamingTempFiles() {
+		String[] names = new File( System.getProperty( "java.io.tmpdir" ) ).list( new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith( "poi-sxssf-sheet" );
+			}
+		} );
+		return names == null ? 0 : names.length;
+	}
+
+	@Test
+	public void testSpilledSheets() throws Exception {
+		
+		spillSheets = true;
+		InputStream inputStream = runAndRenderReport("StructuredHeader.rptdesign", "xlsx");
+		assertNotNull(inputStream);
+		try {
+			XSSFWorkbook workbook = new XSSFWorkbook(inputStream);
+			assertNotNull(workbook);
+			
+			assertEquals( 3, workbook.getNumberOfSheets() );
+	
+			assertEquals( 4, this.firstNullRow(workbook.getSheetAt(0)));
+			assertEquals( 4, this.firstNullRow(workbook.getSheetAt(1)));
+			assertEquals( 4, this.firstNullRow(workbook.getSheetAt(2)));
+			
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	@Test
+	public void testSpilledTempFilesDeleted() throws Exception {
+		
+		int tempFilesBefore = countStreamingTempFiles();
+		spillSheets = true;
+		InputStream inputStream = runAndRenderReport("StructuredHeader.rptdesign", "xlsx");
+		assertNotNull(inputStream);
+		try {
+			assertEquals( tempFilesBefore, countStreamingTempFiles() );
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	@Test
+	public void testSpillIgnoredForXls() throws Exception {
+		
+		spillSheets = true;
+		InputStream inputStream = runAndRenderReport("StructuredHeader.rptdesign", "xls");
+		assertNotNull(inputStream);
+		try {
+			HSSFWorkbook workbook = new HSSFWorkbook(inputStream);
+			assertNotNull(workbook);
+			
+			assertEquals( 3, workbook.getNumberOfSheets() );
+	
+			assertEquals( 4, this.firstNullRow(workbook.getSheetAt(0)));
+			
+		} finally {
+			inputStream.close();
+		}
+	}
+
+}
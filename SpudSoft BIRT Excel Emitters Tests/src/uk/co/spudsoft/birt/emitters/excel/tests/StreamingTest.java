@@ -0,0 +1,55 @@
+package uk.co.spudsoft.birt.emitters.excel.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.eclipse.birt.core.exception.BirtException;
+import org.junit.Test;
+
+public class StreamingTest extends ReportRunner {
+	
+	@Test
+	public void testStreamingIgnoredForXls() throws BirtException, IOException {
+
+		streamingWindow = 100;
+		InputStream inputStream = runAndRenderReport("AutoColWidths.rptdesign", "xls");
+		assertNotNull(inputStream);
+		try {
+			
+			HSSFWorkbook workbook = new HSSFWorkbook(inputStream);
+			assertNotNull(workbook);
+			
+			assertEquals( 1, workbook.getNumberOfSheets() );
+			assertEquals(23, this.firstNullRow(workbook.getSheetAt(0)));
+
+		} finally {
+			inputStream.close();
+		}
+	}
+	
+	@Test
+	public void testMegaXlsxStreamed() throws BirtException, IOException, XMLStreamException {
+
+		streamingWindow = 100;
+		InputStream inputStream = runAndRenderReport("MegaSize.rptdesign", "xlsx");
+		assertNotNull(inputStream);
+		try {
+			
+			// More rows than xls allows, none of them written twice or out of order, with their values and styles intact
+			MegaSizeChecker checker = new MegaSizeChecker();
+			assertTrue( this.countRowsInFirstSheet(inputStream, checker) > 65536 );
+			checker.assertComplete( 65536 );
+			
+		} finally {
+			inputStream.close();
+		}
+	}
+	
+}
@@ -0,0 +1,305 @@
+/********************************************************************************
+* (C) Copyright 2011, by James Talbut.
+*
+*   This program is free software: you can redistribute it and/or modify
+*   it under the terms of the GNU General Public License as published by
+*   the Free Software Foundation, either version 3 of the License, or
+*   (at your option) any later version.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of
+*   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*   GNU General Public License for more details.
+*
+*   You should have received a copy of the GNU General Public License
+*   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*   [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+*   in the United States and other countries.]
+********************************************************************************/
+
+package uk.co.spudsoft.birt.emitters.excel;
+
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * ApproximateTextMetrics estimates the size of text from fixed tables of character advances, without using java.awt fonts.
+ * <p>
+ * The tables are the standard metrics for Helvetica, Helvetica Bold and Times Roman (in thousandths of an em),
+ * which are close enough to Arial, Calibri and Times New Roman for row heights and column widths.
+ * Fonts are classified as sans-serif, serif or monospaced by name.
+ * </p>
+ * @author Jim Talbut
+ *
+ */
+public class ApproximateTextMetrics {
+
+	private static final char FIRST_CHAR = ' ';
+	private static final char LAST_CHAR = '~';
+
+	private static final short[] SANS_ADVANCES = {
+		278, 278, 355, 556, 556, 889, 667, 191, 333, 333, 389, 584, 278, 333, 278, 278,
+		556, 556, 556, 556, 556, 556, 556, 556, 556, 556, 278, 278, 584, 584, 584, 556,
+		1015, 667, 667, 722, 722, 667, 611, 778, 722, 278, 500, 667, 556, 833, 722, 778,
+		667, 778, 722, 667, 611, 722, 667, 944, 667, 667, 611, 278, 278, 278, 469, 556,
+		333, 556, 556, 500, 556, 556, 278, 556, 556, 222, 222, 500, 222, 833, 556, 556,
+		556, 556, 333, 500, 278, 556, 500, 722, 500, 500, 500, 334, 260, 334, 584
+	};
+
+	private static final short[] SANS_BOLD_ADVANCES = {
+		278, 333, 474, 556, 556, 889, 722, 238, 333, 333, 389, 584, 278, 333, 278, 278,
+		556, 556, 556, 556, 556, 556, 556, 556, 556, 556, 333, 333, 584, 584, 584, 611,
+		975, 722, 722, 722, 722, 667, 611, 778, 722, 278, 556, 722, 611, 833, 722, 778,
+		667, 778, 722, 667, 611, 722, 667, 944, 667, 667, 611, 333, 278, 333, 584, 556,
+		333, 556, 611, 556, 611, 556, 333, 611, 611, 278, 278, 556, 278, 889, 611, 611,
+		611, 611, 389, 556, 333, 611, 556, 778, 556, 556, 500, 389, 280, 389, 584
+	};
+
+	private static final short[] SERIF_ADVANCES = {
+		250, 333, 408, 500, 500, 833, 778, 180, 333, 333, 500, 564, 250, 333, 250, 278,
+		500, 500, 500, 500, 500, 500, 500, 500, 500, 500, 278, 278, 564, 564, 564, 444,
+		921, 722, 667, 667, 722, 611, 556, 722, 722, 333, 389, 722, 611, 889, 722, 722,
+		556, 722, 667, 556, 611, 722, 722, 944, 722, 722, 611, 333, 278, 333, 469, 500,
+		333, 444, 500, 444, 500, 444, 333, 500, 500, 278, 278, 500, 278, 778, 500, 500,
+		500, 500, 333, 389, 278, 500, 500, 722, 500, 500, 444, 480, 200, 480, 541
+	};
+
+	/**
+	 * The advance of every character in a monospaced font.
+	 */
+	private static final int MONOSPACED_ADVANCE = 600;
+	/**
+	 * The advance used for ideographs and other full width characters.
+	 */
+	private static final int FULL_WIDTH_ADVANCE = 1000;
+	/**
+	 * The factor applied to serif and monospaced advances for bold fonts (the sans-serif bold font has its own table).
+	 */
+	private static final double BOLD_FACTOR = 1.05;
+
+	/**
+	 * The height of a line (ascent + descent + leading), as a proportion of the font size.
+	 */
+	private static final float LINE_HEIGHT = 1.15f;
+	/**
+	 * The additional space (descent + leading) after the last line of a paragraph, as a proportion of the font size.
+	 */
+	private static final float PARAGRAPH_ADJUSTMENT = 0.245f;
+
+	private ApproximateTextMetrics() {
+	}
+
+	/**
+	 * Choose the table of advances for a font.
+	 * @return
+	 * The table of advances, or null if the font is monospaced.
+	 */
+	private static short[] advancesForFont( Font font ) {
+		String name = font.getFontName() == null ? "" : font.getFontName().toLowerCase();
+		if( name.contains( "courier" ) || name.contains( "mono" ) || name.contains( "consol" ) ) {
+			return null;
+		}
+		if( ! name.contains( "sans" )
+				&& ( name.contains( "times" ) || name.contains( "serif" ) || name.contains( "georgia" ) || name.contains( "garamond" ) || name.contains( "cambria" ) ) ) {
+			return SERIF_ADVANCES;
+		}
+		return ( font.getBoldweight() == Font.BOLDWEIGHT_BOLD ) ? SANS_BOLD_ADVANCES : SANS_ADVANCES;
+	}
+
+	/**
+	 * Estimate the advance of a single character.
+	 * @param advances
+	 * The table of advances from advancesForFont.
+	 * @param bold
+	 * True if the font is bold.
+	 * @param c
+	 * The character to measure.
+	 * @return
+	 * The advance in thousandths of an em.
+	 */
+	private static double charAdvance( short[] advances, boolean bold, char c ) {
+		double advance;
+		if( c >= '\u2E80' ) {
+			advance = FULL_WIDTH_ADVANCE;
+		} else if( advances == null ) {
+			advance = MONOSPACED_ADVANCE;
+		} else if( ( c >= FIRST_CHAR ) && ( c <= LAST_CHAR ) ) {
+			advance = advances[ c - FIRST_CHAR ];
+		} else {
+			advance = advances[ 'n' - FIRST_CHAR ];
+		}
+		if( bold && ( advances != SANS_BOLD_ADVANCES ) ) {
+			advance *= BOLD_FACTOR;
+		}
+		return advance;
+	}
+
+	/**
+	 * Estimate the width of a single line of text in a single font.
+	 * @param text
+	 * The text to measure, which should not contain line breaks.
+	 * @param font
+	 * The font the text is displayed in.
+	 * @return
+	 * The width of the text in points.
+	 */
+	public static double lineWidthPoints( String text, Font font ) {
+		short[] advances = advancesForFont( font );
+		boolean bold = font.getBoldweight() == Font.BOLDWEIGHT_BOLD;
+		double total = 0;
+		for( int i = 0; i < text.length(); ++i ) {
+			total += charAdvance( advances, bold, text.charAt( i ) );
+		}
+		return total * font.getFontHeightInPoints() / 1000.0;
+	}
+
+	/**
+	 * Find the font that applies to a character of a rich text string.
+	 */
+	private static Font fontAt( Font defaultFont, List< RichTextRun > richTextRuns, int index ) {
+		Font font = defaultFont;
+		for( RichTextRun run : richTextRuns ) {
+			if( run.startIndex > index ) {
+				break;
+			}
+			font = run.font;
+		}
+		return font;
+	}
+
+	/**
+	 * Estimate the height of a string formatted according to a set of RichTextRuns and fitted within a given width.
+	 * <br/>
+	 * Lines are wrapped at spaces (or within a word if the word alone is too wide), as StyleManagerUtils.calculateTextHeightPoints does.
+	 * @param sourceText
+	 * The string to be measured.
+	 * @param defaultFont
+	 * The font to be used prior to the first RichTextRun.
+	 * @param widthMM
+	 * The width of the output.
+	 * @param richTextRuns
+	 * The list of RichTextRuns to be applied to the string
+	 * @return
+	 * The height, in points, of a box big enough to contain the formatted sourceText.
+	 */
+	public static float calculateTextHeightPoints( String sourceText, Font defaultFont, double widthMM, List< RichTextRun> richTextRuns ) {
+		final double widthPt = 72 * Math.max( 0, widthMM - 6 ) / 25.4;
+
+		float totalHeight = 0;
+		int lineStartIndex = 0;
+		for( String textLine : sourceText.split("\n") ) {
+			float paragraphMaxSize = 0;
+			float lineMaxSize = 0;
+			double lineWidth = 0;
+			int lastBreak = -1;
+			double widthAtLastBreak = 0;
+			float sizeAtLastBreak = 0;
+			int lineChars = 0;
+			for( int i = 0; i < textLine.length(); ++i ) {
+				Font font = fontAt( defaultFont, richTextRuns, lineStartIndex + i );
+				char c = textLine.charAt( i );
+				float size = font.getFontHeightInPoints();
+				double advance = charAdvance( advancesForFont( font ), font.getBoldweight() == Font.BOLDWEIGHT_BOLD, c ) * size / 1000.0;
+				if( ( lineChars > 0 ) && ( c != ' ' ) && ( lineWidth + advance > widthPt ) ) {
+					// Wrap, at the last space if there is one on this line
+					totalHeight += lineMaxSize * LINE_HEIGHT;
+					if( lastBreak >= 0 ) {
+						lineWidth -= widthAtLastBreak;
+						lineMaxSize = sizeAtLastBreak;
+						lineChars = i - lastBreak - 1;
+					} else {
+						lineWidth = 0;
+						lineMaxSize = 0;
+						lineChars = 0;
+					}
+					lastBreak = -1;
+				}
+				lineWidth += advance;
+				lineMaxSize = Math.max( lineMaxSize, size );
+				paragraphMaxSize = Math.max( paragraphMaxSize, size );
+				++lineChars;
+				if( c == ' ' ) {
+					lastBreak = i;
+					widthAtLastBreak = lineWidth;
+					sizeAtLastBreak = 0;
+				} else if( lastBreak >= 0 ) {
+					sizeAtLastBreak = Math.max( sizeAtLastBreak, size );
+				}
+			}
+			if( lineChars == 0 ) {
+				// An empty line is measured as a single space
+				lineMaxSize = fontAt( defaultFont, richTextRuns, lineStartIndex ).getFontHeightInPoints();
+				paragraphMaxSize = Math.max( paragraphMaxSize, lineMaxSize );
+			}
+			totalHeight += lineMaxSize * LINE_HEIGHT + paragraphMaxSize * PARAGRAPH_ADJUSTMENT;
+			lineStartIndex += textLine.length() + 1;
+		}
+		return totalHeight;
+	}
+
+	/**
+	 * Get the text that Excel will display for a cell.
+	 * @return
+	 * The displayed text, or null if the cell does not contain a value that is measured.
+	 */
+	private static String cellText( Cell cell, DataFormatter formatter ) {
+		switch( cell.getCellType() ) {
+		case Cell.CELL_TYPE_STRING:
+			return cell.getStringCellValue();
+		case Cell.CELL_TYPE_NUMERIC:
+			return formatter.formatCellValue( cell );
+		case Cell.CELL_TYPE_BOOLEAN:
+			return String.valueOf( cell.getBooleanCellValue() ).toUpperCase();
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Estimate the width of the character used as the unit of column widths ('0') in the default font of a workbook.
+	 * @param wb
+	 * The workbook whose default font (font 0) should be used.
+	 * @return
+	 * The width of the default character in points.
+	 */
+	public static double calculateDefaultCharWidth( Workbook wb ) {
+		return lineWidthPoints( "0", wb.getFontAt( (short)0 ) );
+	}
+
+	/**
+	 * Estimate the width required by the contents of a single cell, equivalent to StyleManagerUtils.calculateCellWidth.
+	 * @param cell
+	 * The cell to measure.
+	 * @param formatter
+	 * The DataFormatter used to format numeric values.
+	 * @param defaultCharWidth
+	 * The result of calculateDefaultCharWidth.
+	 * @return
+	 * The width required, in characters, or -1 if the cell has no value to be measured.
+	 */
+	public static double calculateCellWidth( Cell cell, DataFormatter formatter, double defaultCharWidth ) {
+		String text = cellText( cell, formatter );
+		if( text == null ) {
+			return -1;
+		}
+		CellStyle style = cell.getCellStyle();
+		Font font = cell.getSheet().getWorkbook().getFontAt( style.getFontIndex() );
+
+		double textWidth = 0;
+		for( String line : text.split("\n") ) {
+			textWidth = Math.max( textWidth, lineWidthPoints( line, font ) );
+		}
+		if( style.getRotation() != 0 ) {
+			double angle = style.getRotation() * 2.0 * Math.PI / 360.0;
+			textWidth = Math.abs( textWidth * Math.cos( angle ) ) + Math.abs( font.getFontHeightInPoints() * LINE_HEIGHT * Math.sin( angle ) );
+		}
+		return textWidth / defaultCharWidth + style.getIndention();
+	}
+
+}
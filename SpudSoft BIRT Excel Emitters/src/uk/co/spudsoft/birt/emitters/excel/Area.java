@@ -1,20 +1,53 @@
 package uk.co.spudsoft.birt.emitters.excel;
 
+/**
+ * A rectangular range of cells, from its top left to its bottom right cell (inclusive).
+ * <p>
+ * The corners are held as packed locations (see Coordinate.pack), so an Area is a single small object.
+ * </p>
+ */
 public class Area {
-    Coordinate x;
-    Coordinate y;
-    
-    public Area(Coordinate x, Coordinate y) {
-        this.x = x;
-        this.y = y;
-    }
+	private final long topLeft;
+	private final long bottomRight;
+	
+	public Area(int firstRow, int firstCol, int lastRow, int lastCol) {
+		this.topLeft = Coordinate.pack( firstRow, firstCol );
+		this.bottomRight = Coordinate.pack( lastRow, lastCol );
+	}
+
+	/**
+	 * The top left cell, packed by Coordinate.pack.
+	 */
+	public long getTopLeft() {
+		return topLeft;
+	}
+
+	/**
+	 * The bottom right cell, packed by Coordinate.pack.
+	 */
+	public long getBottomRight() {
+		return bottomRight;
+	}
+
+	public int getFirstRow() {
+		return Coordinate.rowOf( topLeft );
+	}
+
+	public int getFirstCol() {
+		return Coordinate.colOf( topLeft );
+	}
+
+	public int getLastRow() {
+		return Coordinate.rowOf( bottomRight );
+	}
 
-	public Coordinate getX() {
-		return x;
+	public int getLastCol() {
+		return Coordinate.colOf( bottomRight );
 	}
 
-	public Coordinate getY() {
-		return y;
+	@Override
+	public String toString() {
+		return "Area [" + getFirstRow() + "," + getFirstCol() + "]-[" + getLastRow() + "," + getLastCol() + "]";
 	}
     
 }
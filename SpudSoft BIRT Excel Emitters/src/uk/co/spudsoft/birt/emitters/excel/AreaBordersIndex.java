@@ -0,0 +1,132 @@
+/********************************************************************************
+* (C) Copyright 2011, by James Talbut.
+*
+*   This program is free software: you can redistribute it and/or modify
+*   it under the terms of the GNU General Public License as published by
+*   the Free Software Foundation, either version 3 of the License, or
+*   (at your option) any later version.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of
+*   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*   GNU General Public License for more details.
+*
+*   You should have received a copy of the GNU General Public License
+*   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*   [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+*   in the United States and other countries.]
+********************************************************************************/
+
+
+package uk.co.spudsoft.birt.emitters.excel;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * AreaBordersIndex holds the border overrides (AreaBorders) that are in force on the current sheet.
+ * <p>
+ * Borders are applied to a cell in the order in which they were added (later borders override earlier ones),
+ * so the index keeps that order.
+ * Borders for rows and merged cells are not needed once the rows below them are being written,
+ * so those that end above the most recently queried row are retired from the list of active borders.
+ * Borders for tables have no bottom row until the table ends, so they remain active until they are removed.
+ * Nested tables return to the row that they started on, so a query above the retired rows falls back to considering every border.
+ * </p>
+ * @author Jim Talbut
+ *
+ */
+public class AreaBordersIndex {
+
+	/**
+	 * Every border on the sheet, in the order added.
+	 */
+	private List<AreaBorders> borders = new ArrayList<AreaBorders>();
+	/**
+	 * The borders that may apply to rows on or below activeFromRow, in the order added.
+	 */
+	private List<AreaBorders> activeBorders = new ArrayList<AreaBorders>();
+	/**
+	 * Every border that ends above this row has been removed from activeBorders.
+	 */
+	private int activeFromRow;
+	/**
+	 * Reused result of findBorders.
+	 */
+	private List<AreaBorders> cellBorders = new ArrayList<AreaBorders>();
+
+	/**
+	 * Returns true if the border cannot apply to any cell on the given row or below.
+	 */
+	private static boolean endsAbove( AreaBorders areaBorders, int row ) {
+		return ( areaBorders.bottom >= 0 ) && ( areaBorders.bottom < row ) && ( areaBorders.top < row );
+	}
+
+	public void add( AreaBorders areaBorders ) {
+		borders.add( areaBorders );
+		if( ! endsAbove( areaBorders, activeFromRow ) ) {
+			activeBorders.add( areaBorders );
+		}
+	}
+
+	public void remove( AreaBorders areaBorders ) {
+		if( borders.remove( areaBorders ) ) {
+			activeBorders.remove( areaBorders );
+		}
+	}
+
+	/**
+	 * Remove all borders, at the end of a sheet.
+	 */
+	public void clear() {
+		borders.clear();
+		activeBorders.clear();
+		activeFromRow = 0;
+	}
+
+	/**
+	 * Get the borders that may apply to cells on a row, in the order in which they were added.
+	 * @param row
+	 * The row being written.
+	 * @return
+	 * The borders to consider, which must not be modified.
+	 */
+	public List<AreaBorders> getBorders( int row ) {
+		if( row < activeFromRow ) {
+			return borders;
+		}
+		if( row > activeFromRow ) {
+			for( Iterator<AreaBorders> iter = activeBorders.iterator(); iter.hasNext(); ) {
+				if( endsAbove( iter.next(), row ) ) {
+					iter.remove();
+				}
+			}
+			activeFromRow = row;
+		}
+		return activeBorders;
+	}
+
+	/**
+	 * Get the borders whose columns include a cell, in the order in which they were added.
+	 * @param row
+	 * The row of the cell.
+	 * @param col
+	 * The column of the cell.
+	 * @return
+	 * The borders to consider, which must not be modified and are only valid until the next call to findBorders.
+	 */
+	public List<AreaBorders> findBorders( int row, int col ) {
+		cellBorders.clear();
+		for( AreaBorders areaBorders : getBorders( row ) ) {
+			if( ( ( areaBorders.left <= col ) && ( areaBorders.right >= col ) ) 
+					|| ( areaBorders.left == col ) 
+					|| ( areaBorders.right == col ) ) {
+				cellBorders.add( areaBorders );
+			}
+		}
+		return cellBorders;
+	}
+
+}
@@ -199,10 +199,7 @@ public class BirtStyle {
 		for(int i = 0; i < NUMBER_OF_STYLES; ++i ) {
 			CSSValue value = getProperty( i );
 			if( value != null ) {
-				if( value instanceof DataFormatValue ) {
-					value = StyleManagerUtils.cloneDataFormatValue((DataFormatValue)value);
-				}
-				
+				// DataFormatValues are shared, the StyleManagerUtils setters replace them rather than modifying them
  				result.propertyOverride[ i ] = value;
  			}
 		}
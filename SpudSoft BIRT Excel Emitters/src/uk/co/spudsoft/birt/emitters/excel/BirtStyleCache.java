@@ -0,0 +1,246 @@
+/********************************************************************************
+* (C) Copyright 2011, by James Talbut.
+*
+*   This program is free software: you can redistribute it and/or modify
+*   it under the terms of the GNU General Public License as published by
+*   the Free Software Foundation, either version 3 of the License, or
+*   (at your option) any later version.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of
+*   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*   GNU General Public License for more details.
+*
+*   You should have received a copy of the GNU General Public License
+*   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*   [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+*   in the United States and other countries.]
+********************************************************************************/
+
+package uk.co.spudsoft.birt.emitters.excel;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.birt.report.engine.content.ICellContent;
+import org.eclipse.birt.report.engine.content.IContent;
+import org.eclipse.birt.report.engine.content.IElement;
+import org.eclipse.birt.report.engine.content.IStyle;
+import org.eclipse.birt.report.engine.css.engine.StyleConstants;
+import org.w3c.dom.css.CSSValue;
+
+/**
+ * BirtStyleCache is a cache of BirtStyles to avoid recalculating them for content that is repeated (such as the cells in detail rows).
+ * <p>
+ * The computed style of a BIRT content element is determined by its own style (from its design element, style class and inline style)
+ * and the computed style of its parent, so the cache is keyed on those values for the element and all of its ancestors.
+ * </p><p>
+ * Lookups build their key in a single reusable StyleKey, which is only copied when a new entry is added,
+ * so a BirtStyleCache must not be shared between threads.
+ * </p>
+ * @author Jim Talbut
+ *
+ */
+public class BirtStyleCache {
+
+	/**
+	 * The maximum number of entries in each cache, if this is reached the cache is cleared.
+	 * This prevents the cache growing without limit for reports where every element has a different inline style.
+	 */
+	private static final int MAX_ENTRIES = 4096;
+
+	/**
+	 * StyleKey identifies the computed style of a content element by the parts that it is calculated from.
+	 * @author Jim Talbut
+	 *
+	 */
+	private static class StyleKey {
+		private Object[] parts;
+		private int length;
+		private int hash = 1;
+
+		public StyleKey(int capacity) {
+			this.parts = new Object[ capacity ];
+		}
+
+		private StyleKey(StyleKey other) {
+			this.parts = Arrays.copyOf( other.parts, other.length );
+			this.length = other.length;
+			this.hash = other.hash;
+		}
+
+		/**
+		 * Remove all the parts, so that the key can be reused.
+		 */
+		public void clear() {
+			Arrays.fill( parts, 0, length, null );
+			length = 0;
+			hash = 1;
+		}
+
+		public void add(Object part) {
+			if( length == parts.length ) {
+				parts = Arrays.copyOf( parts, length * 2 );
+			}
+			parts[ length++ ] = part;
+			hash = 31 * hash + ( part == null ? 0 : part.hashCode() );
+		}
+
+		/**
+		 * Copy the key, for use in a map, when the key itself is going to be reused.
+		 */
+		public StyleKey copy() {
+			return new StyleKey( this );
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if( this == obj ) {
+				return true;
+			}
+			if( ! ( obj instanceof StyleKey ) ) {
+				return false;
+			}
+			StyleKey other = (StyleKey)obj;
+			if( ( hash != other.hash ) || ( length != other.length ) ) {
+				return false;
+			}
+			for( int i = 0; i < length; ++i ) {
+				// Design elements are compared by identity, everything else is a String or an Integer
+				if( ( parts[ i ] != other.parts[ i ] )
+						&& ( ( parts[ i ] == null ) || ! parts[ i ].equals( other.parts[ i ] ) ) ) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private Map<StyleKey, BirtStyle> styles = new HashMap<StyleKey, BirtStyle>();
+	private Map<StyleKey, String> displays = new HashMap<StyleKey, String>();
+	/**
+	 * The key that every lookup is built in.
+	 */
+	private StyleKey lookupKey = new StyleKey( 32 );
+	private CSSValuePool valuePool;
+	
+	/**
+	 * @param valuePool
+	 * The pool used to intern the values of cached styles, so that the values shared by their clones are canonical.
+	 */
+	public BirtStyleCache(CSSValuePool valuePool) {
+		this.valuePool = valuePool;
+	}
+
+	/**
+	 * Add the parts that determine the computed style of an element to a key.
+	 * @param key
+	 * The key to add to.
+	 * @param element
+	 * The element whose style is being identified.
+	 * @param includeAncestors
+	 * If true the parts that identify the style of each ancestor of element will also be added.
+	 */
+	private static void addKeyParts( StyleKey key, IContent element, boolean includeAncestors ) {
+		IElement current = element;
+		while( current instanceof IContent ) {
+			IContent content = (IContent)current;
+			key.add( content.getGenerateBy() );
+			key.add( content.getStyleClass() );
+			IStyle inlineStyle = content.getInlineStyle();
+			key.add( ( ( inlineStyle == null ) || inlineStyle.isEmpty() ) ? null : inlineStyle.getCssText() );
+			if( content instanceof ICellContent ) {
+				// Cells inherit from their column as well as their row
+				key.add( Integer.valueOf( ((ICellContent)content).getColumn() ) );
+			}
+			if( ! includeAncestors ) {
+				break;
+			}
+			current = content.getParent();
+		}
+		key.add( null );
+	}
+
+	/**
+	 * Get a BirtStyle representing the computed style of a BIRT content element.
+	 * @param element
+	 * The element whose style is required.
+	 * @return
+	 * A BirtStyle that the caller is free to modify.
+	 */
+	public BirtStyle getStyle( IContent element ) {
+		return getStyle( null, element );
+	}
+
+	/**
+	 * Get a BirtStyle representing the computed style of a BIRT cell overlaid with the computed style of an element within it.
+	 * @param cell
+	 * The cell whose style forms the base style, may be null.
+	 * @param element
+	 * The element whose style is overlaid on the cell style, may be null if cell is not null.
+	 * @return
+	 * A BirtStyle that the caller is free to modify.
+	 */
+	public BirtStyle getStyle( IContent cell, IContent element ) {
+		StyleKey key = lookupKey;
+		key.clear();
+		if( cell != null ) {
+			addKeyParts( key, cell, true );
+		}
+		if( element != null ) {
+			addKeyParts( key, element, true );
+		}
+
+		BirtStyle birtStyle = styles.get( key );
+		if( birtStyle == null ) {
+			if( cell != null ) {
+				birtStyle = new BirtStyle( cell );
+				if( element != null ) {
+					birtStyle.overlay( element );
+				}
+			} else {
+				birtStyle = new BirtStyle( element );
+			}
+			valuePool.intern( birtStyle );
+			if( styles.size() >= MAX_ENTRIES ) {
+				styles.clear();
+			}
+			styles.put( key.copy(), birtStyle );
+		}
+		return birtStyle.clone();
+	}
+
+	/**
+	 * Get the display property (block or inline) of a BIRT content element.
+	 * <br/>
+	 * The display property is not inherited, so this only depends upon the element itself and not its ancestors.
+	 * @param element
+	 * The element whose display property is required.
+	 * @return
+	 * The CSS text of the display property, or "block" if it is not set.
+	 */
+	public String getDisplay( IContent element ) {
+		StyleKey key = lookupKey;
+		key.clear();
+		addKeyParts( key, element, false );
+
+		String display = displays.get( key );
+		if( display == null ) {
+			CSSValue value = element.getComputedStyle().getProperty( StyleConstants.STYLE_DISPLAY );
+			display = ( value == null ) ? "block" : value.getCssText();
+			if( displays.size() >= MAX_ENTRIES ) {
+				displays.clear();
+			}
+			displays.put( key.copy(), display );
+		}
+		return display;
+	}
+
+}
@@ -0,0 +1,156 @@
+/********************************************************************************
+* (C) Copyright 2011, by James Talbut.
+*
+*   This program is free software: you can redistribute it and/or modify
+*   it under the terms of the GNU General Public License as published by
+*   the Free Software Foundation, either version 3 of the License, or
+*   (at your option) any later version.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of
+*   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*   GNU General Public License for more details.
+*
+*   You should have received a copy of the GNU General Public License
+*   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*   [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+*   in the United States and other countries.]
+********************************************************************************/
+
+package uk.co.spudsoft.birt.emitters.excel;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.eclipse.birt.report.engine.css.engine.value.DataFormatValue;
+import org.w3c.dom.css.CSSValue;
+
+/**
+ * CSSValuePool maps each distinct CSSValue to a single canonical instance, so that equal values held by different BirtStyles can be compared by reference.
+ * <p>
+ * Values are only treated as equal if they have the same CSS text as well as being equal, so the hash (which is based upon the CSS text) always agrees with the comparison.
+ * Interning is an optimisation, code comparing styles must still work if equal values are not the same instance.
+ * </p><p>
+ * DataFormatValues are included, they are never modified once they are in a BirtStyle (the StyleManagerUtils setters always work on a copy).
+ * </p>
+ * @author Jim Talbut
+ *
+ */
+public class CSSValuePool {
+
+	/**
+	 * The maximum number of values in the pool, if this is reached the pool is cleared.
+	 * This prevents the pool growing without limit for reports with very many distinct values.
+	 */
+	private static final int MAX_VALUES = 4096;
+
+	/**
+	 * ValueKey wraps a CSSValue to find the canonical instance of values that are equal.
+	 * @author Jim Talbut
+	 *
+	 */
+	private static class ValueKey {
+		private CSSValue value;
+		private String cssText;
+		private int hash;
+
+		public ValueKey(CSSValue value) {
+			this.value = value;
+			if( value instanceof DataFormatValue ) {
+				DataFormatValue dataFormat = (DataFormatValue)value;
+				this.hash = 31 * StyleManagerUtils.dataFormatHashCode( dataFormat ) + objectHashCode( dataFormat.getStringPattern() );
+			} else {
+				this.cssText = value.getCssText();
+				this.hash = objectHashCode( cssText );
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if( this == obj ) {
+				return true;
+			}
+			if( ! ( obj instanceof ValueKey ) ) {
+				return false;
+			}
+			ValueKey other = (ValueKey)obj;
+			if( hash != other.hash ) {
+				return false;
+			}
+			if( ( value instanceof DataFormatValue ) || ( other.value instanceof DataFormatValue ) ) {
+				return ( value instanceof DataFormatValue ) && ( other.value instanceof DataFormatValue )
+						&& dataFormatsIdentical( (DataFormatValue)value, (DataFormatValue)other.value );
+			}
+			return StyleManagerUtils.objectsEqual( cssText, other.cssText ) && value.equals( other.value );
+		}
+	}
+
+	private Map<ValueKey, CSSValue> values = new HashMap<ValueKey, CSSValue>();
+	private Map<CSSValue, CSSValue> canonicalValues = new IdentityHashMap<CSSValue, CSSValue>();
+
+	private static int objectHashCode(Object value) {
+		return ( value == null ) ? 0 : value.hashCode();
+	}
+
+	/**
+	 * Compare every pattern and locale in two DataFormatValues.
+	 * <br/>
+	 * This is stricter than StyleManagerUtils.dataFormatsEquivalent, which ignores the locales.
+	 */
+	private static boolean dataFormatsIdentical( DataFormatValue dataFormat1, DataFormatValue dataFormat2 ) {
+		return StyleManagerUtils.dataFormatsEquivalent( dataFormat1, dataFormat2 )
+				&& StyleManagerUtils.objectsEqual( dataFormat1.getStringPattern(), dataFormat2.getStringPattern() )
+				&& StyleManagerUtils.objectsEqual( dataFormat1.getNumberLocale(), dataFormat2.getNumberLocale() )
+				&& StyleManagerUtils.objectsEqual( dataFormat1.getDateLocale(), dataFormat2.getDateLocale() )
+				&& StyleManagerUtils.objectsEqual( dataFormat1.getDateTimeLocale(), dataFormat2.getDateTimeLocale() )
+				&& StyleManagerUtils.objectsEqual( dataFormat1.getTimeLocale(), dataFormat2.getTimeLocale() )
+				&& StyleManagerUtils.objectsEqual( dataFormat1.getStringLocale(), dataFormat2.getStringLocale() );
+	}
+
+	/**
+	 * Obtain the canonical instance of a CSSValue.
+	 * @param value
+	 * The value to look up.
+	 * @return
+	 * The canonical instance that is equal to value (which will be value itself if no equal value has been seen before), or null if value is null.
+	 */
+	public CSSValue intern( CSSValue value ) {
+		if( ( value == null ) || canonicalValues.containsKey( value ) ) {
+			return value;
+		}
+		ValueKey key = new ValueKey( value );
+		CSSValue result = values.get( key );
+		if( result == null ) {
+			if( values.size() >= MAX_VALUES ) {
+				values.clear();
+				canonicalValues.clear();
+			}
+			values.put( key, value );
+			canonicalValues.put( value, value );
+			result = value;
+		}
+		return result;
+	}
+
+	/**
+	 * Replace every property of a BirtStyle with its canonical instance.
+	 * @param birtStyle
+	 * The style to update.
+	 */
+	public void intern( BirtStyle birtStyle ) {
+		for( int i = 0; i < BirtStyle.NUMBER_OF_STYLES; ++i ) {
+			CSSValue value = birtStyle.getProperty( i );
+			if( value != null ) {
+				birtStyle.setProperty( i, intern( value ) );
+			}
+		}
+	}
+
+}
@@ -0,0 +1,338 @@
+/********************************************************************************
+* (C) Copyright 2011, by James Talbut.
+*
+*   This program is free software: you can redistribute it and/or modify
+*   it under the terms of the GNU General Public License as published by
+*   the Free Software Foundation, either version 3 of the License, or
+*   (at your option) any later version.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of
+*   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*   GNU General Public License for more details.
+*
+*   You should have received a copy of the GNU General Public License
+*   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*   [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+*   in the United States and other countries.]
+********************************************************************************/
+
+package uk.co.spudsoft.birt.emitters.excel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/**
+ * ColumnWidthEstimator accumulates the widths required by the columns of a table as its cells are written.
+ * <p>
+ * The cells that are considered are the same as those that SheetUtil.getColumnWidth would consider if it were run over the sampled detail rows when the table ends:
+ * <ul>
+ * <li>Only rows from the start of the first detail band (for a grid, the start of the grid) are considered, up to the sample size (if any).</li>
+ * <li>Rows after the end of the last detail band are not considered, so rows outside detail bands are held back until another detail band ends.</li>
+ * <li>Cells that are (or become) part of a merged region are not considered, unless the region is removed again.</li>
+ * <li>Cells in rows that are removed are not considered.</li>
+ * </ul>
+ * This means that nothing has to be read back from the sheet when the table ends, which may not be possible if rows have been streamed out.
+ * <br/>
+ * Once rows are finished only the number of cells of each width in each column is kept for them, so considering every row of a large table
+ * does not require anything to be kept for each cell.
+ * </p>
+ * @author Jim Talbut
+ *
+ */
+public class ColumnWidthEstimator {
+
+	/**
+	 * StyleManagerUtils used to measure cells exactly, or null to use ApproximateTextMetrics.
+	 */
+	private StyleManagerUtils smu;
+	private Workbook wb;
+	private DataFormatter formatter = new DataFormatter();
+	private double defaultCharWidth = -1;
+	private int columnCount;
+	/**
+	 * The number of rows after the first detail row that are considered, zero or less to consider all rows.
+	 */
+	private int sampleRows;
+	private int firstRow = -1;
+	private boolean inDetails;
+
+	/**
+	 * For each column, the number of cells that required each width.
+	 */
+	private List< TreeMap< Double, Integer > > widths;
+	private int[] cellCounts;
+	/**
+	 * Widths of cells in rows outside the detail bands, by row and then column, which will only be considered if another detail band ends.
+	 */
+	private TreeMap< Integer, Map< Integer, Double > > pendingRows = new TreeMap< Integer, Map< Integer, Double > >();
+	/**
+	 * Widths of the cells that are currently being considered.
+	 */
+	private CoordinateMap< Double > recordedCells = new CoordinateMap< Double >();
+	/**
+	 * Cells that are part of merged regions.
+	 */
+	private CoordinateMap< Boolean > mergedCells = new CoordinateMap< Boolean >();
+	/**
+	 * Rows above this one are finished, recordedCells and mergedCells no longer contain anything for them.
+	 */
+	private int finishedRows;
+
+	/**
+	 * @param smu
+	 * The StyleManagerUtils used to measure cells exactly, or null to estimate the widths using ApproximateTextMetrics.
+	 * @param wb
+	 * The workbook being generated.
+	 * @param columnCount
+	 * The number of columns in the table.
+	 * @param sampleRows
+	 * The number of rows after the first detail row to be considered, zero or less to consider all rows.
+	 */
+	public ColumnWidthEstimator(StyleManagerUtils smu, Workbook wb, int columnCount, int sampleRows) {
+		this.smu = smu;
+		this.wb = wb;
+		this.columnCount = columnCount;
+		this.sampleRows = sampleRows;
+		this.widths = new ArrayList< TreeMap< Double, Integer > >( columnCount );
+		for( int i = 0; i < columnCount; ++i ) {
+			widths.add( new TreeMap< Double, Integer >() );
+		}
+		this.cellCounts = new int[ columnCount ];
+	}
+
+	/**
+	 * Record the start of a detail band (or a grid).
+	 * @param rowNum
+	 * The first row of the detail band, only used for the first detail band.
+	 */
+	public void startDetails( int rowNum ) {
+		if( firstRow < 0 ) {
+			firstRow = rowNum;
+		}
+		inDetails = true;
+	}
+
+	/**
+	 * Test whether the first detail band (or grid) has started, which fixes the rows that are sampled.
+	 */
+	public boolean hasStartedDetails() {
+		return firstRow >= 0;
+	}
+
+	/**
+	 * Get the last row that will be sampled.
+	 * @return
+	 * The index of the last row, Integer.MAX_VALUE if every row will be sampled or the first detail band has not started.
+	 */
+	public int getLastSampleRow() {
+		return ( ( firstRow < 0 ) || ( sampleRows <= 0 ) ) ? Integer.MAX_VALUE : firstRow + sampleRows;
+	}
+
+	/**
+	 * Record the end of a detail band, any rows held back since the previous detail band are now considered.
+	 */
+	public void endDetails() {
+		inDetails = false;
+		for( Map.Entry< Integer, Map< Integer, Double > > row : pendingRows.entrySet() ) {
+			for( Map.Entry< Integer, Double > cell : row.getValue().entrySet() ) {
+				addWidth( row.getKey(), cell.getKey(), cell.getValue() );
+			}
+		}
+		pendingRows.clear();
+	}
+
+	private boolean inSample( int rowNum, int colNum ) {
+		return ( firstRow >= 0 )
+				&& ( rowNum >= firstRow )
+				&& ( ( sampleRows <= 0 ) || ( rowNum <= firstRow + sampleRows ) )
+				&& ( colNum < columnCount );
+	}
+
+	private double measure( Cell cell ) {
+		if( smu == null ) {
+			if( defaultCharWidth < 0 ) {
+				defaultCharWidth = ApproximateTextMetrics.calculateDefaultCharWidth( wb );
+			}
+			return ApproximateTextMetrics.calculateCellWidth( cell, formatter, defaultCharWidth );
+		} else {
+			if( defaultCharWidth < 0 ) {
+				defaultCharWidth = smu.calculateDefaultCharWidth( wb );
+			}
+			return smu.calculateCellWidth( cell, formatter, defaultCharWidth );
+		}
+	}
+
+	private void addWidth( int rowNum, int colNum, double width ) {
+		if( rowNum >= finishedRows ) {
+			recordedCells.put( rowNum, colNum, width );
+		}
+		TreeMap< Double, Integer > counts = widths.get( colNum );
+		Integer count = counts.get( width );
+		counts.put( width, count == null ? 1 : count + 1 );
+		++cellCounts[ colNum ];
+	}
+
+	private void removeWidth( int colNum, double width ) {
+		TreeMap< Double, Integer > counts = widths.get( colNum );
+		Integer count = counts.get( width );
+		if( count != null ) {
+			if( count > 1 ) {
+				counts.put( width, count - 1 );
+			} else {
+				counts.remove( width );
+			}
+			--cellCounts[ colNum ];
+		}
+	}
+
+	/**
+	 * Stop considering a cell, if it has been considered previously.
+	 */
+	private void forgetCell( int rowNum, int colNum ) {
+		Map< Integer, Double > pendingRow = pendingRows.get( rowNum );
+		if( pendingRow != null ) {
+			pendingRow.remove( colNum );
+		}
+		Double width = recordedCells.remove( rowNum, colNum );
+		if( width != null ) {
+			removeWidth( colNum, width );
+		}
+	}
+
+	/**
+	 * Consider a cell whose value and style have been set, replacing anything previously recorded for the cell.
+	 * @param cell
+	 * The cell that has been written.
+	 */
+	public void recordCell( Cell cell ) {
+		int rowNum = cell.getRowIndex();
+		int colNum = cell.getColumnIndex();
+		if( ! inSample( rowNum, colNum ) || ( rowNum < finishedRows ) || mergedCells.containsKey( rowNum, colNum ) ) {
+			return ;
+		}
+		forgetCell( rowNum, colNum );
+		double width = measure( cell );
+		if( width < 0 ) {
+			return ;
+		}
+		if( inDetails ) {
+			addWidth( rowNum, colNum, width );
+		} else {
+			Map< Integer, Double > pendingRow = pendingRows.get( rowNum );
+			if( pendingRow == null ) {
+				pendingRow = new HashMap< Integer, Double >();
+				pendingRows.put( rowNum, pendingRow );
+			}
+			pendingRow.put( colNum, width );
+		}
+	}
+
+	/**
+	 * Stop considering the cells in a merged region.
+	 * @param region
+	 * The region that has been added to the sheet.
+	 */
+	public void recordMergedRegion( CellRangeAddress region ) {
+		if( firstRow < 0 ) {
+			// startDetails will be told about the region if it overlaps the sample
+			return ;
+		}
+		int lastRow = Math.min( region.getLastRow(), getLastSampleRow() );
+		int lastCol = Math.min( region.getLastColumn(), columnCount - 1 );
+		for( int rowNum = Math.max( region.getFirstRow(), Math.max( firstRow, finishedRows ) ); rowNum <= lastRow; ++rowNum ) {
+			for( int colNum = region.getFirstColumn(); colNum <= lastCol; ++colNum ) {
+				mergedCells.put( rowNum, colNum, Boolean.TRUE );
+				forgetCell( rowNum, colNum );
+			}
+		}
+	}
+
+	/**
+	 * Start considering the cells in a merged region again, because the region has been removed.
+	 * <br/>
+	 * Cells in the region that have already been written are not considered until they are recorded again.
+	 * @param region
+	 * The region that has been removed.
+	 */
+	public void recordUnmergedRegion( CellRangeAddress region ) {
+		int lastRow = Math.min( region.getLastRow(), getLastSampleRow() );
+		int lastCol = Math.min( region.getLastColumn(), columnCount - 1 );
+		for( int rowNum = Math.max( region.getFirstRow(), finishedRows ); rowNum <= lastRow; ++rowNum ) {
+			for( int colNum = region.getFirstColumn(); colNum <= lastCol; ++colNum ) {
+				mergedCells.remove( rowNum, colNum );
+			}
+		}
+	}
+
+	/**
+	 * Stop considering the cells in a row that is being removed from the sheet.
+	 * @param rowNum
+	 * The index of the row that is being removed.
+	 */
+	public void removeRow( int rowNum ) {
+		for( int colNum = 0; colNum < columnCount; ++colNum ) {
+			forgetCell( rowNum, colNum );
+		}
+		pendingRows.remove( rowNum );
+	}
+
+	/**
+	 * Record that no more cells will be written to the rows above a given row, and no regions will be merged or unmerged in them.
+	 * <br/>
+	 * The widths of the cells in those rows continue to count towards their columns, but the widths of individual cells are no longer kept.
+	 * @param rowNum
+	 * The index of the first row that may still change.
+	 */
+	public void finishRowsAbove( int rowNum ) {
+		if( ( firstRow < 0 ) || ( rowNum <= finishedRows ) ) {
+			return ;
+		}
+		int lastRow = Math.min( rowNum - 1, getLastSampleRow() );
+		for( int row = Math.max( firstRow, finishedRows ); row <= lastRow; ++row ) {
+			for( int colNum = 0; colNum < columnCount; ++colNum ) {
+				recordedCells.remove( row, colNum );
+				mergedCells.remove( row, colNum );
+			}
+		}
+		finishedRows = rowNum;
+	}
+
+	/**
+	 * Get the width required by a column.
+	 * @param colNum
+	 * The index of the column.
+	 * @param percentile
+	 * The percentage of cells that must fit within the width, 100 (or more) for the widest cell.
+	 * @return
+	 * The width required, in characters, or -1 if no cells in the column have been considered.
+	 */
+	public double getColumnWidth( int colNum, int percentile ) {
+		TreeMap< Double, Integer > counts = widths.get( colNum );
+		if( counts.isEmpty() ) {
+			return -1;
+		}
+		if( percentile >= 100 ) {
+			return counts.lastKey();
+		}
+		int rank = Math.max( 1, (int)Math.ceil( cellCounts[ colNum ] * percentile / 100.0 ) );
+		int seen = 0;
+		for( Map.Entry< Double, Integer > entry : counts.entrySet() ) {
+			seen += entry.getValue();
+			if( seen >= rank ) {
+				return entry.getKey();
+			}
+		}
+		return counts.lastKey();
+	}
+
+}
@@ -1,5 +1,12 @@
 package uk.co.spudsoft.birt.emitters.excel;
 
+/**
+ * A cell location, as a row and column.
+ * <p>
+ * Where a lot of cell locations have to be held or looked up, they can be packed into a single long (see pack), 
+ * which avoids allocating a Coordinate for each location.
+ * </p>
+ */
 public class Coordinate {
 
 	private int row;
@@ -11,6 +18,40 @@ public class Coordinate {
 		this.col = col;
 	}
 
+	/**
+	 * Pack a cell location into a long, with the row in the high 32 bits and the column in the low 32 bits.
+	 * @param row
+	 * The row of the cell.
+	 * @param col
+	 * The column of the cell.
+	 * @return
+	 * The packed location, which is equal for equal locations.
+	 */
+	public static long pack( int row, int col ) {
+		return ( ( (long)row ) << 32 ) | ( col & 0xFFFFFFFFL );
+	}
+
+	/**
+	 * Get the row from a location packed by pack.
+	 */
+	public static int rowOf( long packed ) {
+		return (int)( packed >> 32 );
+	}
+
+	/**
+	 * Get the column from a location packed by pack.
+	 */
+	public static int colOf( long packed ) {
+		return (int)packed;
+	}
+
+	/**
+	 * Get this location packed into a long, see pack.
+	 */
+	public long pack() {
+		return pack( row, col );
+	}
+
 	public int getRow() {
 		return row;
 	}
@@ -0,0 +1,176 @@
+/********************************************************************************
+* (C) Copyright 2011, by James Talbut.
+*
+*   This program is free software: you can redistribute it and/or modify
+*   it under the terms of the GNU General Public License as published by
+*   the Free Software Foundation, either version 3 of the License, or
+*   (at your option) any later version.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of
+*   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*   GNU General Public License for more details.
+*
+*   You should have received a copy of the GNU General Public License
+*   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*   [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+*   in the United States and other countries.]
+********************************************************************************/
+
+
+package uk.co.spudsoft.birt.emitters.excel;
+
+import java.util.Arrays;
+
+/**
+ * CoordinateMap maps cell locations to values without allocating anything for each lookup or entry.
+ * <p>
+ * Locations are packed into longs (see Coordinate.pack) and held in an open addressing hash table,
+ * so looking up a cell does not need a Coordinate and adding a cell does not need a map entry object.
+ * </p>
+ * @author Jim Talbut
+ *
+ * @param <V>
+ * The type of the values.
+ */
+public class CoordinateMap<V> {
+
+	/**
+	 * Key for unused slots, which is the packed form of a row that cannot occur.
+	 */
+	private static final long EMPTY = Coordinate.pack( Integer.MIN_VALUE, 0 );
+	private static final int INITIAL_CAPACITY = 16;
+
+	private long[] keys;
+	private Object[] values;
+	private int size;
+
+	public CoordinateMap() {
+		allocate( INITIAL_CAPACITY );
+	}
+
+	private void allocate( int capacity ) {
+		keys = new long[ capacity ];
+		Arrays.fill( keys, EMPTY );
+		values = new Object[ capacity ];
+	}
+
+	/**
+	 * Mix all 64 bits of the key and take the high bits of the product, so that rows and columns do not cancel each other out.
+	 */
+	private static int hash( long key, int mask ) {
+		return (int)( ( key * 0x9E3779B97F4A7C15L ) >>> 32 ) & mask;
+	}
+
+	/**
+	 * Find the slot holding a key, or the empty slot where it would go.
+	 */
+	private int slot( long key ) {
+		int mask = keys.length - 1;
+		int i = hash( key, mask );
+		while( ( keys[ i ] != EMPTY ) && ( keys[ i ] != key ) ) {
+			i = ( i + 1 ) & mask;
+		}
+		return i;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean containsKey( int row, int col ) {
+		return keys[ slot( Coordinate.pack( row, col ) ) ] != EMPTY;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get( int row, int col ) {
+		return (V)values[ slot( Coordinate.pack( row, col ) ) ];
+	}
+
+	/**
+	 * Set the value for a cell.
+	 * @return
+	 * The previous value for the cell, or null if there was none.
+	 */
+	public V put( int row, int col, V value ) {
+		return put( Coordinate.pack( row, col ), value );
+	}
+
+	@SuppressWarnings("unchecked")
+	private V put( long key, V value ) {
+		int i = slot( key );
+		V previous = (V)values[ i ];
+		if( keys[ i ] == EMPTY ) {
+			if( ( size + 1 ) * 4 > keys.length * 3 ) {
+				grow();
+				i = slot( key );
+			}
+			keys[ i ] = key;
+			++size;
+		}
+		values[ i ] = value;
+		return previous;
+	}
+
+	/**
+	 * Remove the value for a cell.
+	 * @return
+	 * The value removed, or null if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove( int row, int col ) {
+		int i = slot( Coordinate.pack( row, col ) );
+		if( keys[ i ] == EMPTY ) {
+			return null;
+		}
+		V previous = (V)values[ i ];
+		--size;
+		// Move back any following entries that would no longer be found past the gap
+		int mask = keys.length - 1;
+		int j = i;
+		while( true ) {
+			keys[ i ] = EMPTY;
+			values[ i ] = null;
+			long key;
+			int home;
+			do {
+				j = ( j + 1 ) & mask;
+				key = keys[ j ];
+				if( key == EMPTY ) {
+					return previous;
+				}
+				home = hash( key, mask );
+			} while( ( i <= j ) ? ( ( i < home ) && ( home <= j ) ) : ( ( i < home ) || ( home <= j ) ) );
+			keys[ i ] = key;
+			values[ i ] = values[ j ];
+			i = j;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void grow() {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate( oldKeys.length * 2 );
+		size = 0;
+		for( int i = 0; i < oldKeys.length; ++i ) {
+			if( oldKeys[ i ] != EMPTY ) {
+				put( oldKeys[ i ], (V)oldValues[ i ] );
+			}
+		}
+	}
+
+	public void clear() {
+		if( size > 0 ) {
+			Arrays.fill( keys, EMPTY );
+			Arrays.fill( values, null );
+			size = 0;
+		}
+	}
+
+}
@@ -0,0 +1,171 @@
+/********************************************************************************
+* (C) Copyright 2011, by James Talbut.
+*
+*   This program is free software: you can redistribute it and/or modify
+*   it under the terms of the GNU General Public License as published by
+*   the Free Software Foundation, either version 3 of the License, or
+*   (at your option) any later version.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of
+*   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*   GNU General Public License for more details.
+*
+*   You should have received a copy of the GNU General Public License
+*   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*   [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+*   in the United States and other countries.]
+********************************************************************************/
+
+package uk.co.spudsoft.birt.emitters.excel;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.eclipse.birt.report.engine.api.ITaskOption;
+import org.eclipse.birt.report.engine.content.IContent;
+import org.eclipse.birt.report.engine.content.IElement;
+import org.eclipse.birt.report.engine.ir.Expression;
+import org.eclipse.birt.report.engine.ir.ReportElementDesign;
+
+/**
+ * EmitterOptions resolves options for content elements in the same way as EmitterServices.booleanOption and EmitterServices.stringOption,
+ * but remembers the result for each design element so that repeated content (such as detail rows and cells) only has to be resolved once.
+ * <p>
+ * An option is taken from the UserProperties of the nearest design element in the content hierarchy that defines it,
+ * then from the UserProperties of the report design, then from the render options.
+ * The content generated by a design element always sits beneath the content generated by the design element's ancestors,
+ * so the result depends only on the design element that generated the content (or the nearest one above it).
+ * </p>
+ * @author Jim Talbut
+ *
+ */
+public class EmitterOptions {
+
+	/**
+	 * Cached value for an option that is not set anywhere.
+	 */
+	private static final Object NOT_SET = new Object();
+
+	private ITaskOption renderOptions;
+	/**
+	 * The resolved values of options, by the design element (or report content, if no design element is found) that determines them, and then by name.
+	 */
+	private Map< Object, Map< String, Object > > resolvedValues = new IdentityHashMap< Object, Map< String, Object > >();
+
+	/**
+	 * @param renderOptions
+	 * The render options, which are the last place that options are looked for.
+	 */
+	public EmitterOptions(ITaskOption renderOptions) {
+		this.renderOptions = renderOptions;
+	}
+
+	/**
+	 * Get the value of an option for a content element.
+	 * @param birtContent
+	 * The leaf node to look for UserProperties.
+	 * @param name
+	 * The name of the option.
+	 * @param defaultValue
+	 * Value to return if the option is not set.
+	 * @return
+	 * true if the value found in some way represents a boolean TRUE value.
+	 */
+	public boolean booleanOption( IContent birtContent, String name, boolean defaultValue ) {
+		return EmitterServices.booleanOption( value( birtContent, name ), defaultValue );
+	}
+
+	/**
+	 * Get the value of an option for a content element.
+	 * @param birtContent
+	 * The leaf node to look for UserProperties.
+	 * @param name
+	 * The name of the option.
+	 * @param defaultValue
+	 * Value to return if the option is not set.
+	 * @return
+	 * The value found, converted to a String.
+	 */
+	public String stringOption( IContent birtContent, String name, String defaultValue ) {
+		Object value = value( birtContent, name );
+		return ( value == null ) ? defaultValue : value.toString();
+	}
+
+	/**
+	 * Find the design element whose ancestors determine the options for a content element.
+	 */
+	private static ReportElementDesign findDesign( IContent birtContent ) {
+		IElement currentElement = birtContent;
+		while( currentElement != null ) {
+			if( currentElement instanceof IContent ) {
+				Object designObject = ((IContent)currentElement).getGenerateBy();
+				if( designObject instanceof ReportElementDesign ) {
+					return (ReportElementDesign)designObject;
+				}
+			}
+			currentElement = currentElement.getParent();
+		}
+		return null;
+	}
+
+	private Object value( IContent birtContent, String name ) {
+		if( birtContent == null ) {
+			return ( renderOptions == null ) ? null : renderOptions.getOption( name );
+		}
+
+		Object key = findDesign( birtContent );
+		if( key == null ) {
+			key = birtContent.getReportContent();
+		}
+		Map< String, Object > values = resolvedValues.get( key );
+		if( values == null ) {
+			values = new HashMap< String, Object >();
+			resolvedValues.put( key, values );
+		}
+		Object value = values.get( name );
+		if( value == null ) {
+			value = resolve( birtContent, name );
+			if( value == null ) {
+				value = NOT_SET;
+			}
+			values.put( name, value );
+		}
+		return ( value == NOT_SET ) ? null : value;
+	}
+
+	private static Object userProperty( Map< String, Expression > userProperties, String name ) {
+		if( userProperties != null ) {
+			Expression expression = userProperties.get(name);
+			if( expression instanceof Expression.Constant ) {
+				return ((Expression.Constant)expression).getValue();
+			}
+		}
+		return null;
+	}
+
+	private Object resolve( IContent birtContent, String name ) {
+		Object value = null;
+
+		IElement currentElement = birtContent;
+		while( ( currentElement != null ) && ( value == null ) ) {
+			if( currentElement instanceof IContent ) {
+				Object designObject = ((IContent)currentElement).getGenerateBy();
+				if( designObject instanceof ReportElementDesign ) {
+					value = userProperty( ((ReportElementDesign)designObject).getUserProperties(), name );
+				}
+			}
+			currentElement = currentElement.getParent();
+		}
+		if( value == null ) {
+			value = userProperty( birtContent.getReportContent().getDesign().getUserProperties(), name );
+		}
+		if( ( value == null ) && ( renderOptions != null ) ) {
+			value = renderOptions.getOption(name);
+		}
+		return value;
+	}
+
+}
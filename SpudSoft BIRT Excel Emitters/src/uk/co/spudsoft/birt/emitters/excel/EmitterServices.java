@@ -13,6 +13,45 @@ import uk.co.spudsoft.birt.emitters.excel.framework.ExcelEmitterPlugin;
 
 public class EmitterServices {
 
+	/**
+	 * Extract a string value from the report user properties or the task options. 
+	 * @param options
+	 * The task options to extract the value from.
+	 * @param reportContent
+	 * The report whose UserProperties should be checked before the task options.
+	 * @param name
+	 * The name of the value to extract from options.
+	 * @param defaultValue
+	 * Value to return if value is null.
+	 * @return
+	 * The value found, converted to a String.
+	 */
+	public static String stringOption( ITaskOption options, IReportContent reportContent, String name, String defaultValue ) {
+		String result = defaultValue;
+		Object value = null;
+
+		if( reportContent != null ) {
+			Map<String,Expression> userProperties = reportContent.getDesign().getUserProperties();
+			if( userProperties != null ) {
+				Expression expression = userProperties.get(name);
+				if( expression instanceof Expression.Constant ) {
+					Expression.Constant constant = (Expression.Constant)expression;
+					value = constant.getValue();
+				}
+			}
+		}
+		
+		if( ( value == null ) && ( options != null ) ) {
+			value = options.getOption(name);
+		}
+		
+		if( value != null ) {
+			result = value.toString();
+		}
+		
+		return result;
+	}
+	
 	/**
 	 * Convert an Object to a boolean, with quite a few options about the class of the Object. 
 	 * @param options
@@ -98,6 +137,45 @@ public class EmitterServices {
 		return result;
 	}
 	
+	/**
+	 * Extract an integer value from the report user properties or the task options. 
+	 * @param options
+	 * The task options to extract the value from.
+	 * @param reportContent
+	 * The report whose UserProperties should be checked before the task options.
+	 * @param name
+	 * The name of the value to extract from options.
+	 * @param defaultValue
+	 * Value to return if value is null.
+	 * @return
+	 * The value found, converted to an int.
+	 */
+	public static int integerOption( ITaskOption options, IReportContent reportContent, String name, int defaultValue ) {
+		int result = defaultValue;
+		Object value = null;
+
+		if( reportContent != null ) {
+			Map<String,Expression> userProperties = reportContent.getDesign().getUserProperties();
+			if( userProperties != null ) {
+				Expression expression = userProperties.get(name);
+				if( expression instanceof Expression.Constant ) {
+					Expression.Constant constant = (Expression.Constant)expression;
+					value = constant.getValue();
+				}
+			}
+		}
+		
+		if( ( value == null ) && ( options != null ) ) {
+			value = options.getOption(name);
+		}
+		
+		if( value != null ) {
+			result = integerOption(value, defaultValue);
+		}
+		
+		return result;
+	}
+	
 	
 	/**
 	 * Convert an Object to a boolean, with quite a few options about the class of the Object. 
@@ -184,6 +262,29 @@ public class EmitterServices {
 		return defaultValue;
 	}
 	
+	/**
+	 * Convert an Object to an int, with a few options about the class of the Object. 
+	 * @param value
+	 * A value that can be of any type.
+	 * @param defaultValue
+	 * Value to return if value is null or cannot be parsed.
+	 * @return
+	 * The int value represented by value.
+	 */
+	public static int integerOption( Object value, int defaultValue ) {
+		if( value != null ) {
+			if( value instanceof Number ) {
+				return ((Number)value).intValue();
+			}
+			try {
+				return Integer.parseInt(value.toString().trim());
+			} catch( NumberFormatException ex ) {
+				return defaultValue;
+			}
+		}
+		return defaultValue;
+	}
+	
 	
 	/**
 	 * Returns the symbolic name for the plugin.
@@ -1,5 +1,7 @@
 package uk.co.spudsoft.birt.emitters.excel;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -31,6 +33,7 @@ import org.eclipse.birt.report.engine.emitter.IContentEmitter;
 import org.eclipse.birt.report.engine.emitter.IEmitterServices;
 
 import uk.co.spudsoft.birt.emitters.excel.framework.ExcelEmitterPlugin;
+import uk.co.spudsoft.birt.emitters.excel.framework.EventTracer;
 import uk.co.spudsoft.birt.emitters.excel.framework.Logger;
 import uk.co.spudsoft.birt.emitters.excel.handlers.PageHandler;
 
@@ -45,12 +48,71 @@ public abstract class ExcelEmitter implements IContentEmitter {
 	public static final String STRUCTURED_HEADER = "ExcelEmitter.StructuredHeader";
 	public static final String CUSTOM_NUMBER_FORMAT = "ExcelEmitter.CustomNumberFormat";
 	public static final String AUTO_FILTER = "ExcelEmitter.AutoFilter";
+	public static final String STREAMING_WINDOW = "ExcelEmitter.StreamingWindow";
+	/**
+	 * Number of rows on a sheet after which an xlsx render switches to streaming.
+	 * <br/>
+	 * A render with this option (and no SizeHint) starts with an in-memory workbook, so a report that never reaches the threshold
+	 * is written exactly as it would be without the option.
+	 * Once a sheet passes the threshold the rows written so far are kept as they are and only the rows that follow are streamed,
+	 * so row grouping (outlines) is lost for those rows, as it is for StreamingWindow and SpillSheets.
+	 */
+	public static final String STREAMING_THRESHOLD = "ExcelEmitter.StreamingThreshold";
+	public static final String SIZE_HINT = "ExcelEmitter.SizeHint";
+	/**
+	 * Write each xlsx sheet to a temporary file when its page ends.
+	 * <br/>
+	 * The workbook is built on SXSSFWorkbook, which in this version of POI does not write row grouping (outlines).
+	 */
+	public static final String SPILL_SHEETS = "ExcelEmitter.SpillSheets";
+	public static final String INLINE_STRINGS_THRESHOLD = "ExcelEmitter.InlineStringsThreshold";
+	public static final String GEOMETRY_MODE = "ExcelEmitter.GeometryMode";
+	public static final String GEOMETRY_THREADS = "ExcelEmitter.GeometryThreads";
+	public static final String AUTO_COL_WIDTHS_SAMPLE_ROWS = "ExcelEmitter.AutoColWidthsSampleRows";
+	public static final String AUTO_COL_WIDTHS_PERCENTILE = "ExcelEmitter.AutoColWidthsPercentile";
+	public static final String TRACE_EVENTS = "ExcelEmitter.TraceEvents";
+	public static final String TRACE_DUMP = "ExcelEmitter.TraceDump";
+	public static final String METRICS_LISTENER = "ExcelEmitter.MetricsListener";
 
 	public static final String DISPLAYFORMULAS_PROP = "ExcelEmitter.DisplayFormulas";
 	public static final String DISPLAYGRIDLINES_PROP = "ExcelEmitter.DisplayGridlines";
 	public static final String DISPLAYROWCOLHEADINGS_PROP = "ExcelEmitter.DisplayRowColHeadings";
 	public static final String DISPLAYZEROS_PROP = "ExcelEmitter.DisplayZeros";
 	
+	/**
+	 * GeometryMode value: calculate row heights for merged cells and column widths using AWT text layout.
+	 */
+	public static final String GEOMETRY_EXACT = "exact";
+	/**
+	 * GeometryMode value: estimate row heights for merged cells and column widths from tables of character advances, without loading AWT fonts.
+	 */
+	public static final String GEOMETRY_APPROXIMATE = "approximate";
+	/**
+	 * GeometryMode value: do not calculate row heights for merged cells or column widths at all.
+	 */
+	public static final String GEOMETRY_NONE = "none";
+	
+	/**
+	 * The smallest row access window permitted when streaming.
+	 * Rows that get revisited after they are written (nested table extensions and images) must fit within the window.
+	 */
+	public static final int MINIMUM_STREAMING_WINDOW = 32;
+	
+	/**
+	 * The row access window used when streaming is chosen because of the StreamingThreshold.
+	 */
+	public static final int DEFAULT_STREAMING_WINDOW = 100;
+	
+	/**
+	 * The number of detail rows (after the first) that are examined when calculating column widths, unless AutoColWidthsSampleRows is set.
+	 */
+	public static final int DEFAULT_AUTO_COL_WIDTHS_SAMPLE_ROWS = 12;
+	
+	/**
+	 * Size of the buffer used between the workbook and the output stream.
+	 */
+	private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+	
 	/**
 	 * Logger.
 	 */
@@ -88,6 +150,14 @@ public abstract class ExcelEmitter implements IContentEmitter {
 	 * 
 	 */
 	private IPageContent lastPage;
+	/**
+	 * The time at which the report started, for RenderMetrics.
+	 */
+	private long renderStartNanos;
+	/**
+	 * Set once the RenderMetrics have been published, so that a failed render is not counted twice.
+	 */
+	private boolean metricsPublished;
 
 	/**
 	 * Factory for creating the appropriate StyleManagerUtils object
@@ -120,6 +190,43 @@ public abstract class ExcelEmitter implements IContentEmitter {
 	 */
 	protected abstract Workbook createWorkbook();
 	
+	/**
+	 * Constructs a new workbook that only keeps a window of rows in memory, writing older rows out as the report progresses.
+	 * <br/>
+	 * Emitters that cannot stream should leave this returning null, in which case createWorkbook will be used.
+	 * @param rowAccessWindow
+	 * The number of rows to keep in memory for each sheet, or -1 to keep every row of a sheet in memory until the sheet is spilled.
+	 * @return
+	 * The new workbook, or null if streaming is not supported.
+	 */
+	protected Workbook createStreamingWorkbook( int rowAccessWindow ) {
+		return null;
+	}
+	
+	/**
+	 * Wrap a workbook created by createWorkbook so that rows created from now on are streamed.
+	 * <br/>
+	 * The rows already in the workbook are kept in memory and written out unchanged, but they can no longer be reached through the new workbook.
+	 * Emitters that cannot stream should leave this returning null.
+	 * @param wb
+	 * The workbook created by createWorkbook.
+	 * @param rowAccessWindow
+	 * The number of rows to keep in memory for each sheet.
+	 * @return
+	 * The streaming workbook, or null if streaming is not supported.
+	 */
+	protected Workbook convertToStreamingWorkbook( Workbook wb, int rowAccessWindow ) {
+		return null;
+	}
+	
+	/**
+	 * Release any resources (such as temporary files) held by the workbook once it has been written, or has failed to be written.
+	 * @param wb
+	 * The workbook created by createWorkbook or createStreamingWorkbook.
+	 */
+	protected void disposeWorkbook( Workbook wb ) {
+	}
+	
 	
 	public void initialize( IEmitterServices service ) throws BirtException {
 		renderOptions = service.getRenderOption();
@@ -142,25 +249,109 @@ public abstract class ExcelEmitter implements IContentEmitter {
 		log.addPrefix('>');
 		log.info( 0, "start:" + report.toString(), null);
 		
-	    Workbook wb = createWorkbook();
+	    Workbook wb = null;
+	    int streamingWindow = EmitterServices.integerOption( renderOptions, report, STREAMING_WINDOW, 0 );
+	    int streamingThreshold = EmitterServices.integerOption( renderOptions, report, STREAMING_THRESHOLD, 0 );
+	    int sizeHint = EmitterServices.integerOption( renderOptions, report, SIZE_HINT, 0 );
+	    if( ( streamingWindow <= 0 ) && ( streamingThreshold > 0 ) && ( sizeHint >= streamingThreshold ) ) {
+	    	log.debug( "Size hint of ", sizeHint, " rows is beyond the streaming threshold, streaming from the start" );
+	    	streamingWindow = DEFAULT_STREAMING_WINDOW;
+	    }
+	    boolean adaptive = ( streamingWindow <= 0 ) && ( streamingThreshold > 0 ) && ( sizeHint <= 0 );
+	    
+	    if( streamingWindow > 0 ) {
+	    	wb = createStreamingWorkbook( Math.max( streamingWindow, MINIMUM_STREAMING_WINDOW ) );
+	    	if( wb == null ) {
+	    		log.warn( 0, "Streaming is not supported for " + getOutputFormat() + " output, " + STREAMING_WINDOW + " will be ignored", null );
+	    	}
+	    } else if( EmitterServices.booleanOption( renderOptions, report, SPILL_SHEETS, false ) ) {
+	    	// Keep the whole of the current sheet in memory, but write each sheet out as soon as its page ends
+	    	wb = createStreamingWorkbook( -1 );
+	    	if( wb == null ) {
+	    		log.warn( 0, "Spilling sheets is not supported for " + getOutputFormat() + " output, " + SPILL_SHEETS + " will be ignored", null );
+	    	}
+	    }
+	    if( wb == null ) {
+	    	wb = createWorkbook();
+	    }
 	    CSSEngine cssEngine = report.getRoot().getCSSEngine();
 		StyleManagerUtils smu = utilsFactory.create(log);
 	    
 	    StyleManager sm = new StyleManager( wb, log, smu, cssEngine, report.getReportContext().getLocale() );
 	    
+		renderStartNanos = System.nanoTime();
+		metricsPublished = false;
 		handlerState = new HandlerState(this, log, smu, wb, sm, renderOptions);
+		handlerState.inlineStringsThreshold = EmitterServices.integerOption( renderOptions, report, INLINE_STRINGS_THRESHOLD, 0 );
+		if( adaptive ) {
+			handlerState.streamingThreshold = streamingThreshold;
+		}
+		String geometryMode = EmitterServices.stringOption( renderOptions, report, GEOMETRY_MODE, GEOMETRY_EXACT ).trim().toLowerCase();
+		if( GEOMETRY_APPROXIMATE.equals( geometryMode ) || GEOMETRY_NONE.equals( geometryMode ) ) {
+			handlerState.geometryMode = geometryMode;
+		} else if( ! GEOMETRY_EXACT.equals( geometryMode ) ) {
+			log.warn( 0, "Unrecognised " + GEOMETRY_MODE + " \"" + geometryMode + "\", row heights and column widths will be calculated exactly", null );
+		}
+		int geometryThreads = EmitterServices.integerOption( renderOptions, report, GEOMETRY_THREADS, 1 );
+		if( geometryThreads > 1 ) {
+			handlerState.setGeometry( new GeometryPass( log, geometryThreads ) );
+		}
+		handlerState.autoColWidthsSampleRows = EmitterServices.integerOption( renderOptions, report, AUTO_COL_WIDTHS_SAMPLE_ROWS, DEFAULT_AUTO_COL_WIDTHS_SAMPLE_ROWS );
+		handlerState.autoColWidthsPercentile = EmitterServices.integerOption( renderOptions, report, AUTO_COL_WIDTHS_PERCENTILE, 100 );
+		if( ( handlerState.autoColWidthsPercentile < 1 ) || ( handlerState.autoColWidthsPercentile > 100 ) ) {
+			log.warn( 0, AUTO_COL_WIDTHS_PERCENTILE + " must be between 1 and 100, column widths will fit the widest cell", null );
+			handlerState.autoColWidthsPercentile = 100;
+		}
+		handlerState.setTracer( new EventTracer( EmitterServices.integerOption( renderOptions, report, TRACE_EVENTS, 0 ) ) );
 		handlerState.setHandler( new PageHandler(log, null) );
 	}
+	
+	/**
+	 * Record a callback in the event trace (if it is enabled).
+	 * @param event
+	 * The name of the callback.
+	 */
+	private void trace( String event ) {
+		handlerState.getTracer().record( event, handlerState.getHandler(), handlerState.rowNum, handlerState.colNum, EventTracer.NO_DETAIL );
+	}
+	
+	/**
+	 * Dump the event trace (if it is enabled) and publish the metrics as a failed render, because a handler has thrown an exception from a callback.
+	 * @param event
+	 * The name of the callback.
+	 * @param ex
+	 * The exception thrown by the handler.
+	 * @return
+	 * ex, so that the caller can rethrow it.
+	 */
+	private < T extends Exception > T callbackFailed( String event, T ex ) {
+		handlerState.getTracer().dump( log, "Handler failed in " + event + ": " + ex );
+		RenderMetrics metrics = handlerState.getMetrics();
+		metrics.setCallbackTime( System.nanoTime() - renderStartNanos );
+		metrics.setFailed();
+		publishMetrics( metrics );
+		return ex;
+	}
 
 	public void end( IReportContent report ) throws BirtException {
 		
 		if( EmitterServices.booleanOption( handlerState.getRenderOptions(), report, ExcelEmitter.SINGLE_SHEET, false ) ) {
 			handlerState.reportEnding = true;
-			handlerState.getHandler().endPage(handlerState, lastPage);
+			try {
+				handlerState.getHandler().endPage(handlerState, lastPage);
+			} catch( BirtException ex ) {
+				throw callbackFailed( "end", ex );
+			} catch( RuntimeException ex ) {
+				throw callbackFailed( "end", ex );
+			}
 		}
 		
 		log.removePrefix('>');
 		log.debug("end:", report);
+		trace( "end" );
+		if( EmitterServices.booleanOption( renderOptions, report, TRACE_DUMP, false ) ) {
+			handlerState.getTracer().dump( log, "Trace requested" );
+		}
 		
 		String reportTitle = report.getTitle();
 		if( ( handlerState.getWb().getNumberOfSheets() == 1 ) 
@@ -169,12 +360,23 @@ public abstract class ExcelEmitter implements IContentEmitter {
 			handlerState.getWb().setSheetName(0, reportTitle);
 		}
 		
-		OutputStream outputStream = reportOutputStream;
+		RenderMetrics metrics = handlerState.getMetrics();
+		metrics.setCallbackTime( System.nanoTime() - renderStartNanos );
+		metrics.setStyleCounts( handlerState.getSm().getStylesCreated(), handlerState.getSm().getStyleRequests() );
+		metrics.setFontCounts( handlerState.getSm().getFontManager().getFontsCreated(), handlerState.getSm().getFontManager().getFontRequests() );
+		
+		OutputStream outputStream = null;
+		File tempFile = null;
 		try {
-			if( outputStream == null ) {
+			if( reportOutputStream != null ) {
+				outputStream = new BufferedOutputStream( reportOutputStream, OUTPUT_BUFFER_SIZE );
+			} else {
 				if( ( reportOutputFilename != null ) && ! reportOutputFilename.isEmpty() ) {
 					try {
-						outputStream = new FileOutputStream( reportOutputFilename );
+						// Write to a temporary file alongside the target, so that a failed render never leaves a partial file in place
+						File outputFile = new File( reportOutputFilename ).getAbsoluteFile();
+						tempFile = File.createTempFile( "spudsoft", ".tmp", outputFile.getParentFile() );
+						outputStream = new BufferedOutputStream( new FileOutputStream( tempFile ), OUTPUT_BUFFER_SIZE );
 					} catch( IOException ex ) {
 						log.warn( 0, "File \"" + reportOutputFilename + "\" cannot be opened for writing", ex);
 						throw new BirtException( EmitterServices.getPluginName()
@@ -186,10 +388,21 @@ public abstract class ExcelEmitter implements IContentEmitter {
 					}
 				} 
 			}
-			handlerState.getWb().write(outputStream);
+			long writeStart = System.nanoTime();
+			handlerState.getWb().write( outputStream );
+			outputStream.flush();
+			metrics.setWriteTime( System.nanoTime() - writeStart );
+			if( tempFile != null ) {
+				outputStream.close();
+				outputStream = null;
+				moveIntoPlace( tempFile, new File( reportOutputFilename ) );
+				tempFile = null;
+			}
 		} catch( Throwable ex ) {
 			log.debug("ex:", ex.toString());
 			ex.printStackTrace();
+			handlerState.getTracer().dump( log, "Unable to save file" );
+			metrics.setFailed();
 			
 			throw new BirtException( EmitterServices.getPluginName()
 					, "Unable to save file (\"{}\")"
@@ -198,178 +411,448 @@ public abstract class ExcelEmitter implements IContentEmitter {
 					, ex 
 					);
 		} finally {
-			if( reportOutputStream == null ) {
+			if( ( reportOutputStream == null ) && ( outputStream != null ) ) {
 				try {
 					outputStream.close();
 				} catch( IOException ex ) {
 					log.debug("ex:", ex.toString());
 				}
 			}
+			if( tempFile != null ) {
+				tempFile.delete();
+			}
+			handlerState.getGeometry().shutdown();
+			disposeWorkbook( handlerState.getWb() );
 			handlerState = null;
 			reportOutputFilename = null;			
 			reportOutputStream = null;
+			publishMetrics( metrics );
 		}
 		
 	}
 
+	/**
+	 * Pass the metrics for a completed or failed render to the MetricsListener (if there is one) and to the plugin statistics (if the plugin is active).
+	 * <br/>
+	 * The metrics are only published once, so a render that fails in a callback is not published again if end is still called.
+	 * @param metrics
+	 * The metrics for the render.
+	 */
+	private void publishMetrics( RenderMetrics metrics ) {
+		if( metricsPublished ) {
+			return ;
+		}
+		metricsPublished = true;
+		log.debug( "Render metrics: ", metrics );
+		Object listener = renderOptions.getOption( METRICS_LISTENER );
+		if( listener instanceof RenderMetricsListener ) {
+			((RenderMetricsListener)listener).renderComplete( metrics );
+		} else if( listener != null ) {
+			log.warn( 0, METRICS_LISTENER + " is a " + listener.getClass().getName() + ", which does not implement " + RenderMetricsListener.class.getName(), null );
+		}
+		if( ExcelEmitterPlugin.getDefault() != null ) {
+			ExcelEmitterPlugin.getDefault().getStatistics().record( metrics );
+		}
+	}
+
+	/**
+	 * Replace the target file with the (complete) temporary file.
+	 * <br/>
+	 * Where the platform can rename over an existing file this is a single atomic rename.
+	 * Otherwise (Windows) the existing target is first renamed aside, so that it can be restored if the temporary file cannot be moved,
+	 * and the target path never holds a partially written file.
+	 * @throws IOException
+	 */
+	private void moveIntoPlace( File tempFile, File target ) throws IOException {
+		if( tempFile.renameTo( target ) ) {
+			return ;
+		}
+		if( ! target.exists() ) {
+			throw new IOException( "Unable to rename \"" + tempFile + "\" to \"" + target + "\"" );
+		}
+		File backupFile = File.createTempFile( "spudsoft", ".bak", target.getParentFile() );
+		if( ! backupFile.delete() || ! target.renameTo( backupFile ) ) {
+			throw new IOException( "Unable to move \"" + target + "\" aside to replace it" );
+		}
+		if( ! tempFile.renameTo( target ) ) {
+			if( ! backupFile.renameTo( target ) ) {
+				throw new IOException( "Unable to rename \"" + tempFile + "\" to \"" + target + "\", the previous file has been left in \"" + backupFile + "\"" );
+			}
+			throw new IOException( "Unable to rename \"" + tempFile + "\" to \"" + target + "\"" );
+		}
+		if( ! backupFile.delete() ) {
+			log.debug( "Unable to delete ", backupFile );
+		}
+	}
+
 	public void startPage( IPageContent page ) throws BirtException {
 		log.addPrefix( 'P' );
 		log.debug( handlerState, "startPage: " );
-		handlerState.getHandler().startPage(handlerState,page);
+		trace( "startPage" );
+		try {
+			handlerState.getHandler().startPage(handlerState,page);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "startPage", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "startPage", ex );
+		}
 	}
 	public void endPage( IPageContent page ) throws BirtException {
 		lastPage = page;
 		log.debug( handlerState, "endPage: " );
-		handlerState.getHandler().endPage(handlerState,page);
+		trace( "endPage" );
+		try {
+			handlerState.getHandler().endPage(handlerState,page);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "endPage", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "endPage", ex );
+		}
 		log.removePrefix( 'P' );
 	}
 
 	public void startTable( ITableContent table ) throws BirtException {
 		log.addPrefix( 'T' );
 		log.debug( handlerState, "startTable: " );
-		handlerState.getHandler().startTable(handlerState,table);
+		trace( "startTable" );
+		try {
+			handlerState.getHandler().startTable(handlerState,table);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "startTable", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "startTable", ex );
+		}
 	}
 	public void endTable( ITableContent table ) throws BirtException {
 		log.debug( handlerState, "endTable: " );
-		handlerState.getHandler().endTable(handlerState,table);
+		trace( "endTable" );
+		try {
+			handlerState.getHandler().endTable(handlerState,table);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "endTable", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "endTable", ex );
+		}
 		log.removePrefix( 'T' );
 	}
 
 	public void startTableBand( ITableBandContent band ) throws BirtException {
 		log.addPrefix( 'B' );
 		log.debug( handlerState, "startTableBand: " );
-		handlerState.getHandler().startTableBand(handlerState,band);
+		trace( "startTableBand" );
+		try {
+			handlerState.getHandler().startTableBand(handlerState,band);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "startTableBand", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "startTableBand", ex );
+		}
 	}
 	public void endTableBand( ITableBandContent band ) throws BirtException {
 		log.debug( handlerState, "endTableBand: " );
-		handlerState.getHandler().endTableBand(handlerState,band);
+		trace( "endTableBand" );
+		try {
+			handlerState.getHandler().endTableBand(handlerState,band);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "endTableBand", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "endTableBand", ex );
+		}
 		log.removePrefix( 'B' );
 	}
 
 	public void startRow( IRowContent row ) throws BirtException {
 		log.addPrefix( 'R' );
 		log.debug( handlerState, "startRow: " );
-		handlerState.getHandler().startRow(handlerState,row);
+		trace( "startRow" );
+		try {
+			handlerState.getHandler().startRow(handlerState,row);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "startRow", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "startRow", ex );
+		}
 	}
 	public void endRow( IRowContent row ) throws BirtException {
 		log.debug( handlerState, "endRow: " );
-		handlerState.getHandler().endRow(handlerState,row);
+		trace( "endRow" );
+		try {
+			handlerState.getHandler().endRow(handlerState,row);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "endRow", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "endRow", ex );
+		}
 		log.removePrefix( 'R' );
 	}
 
 	public void startCell( ICellContent cell ) throws BirtException {
 		log.addPrefix( 'C' );
 		log.debug( handlerState, "startCell: " );
-		handlerState.getHandler().startCell(handlerState,cell);
+		trace( "startCell" );
+		try {
+			handlerState.getHandler().startCell(handlerState,cell);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "startCell", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "startCell", ex );
+		}
 	}
 	public void endCell( ICellContent cell ) throws BirtException {
 		log.debug( handlerState, "endCell: " );
-		handlerState.getHandler().endCell(handlerState,cell);
+		trace( "endCell" );
+		try {
+			handlerState.getHandler().endCell(handlerState,cell);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "endCell", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "endCell", ex );
+		}
 		log.removePrefix( 'C' );
 	}
 	
 	public void startList( IListContent list ) throws BirtException {
 		log.addPrefix( 'L' );
 		log.debug( handlerState, "startList: " );
-		handlerState.getHandler().startList(handlerState,list);
+		trace( "startList" );
+		try {
+			handlerState.getHandler().startList(handlerState,list);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "startList", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "startList", ex );
+		}
 	}
 	public void endList( IListContent list ) throws BirtException {
 		log.debug( handlerState, "endList: " );
-		handlerState.getHandler().endList(handlerState,list);
+		trace( "endList" );
+		try {
+			handlerState.getHandler().endList(handlerState,list);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "endList", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "endList", ex );
+		}
 		log.removePrefix( 'L' );
 	}
 
 	public void startListBand( IListBandContent listBand ) throws BirtException {
 		log.addPrefix( 'B' );
 		log.debug( handlerState, "startListBand: " );
-		handlerState.getHandler().startListBand(handlerState,listBand);
+		trace( "startListBand" );
+		try {
+			handlerState.getHandler().startListBand(handlerState,listBand);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "startListBand", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "startListBand", ex );
+		}
 	}
 	public void endListBand( IListBandContent listBand ) throws BirtException {
 		log.debug( handlerState, "endListBand: " );
-		handlerState.getHandler().endListBand(handlerState,listBand);
+		trace( "endListBand" );
+		try {
+			handlerState.getHandler().endListBand(handlerState,listBand);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "endListBand", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "endListBand", ex );
+		}
 		log.removePrefix( 'B' );
 	}
 
 	public void startContainer( IContainerContent container ) throws BirtException {
 		log.addPrefix( 'O' );
 		log.debug( handlerState, "startContainer: " );
-		handlerState.getHandler().startContainer(handlerState,container);
+		trace( "startContainer" );
+		try {
+			handlerState.getHandler().startContainer(handlerState,container);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "startContainer", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "startContainer", ex );
+		}
 	}
 	public void endContainer( IContainerContent container ) throws BirtException {
 		log.debug( handlerState, "endContainer: " );
-		handlerState.getHandler().endContainer(handlerState,container);
+		trace( "endContainer" );
+		try {
+			handlerState.getHandler().endContainer(handlerState,container);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "endContainer", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "endContainer", ex );
+		}
 		log.removePrefix( 'O' );
 	}
 
 	public void startText( ITextContent text ) throws BirtException {
 		log.debug( handlerState, "startText: " );
-		handlerState.getHandler().emitText(handlerState,text);
+		trace( "startText" );
+		try {
+			handlerState.getHandler().emitText(handlerState,text);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "startText", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "startText", ex );
+		}
 	}
 
 	public void startData( IDataContent data ) throws BirtException {
 		log.debug( handlerState, "startData: " );
-		handlerState.getHandler().emitData(handlerState,data);
+		trace( "startData" );
+		try {
+			handlerState.getHandler().emitData(handlerState,data);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "startData", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "startData", ex );
+		}
 	}
 
 	public void startLabel( ILabelContent label ) throws BirtException {
 		log.debug( handlerState, "startLabel: " );
-		handlerState.getHandler().emitLabel(handlerState,label);
+		trace( "startLabel" );
+		try {
+			handlerState.getHandler().emitLabel(handlerState,label);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "startLabel", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "startLabel", ex );
+		}
 	}
 	
 	public void startAutoText ( IAutoTextContent autoText ) throws BirtException {
 		log.debug( handlerState, "startAutoText: " );
-		handlerState.getHandler().emitAutoText(handlerState,autoText);
+		trace( "startAutoText" );
+		try {
+			handlerState.getHandler().emitAutoText(handlerState,autoText);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "startAutoText", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "startAutoText", ex );
+		}
 	}
 
 	public void startForeign( IForeignContent foreign ) throws BirtException {
 		log.debug( handlerState, "startForeign: " );
-		handlerState.getHandler().emitForeign(handlerState,foreign);
+		trace( "startForeign" );
+		try {
+			handlerState.getHandler().emitForeign(handlerState,foreign);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "startForeign", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "startForeign", ex );
+		}
 	}
 
 	public void startImage( IImageContent image ) throws BirtException {
 		log.debug( handlerState, "startImage: " );
-		handlerState.getHandler().emitImage(handlerState,image);
+		trace( "startImage" );
+		try {
+			handlerState.getHandler().emitImage(handlerState,image);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "startImage", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "startImage", ex );
+		}
 	}
 
 	public void startContent( IContent content ) throws BirtException {
 		log.addPrefix( 'N' );
 		log.debug( handlerState, "startContent: " );
-		handlerState.getHandler().startContent(handlerState,content);
+		trace( "startContent" );
+		try {
+			handlerState.getHandler().startContent(handlerState,content);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "startContent", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "startContent", ex );
+		}
 	}
 	public void endContent( IContent content) throws BirtException {
 		log.debug( handlerState, "endContent: " );
-		handlerState.getHandler().endContent(handlerState,content);
+		trace( "endContent" );
+		try {
+			handlerState.getHandler().endContent(handlerState,content);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "endContent", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "endContent", ex );
+		}
 		log.removePrefix( 'N' );
 	}
 	
 	public void startGroup( IGroupContent group ) throws BirtException {
 		log.debug( handlerState, "startGroup: " );
-		handlerState.getHandler().startGroup(handlerState,group);
+		trace( "startGroup" );
+		try {
+			handlerState.getHandler().startGroup(handlerState,group);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "startGroup", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "startGroup", ex );
+		}
 	}
 	public void endGroup( IGroupContent group ) throws BirtException {
 		log.debug( handlerState, "endGroup: " );
-		handlerState.getHandler().endGroup(handlerState,group);
+		trace( "endGroup" );
+		try {
+			handlerState.getHandler().endGroup(handlerState,group);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "endGroup", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "endGroup", ex );
+		}
 	}
 
 	public void startTableGroup( ITableGroupContent group ) throws BirtException {
 		log.addPrefix( 'G' );
 		log.debug( handlerState, "startTableGroup: " );
-		handlerState.getHandler().startTableGroup(handlerState,group);
+		trace( "startTableGroup" );
+		try {
+			handlerState.getHandler().startTableGroup(handlerState,group);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "startTableGroup", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "startTableGroup", ex );
+		}
 	}
 	public void endTableGroup( ITableGroupContent group ) throws BirtException {
 		log.debug( handlerState, "endTableGroup: " );
-		handlerState.getHandler().endTableGroup(handlerState,group);
+		trace( "endTableGroup" );
+		try {
+			handlerState.getHandler().endTableGroup(handlerState,group);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "endTableGroup", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "endTableGroup", ex );
+		}
 		log.removePrefix( 'G' );
 	}
 
 	public void startListGroup( IListGroupContent group ) throws BirtException {
 		log.addPrefix( 'G' );
 		log.debug( handlerState, "startListGroup: " );
-		handlerState.getHandler().startListGroup(handlerState,group);
+		trace( "startListGroup" );
+		try {
+			handlerState.getHandler().startListGroup(handlerState,group);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "startListGroup", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "startListGroup", ex );
+		}
 	}
 	public void endListGroup( IListGroupContent group ) throws BirtException {
 		log.debug( handlerState, "endListGroup: " );
-		handlerState.getHandler().endListGroup(handlerState,group);
+		trace( "endListGroup" );
+		try {
+			handlerState.getHandler().endListGroup(handlerState,group);
+		} catch( BirtException ex ) {
+			throw callbackFailed( "endListGroup", ex );
+		} catch( RuntimeException ex ) {
+			throw callbackFailed( "endListGroup", ex );
+		}
 		log.removePrefix( 'G' );
 	}
 	
@@ -20,8 +20,8 @@
 
 package uk.co.spudsoft.birt.emitters.excel;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.FontUnderline;
@@ -42,24 +42,82 @@ import org.w3c.dom.css.CSSValue;
 public class FontManager {
 	
 	/**
-	 * FontPair maintains the relationship between a BIRT style and a POI font.
+	 * FontKey wraps a BIRT style so that it can be used to look up equivalent fonts in a hash map.
 	 * @author Jim Talbut
 	 *
 	 */
-	private class FontPair {
-		public BirtStyle birtStyle;
-		public Font poiFont;
+	private static class FontKey {
+		private BirtStyle birtStyle;
+		private int hash;
 		
-		public FontPair(BirtStyle birtStyle, Font poiFont) {
+		public FontKey(BirtStyle birtStyle) {
 			this.birtStyle = birtStyle;
-			this.poiFont = poiFont;
+			this.hash = fontHashCode(birtStyle);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if( this == obj ) {
+				return true;
+			}
+			if( ! ( obj instanceof FontKey ) ) {
+				return false;
+			}
+			FontKey other = (FontKey)obj;
+			return ( hash == other.hash ) && fontsEquivalent( birtStyle, other.birtStyle );
+		}
+	}
+	
+	/**
+	 * BackgroundKey identifies a POI font displayed on a given background colour.
+	 * @author Jim Talbut
+	 *
+	 */
+	private static class BackgroundKey {
+		private short fontIndex;
+		private CSSValue background;
+		private int hash;
+		
+		public BackgroundKey(short fontIndex, CSSValue background) {
+			this.fontIndex = fontIndex;
+			this.background = background;
+			this.hash = 31 * fontIndex + StyleManagerUtils.cssValueHashCode( background );
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if( this == obj ) {
+				return true;
+			}
+			if( ! ( obj instanceof BackgroundKey ) ) {
+				return false;
+			}
+			BackgroundKey other = (BackgroundKey)obj;
+			return ( fontIndex == other.fontIndex ) && StyleManagerUtils.objectsEqual( background, other.background );
 		}
 	}
 	
 	private Workbook workbook;
 	private StyleManagerUtils smu;
-	private List<FontPair> fonts = new ArrayList<FontPair>();
+	private Map<FontKey, Font> fonts = new HashMap<FontKey, Font>();
+	private Map<Short, BirtStyle> fontStyles = new HashMap<Short, BirtStyle>();
+	private Map<BackgroundKey, Font> backgroundFonts = new HashMap<BackgroundKey, Font>();
 	private Font defaultFont = null;
+	/**
+	 * Statistics for RenderMetrics.
+	 */
+	private int fontsCreated;
+	private long fontRequests;
 	private CSSEngine cssEngine;
 
 	/**
@@ -144,6 +202,23 @@ public class FontManager {
 		return true;
 	}
 	
+	/**
+	 * Calculate a hash code for the font definition of a BIRT style.
+	 * <br/>
+	 * Styles that are equivalent according to fontsEquivalent will always produce the same hash code.
+	 * @param style
+	 * The BIRT style to hash.
+	 * @return
+	 * A hash code based upon the properties compared by fontsEquivalent.
+	 */
+	public static int fontHashCode(BirtStyle style) {
+		int result = 1;
+		for( int i = 0; i < COMPARE_CSS_PROPERTIES.length; ++i ) {
+			result = 31 * result + StyleManagerUtils.cssValueHashCode( style.getProperty( COMPARE_CSS_PROPERTIES[ i ] ) );
+		}
+		return result;
+	}
+	
 	/**
 	 * Create a new POI Font based upon a BIRT style.
 	 * @param birtStyle
@@ -153,6 +228,7 @@ public class FontManager {
 	 */
 	private Font createFont(BirtStyle birtStyle) {
 		Font font = workbook.createFont();
+		++fontsCreated;
 		
 		// Family
 		String fontName = smu.poiFontNameFromBirt(cleanupQuotes(birtStyle.getProperty( StyleConstants.STYLE_FONT_FAMILY )));
@@ -183,7 +259,10 @@ public class FontManager {
 		// Colour
 		smu.addColourToFont( workbook, font, cleanupQuotes( birtStyle.getProperty( StyleConstants.STYLE_COLOR ) ) );
 						
-		fonts.add(new FontPair(birtStyle, font));
+		// Keep a copy of the style, so that later changes made by the caller cannot affect the index
+		BirtStyle storedStyle = birtStyle.clone();
+		fonts.put(new FontKey(storedStyle), font);
+		fontStyles.put(font.getIndex(), storedStyle);
 		return font;
 	}
 	
@@ -199,6 +278,7 @@ public class FontManager {
 	private Font getDefaultFont() {
 		if( defaultFont == null ) {
 			defaultFont = workbook.createFont();
+			++fontsCreated;
 			defaultFont.setFontName("Calibri");
 			defaultFont.setFontHeightInPoints((short)11);
 		}
@@ -213,6 +293,7 @@ public class FontManager {
 	 * A Font whose attributes are described by the BIRT style. 
 	 */
 	public Font getFont( BirtStyle birtStyle ) {
+		++fontRequests;
 		if( birtStyle == null ) {
 			return getDefaultFont();
 		}
@@ -227,20 +308,32 @@ public class FontManager {
 			return getDefaultFont();
 		}
 		
-		for(FontPair fontPair : fonts) {
-			if(fontsEquivalent(birtStyle, fontPair.birtStyle)) {
-				return fontPair.poiFont;
-			}
+		Font font = fonts.get(new FontKey(birtStyle));
+		if( font != null ) {
+			return font;
 		}
 		
 		return createFont(birtStyle);
 	}
 	
+	/**
+	 * The number of Fonts created by this FontManager.
+	 */
+	public int getFontsCreated() {
+		return fontsCreated;
+	}
+	
+	/**
+	 * The number of Fonts requested from this FontManager.
+	 */
+	public long getFontRequests() {
+		return fontRequests;
+	}
+	
 	private BirtStyle birtStyleFromFont( Font source ) {
-		for(FontPair fontPair : fonts) {
-			if( source.equals(fontPair.poiFont) ) {
-				return fontPair.birtStyle.clone();
-			}
+		BirtStyle birtStyle = fontStyles.get( source.getIndex() );
+		if( birtStyle != null ) {
+			return birtStyle.clone();
 		}
 		
 		return new BirtStyle(cssEngine);
@@ -270,5 +363,30 @@ public class FontManager {
 		return newFont;
 	}
 	
+	/**
+	 * Return a POI font that will be visible against the background colour of a BIRT style.
+	 * <br/>
+	 * The result of StyleManagerUtils.correctFontColorIfBackground is remembered for each combination of font and background colour.
+	 * @param birtStyle
+	 * The BIRT style that provides the background colour.
+	 * @param font
+	 * The POI font that is to be displayed on the background.
+	 * @return
+	 * Either font, or a variant of font with a contrasting colour.
+	 */
+	public Font correctFontColorIfBackground( BirtStyle birtStyle, Font font ) {
+		if( font == null ) {
+			return smu.correctFontColorIfBackground( this, workbook, birtStyle, font );
+		}
+		
+		BackgroundKey key = new BackgroundKey( font.getIndex(), birtStyle.getProperty( StyleConstants.STYLE_BACKGROUND_COLOR ) );
+		Font result = backgroundFonts.get( key );
+		if( result == null ) {
+			result = smu.correctFontColorIfBackground( this, workbook, birtStyle, font );
+			backgroundFonts.put( key, result );
+		}
+		return result;
+	}
+	
 	
 }
@@ -0,0 +1,258 @@
+/********************************************************************************
+* (C) Copyright 2011, by James Talbut.
+*
+*   This program is free software: you can redistribute it and/or modify
+*   it under the terms of the GNU General Public License as published by
+*   the Free Software Foundation, either version 3 of the License, or
+*   (at your option) any later version.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of
+*   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*   GNU General Public License for more details.
+*
+*   You should have received a copy of the GNU General Public License
+*   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*   [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+*   in the United States and other countries.]
+********************************************************************************/
+
+package uk.co.spudsoft.birt.emitters.excel;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.eclipse.birt.core.exception.BirtException;
+
+import uk.co.spudsoft.birt.emitters.excel.framework.Logger;
+
+/**
+ * GeometryPass runs the text measurements that determine row heights on a pool of threads.
+ * <p>
+ * Row heights for merged cells are recorded as measurements as each row ends and resolved together when the page ends,
+ * then applied to the rows in the order that they would have been applied as the rows ended.
+ * Column widths are not measured here, they are estimated by ColumnWidthEstimator on the calling thread as cells are written.
+ * </p><p>
+ * With a single thread (the default) nothing is deferred and all measurements are carried out on the calling thread.
+ * </p><p>
+ * The pool is created when it is first needed and reused for the rest of the render, shutdown must be called when the render ends.
+ * </p>
+ * @author Jim Talbut
+ *
+ */
+public class GeometryPass {
+
+	/**
+	 * The measurements that determine the height of a single row, as they stood when the row ended.
+	 * @author Jim Talbut
+	 *
+	 */
+	private static class RowHeightJob {
+		private int rowIndex;
+		private List< Callable< Float > > measurements;
+
+		public RowHeightJob(int rowIndex, List< Callable< Float > > measurements) {
+			this.rowIndex = rowIndex;
+			this.measurements = measurements;
+		}
+	}
+
+	private Logger log;
+	private int threads;
+	/**
+	 * The pool of threads used for measurements, null until it is first needed.
+	 */
+	private ExecutorService executor;
+	/**
+	 * Measurements recorded since the current row was (re)started, the deferred equivalent of HandlerState.requiredRowHeightInPoints.
+	 */
+	private List< Callable< Float > > currentRowMeasurements = new ArrayList< Callable< Float > >();
+	/**
+	 * Rows that have ended with measurements that have not yet been resolved.
+	 */
+	private List< RowHeightJob > pendingRows = new ArrayList< RowHeightJob >();
+
+	/**
+	 * @param log
+	 * Logger.
+	 * @param threads
+	 * The number of threads to use for measurements, values less than 2 mean that measurements are not deferred.
+	 */
+	public GeometryPass(Logger log, int threads) {
+		this.log = log;
+		this.threads = threads;
+	}
+
+	/**
+	 * Test whether measurements can be run on more than one thread.
+	 */
+	public boolean isParallel() {
+		return threads > 1;
+	}
+
+	/**
+	 * Stop the threads used for measurements, if any were started.
+	 */
+	public void shutdown() {
+		if( executor != null ) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Forget the measurements for the current row, called whenever a row is started or resumed.
+	 */
+	public void startRow() {
+		currentRowMeasurements.clear();
+	}
+
+	/**
+	 * Record a measurement of the height required for the current row.
+	 * @param measurement
+	 * The measurement, which will be called from another thread and must not modify the workbook.
+	 */
+	public void addRowHeight( Callable< Float > measurement ) {
+		currentRowMeasurements.add( measurement );
+	}
+
+	/**
+	 * Record the measurements for a row that has ended.
+	 * @param rowIndex
+	 * The index of the row on the current sheet.
+	 * @param heightReplaced
+	 * True if the height of the row has just been set unconditionally, which overrides anything recorded for the row previously.
+	 */
+	public void endRow( int rowIndex, boolean heightReplaced ) {
+		if( heightReplaced ) {
+			discardRow( rowIndex );
+		}
+		if( ! currentRowMeasurements.isEmpty() ) {
+			pendingRows.add( new RowHeightJob( rowIndex, new ArrayList< Callable< Float > >( currentRowMeasurements ) ) );
+		}
+	}
+
+	/**
+	 * Forget the pending measurements for a row, because it has been removed or its height has been replaced.
+	 * @param rowIndex
+	 * The index of the row on the current sheet.
+	 */
+	public void discardRow( int rowIndex ) {
+		for( Iterator< RowHeightJob > iter = pendingRows.iterator(); iter.hasNext(); ) {
+			if( iter.next().rowIndex == rowIndex ) {
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Carry out all the pending row height measurements and apply the results to the sheet.
+	 * @param sheet
+	 * The sheet that the pending measurements relate to.
+	 * @throws BirtException
+	 */
+	public void resolveRowHeights( Sheet sheet ) throws BirtException {
+		if( pendingRows.isEmpty() ) {
+			return ;
+		}
+
+		// A measurement can be shared by more than one row (nested tables), but is only carried out once
+		Map< Callable< Float >, Integer > positions = new IdentityHashMap< Callable< Float >, Integer >();
+		List< Callable< Float > > measurements = new ArrayList< Callable< Float > >();
+		for( RowHeightJob job : pendingRows ) {
+			for( Callable< Float > measurement : job.measurements ) {
+				if( ! positions.containsKey( measurement ) ) {
+					positions.put( measurement, measurements.size() );
+					measurements.add( measurement );
+				}
+			}
+		}
+		log.debug( "Resolving ", measurements.size(), " row height measurements for ", pendingRows.size(), " rows" );
+		List< Float > heights = measure( measurements );
+
+		for( RowHeightJob job : pendingRows ) {
+			float requiredHeight = 0;
+			for( Callable< Float > measurement : job.measurements ) {
+				float height = heights.get( positions.get( measurement ) );
+				if( height > requiredHeight ) {
+					requiredHeight = height;
+				}
+			}
+			Row row = sheet.getRow( job.rowIndex );
+			if( ( row != null ) && ( requiredHeight > row.getHeightInPoints() ) ) {
+				row.setHeightInPoints( requiredHeight );
+			}
+		}
+		pendingRows.clear();
+	}
+
+	/**
+	 * Carry out a set of independent measurements, in parallel if more than one thread is permitted.
+	 * @param measurements
+	 * The measurements to carry out, which must not modify the workbook.
+	 * @return
+	 * The results of the measurements, in the same order.
+	 * @throws BirtException
+	 */
+	public < T > List< T > measure( List< Callable< T > > measurements ) throws BirtException {
+		List< T > results = new ArrayList< T >( measurements.size() );
+		try {
+			if( ( threads <= 1 ) || ( measurements.size() < 2 ) ) {
+				for( Callable< T > measurement : measurements ) {
+					results.add( measurement.call() );
+				}
+			} else {
+				if( executor == null ) {
+					executor = Executors.newFixedThreadPool( threads, new ThreadFactory() {
+						@Override
+						public Thread newThread( Runnable runnable ) {
+							// Never keep the JVM alive if a render is abandoned without end being called
+							Thread thread = new Thread( runnable, "ExcelEmitter geometry" );
+							thread.setDaemon( true );
+							return thread;
+						}
+					} );
+				}
+				for( Future< T > future : executor.invokeAll( measurements ) ) {
+					results.add( future.get() );
+				}
+			}
+		} catch( InterruptedException ex ) {
+			Thread.currentThread().interrupt();
+			throw new BirtException( EmitterServices.getPluginName()
+					, "Interrupted whilst measuring text"
+					, null
+					, null
+					, ex
+					);
+		} catch( ExecutionException ex ) {
+			throw new BirtException( EmitterServices.getPluginName()
+					, "Failed to measure text"
+					, null
+					, null
+					, ex.getCause()
+					);
+		} catch( Exception ex ) {
+			throw new BirtException( EmitterServices.getPluginName()
+					, "Failed to measure text"
+					, null
+					, null
+					, ex
+					);
+		}
+		return results;
+	}
+
+}
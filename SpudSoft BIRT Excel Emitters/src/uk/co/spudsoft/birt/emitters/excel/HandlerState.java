@@ -1,14 +1,23 @@
 package uk.co.spudsoft.birt.emitters.excel;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.eclipse.birt.core.exception.BirtException;
 import org.eclipse.birt.report.engine.api.IRenderOption;
 import org.eclipse.birt.report.engine.api.ReportEngine;
 import org.eclipse.birt.report.engine.emitter.IContentEmitter;
 
+import uk.co.spudsoft.birt.emitters.excel.framework.EventTracer;
 import uk.co.spudsoft.birt.emitters.excel.framework.Logger;
 import uk.co.spudsoft.birt.emitters.excel.handlers.IHandler;
 
@@ -41,10 +50,30 @@ public class HandlerState {
 	 * Style cache, to enable reuse of styles between cells.
 	 */
 	private StyleManager sm;
+	/**
+	 * Cache of BIRT styles for repeated content.
+	 */
+	private BirtStyleCache styleCache;
+	/**
+	 * Measurements of row heights and column widths.
+	 */
+	private GeometryPass geometry;
+	/**
+	 * Metrics for the render.
+	 */
+	private RenderMetrics metrics = new RenderMetrics();
+	/**
+	 * Trace of recent events, for diagnostics.
+	 */
+	private EventTracer tracer;
 	/**
 	 * Render options
 	 */
 	private IRenderOption renderOptions;
+	/**
+	 * Options resolved for content elements
+	 */
+	private EmitterOptions options;
 	/**
 	 * Report engine
 	 */
@@ -85,19 +114,56 @@ public class HandlerState {
 	 * Set to true when end() is called and pageEnd has to be called
 	 */
 	public boolean reportEnding;
+	/**
+	 * The number of unique shared strings after which new strings are written inline, zero to always use shared strings
+	 */
+	public int inlineStringsThreshold;
+	/**
+	 * The number of rows on a single sheet after which the workbook switches to streaming, zero to never switch
+	 */
+	public int streamingThreshold;
+	/**
+	 * The row access window used by streaming sheets, zero if rows are not being streamed
+	 */
+	private int streamingWindow;
+	/**
+	 * The highest row on the current sheet that has been written out by a streaming sheet, -1 if none have been
+	 */
+	private int highestFlushedRow = -1;
+	/**
+	 * How row heights for merged cells and column widths are calculated, one of the ExcelEmitter.GEOMETRY_ values
+	 */
+	public String geometryMode = ExcelEmitter.GEOMETRY_EXACT;
+	/**
+	 * The number of detail rows (after the first) that are considered when calculating column widths, zero or less to consider all of them
+	 */
+	public int autoColWidthsSampleRows = ExcelEmitter.DEFAULT_AUTO_COL_WIDTHS_SAMPLE_ROWS;
+	/**
+	 * The percentage of the considered cells in a column that must fit within its calculated width
+	 */
+	public int autoColWidthsPercentile = 100;
+	/**
+	 * Column width estimators for the tables that are currently open, each of which is told about every cell written
+	 */
+	private List<ColumnWidthEstimator> columnWidthEstimators = new ArrayList<ColumnWidthEstimator>();
 	
 
 	/**
 	 * Border overrides for the current row/table
 	 */
-	public List<AreaBorders> areaBorders = new ArrayList<AreaBorders>();
+	private AreaBordersIndex areaBorders = new AreaBordersIndex();
+	
+	/**
+	 * Merged regions for the current sheet, which are added to the sheet when the page ends.
+	 */
+	private MergedRegionIndex mergedRegions = new MergedRegionIndex();
 	
     /**
-     * List of Current Spans
+     * Current Spans
      * We could probably use CellRangeAdresses inside the sheet, but 
      * this way we keep the tests to a minimum.
      */
-    public List<Area> rowSpans = new ArrayList<Area>();
+    private RowSpanIndex rowSpans;
 	
 	/**
 	 * Constructor
@@ -110,10 +176,18 @@ public class HandlerState {
 		super();
 		this.emitter = emitter;
 		this.log = log;
+		this.rowSpans = new RowSpanIndex( log );
 		this.smu = smu;
 		this.wb = wb;
 		this.sm = sm;
+		this.styleCache = new BirtStyleCache( sm.getValuePool() );
+		this.geometry = new GeometryPass( log, 1 );
+		this.tracer = new EventTracer( 0 );
 		this.renderOptions = renderOptions;
+		this.options = new EmitterOptions( renderOptions );
+		if( wb instanceof SXSSFWorkbook ) {
+			this.streamingWindow = Math.max( 0, ((SXSSFWorkbook)wb).getRandomAccessWindowSize() );
+		}
 	}
 
 	public IContentEmitter getEmitter() {
@@ -136,10 +210,47 @@ public class HandlerState {
 		return sm;
 	}
 
+	public BirtStyleCache getStyleCache() {
+		return styleCache;
+	}
+
+	public GeometryPass getGeometry() {
+		return geometry;
+	}
+
+	public void setGeometry(GeometryPass geometry) {
+		this.geometry = geometry;
+	}
+	
+	/**
+	 * Test whether row height measurements should be deferred until the end of the page.
+	 * <br/>
+	 * This is only possible if the rows will still be available at the end of the page, so it is not done when streaming.
+	 */
+	public boolean deferRowHeights() {
+		return geometry.isParallel() && ! isStreaming();
+	}
+
+	public RenderMetrics getMetrics() {
+		return metrics;
+	}
+
+	public EventTracer getTracer() {
+		return tracer;
+	}
+
+	public void setTracer(EventTracer tracer) {
+		this.tracer = tracer;
+	}
+
 	public IRenderOption getRenderOptions() {
 		return renderOptions;
 	}
 
+	public EmitterOptions getOptions() {
+		return options;
+	}
+
 	public ReportEngine getReportEngine() {
 		return reportEngine;
 	}
@@ -153,84 +264,353 @@ public class HandlerState {
 		this.handler.notifyHandler(this);
 	}
 	
-	public void insertBorderOverload(AreaBorders defn) {
-		if( areaBorders == null ) {
-			areaBorders = new ArrayList<AreaBorders>();
+	/**
+	 * Test whether the workbook is streaming, in which case only a window of recent rows is held in memory.
+	 * <br/>
+	 * A workbook that only spills complete sheets (an unbounded window) is not considered to be streaming until it passes the streaming threshold.
+	 */
+	public boolean isStreaming() {
+		return streamingWindow > 0;
+	}
+	
+	/**
+	 * Switch the workbook to streaming, for the current sheet and all subsequent sheets.
+	 * <br/>
+	 * An in-memory workbook is replaced by a streaming one that wraps it, the rows it already holds are written out as they are
+	 * and are no longer available.
+	 * @param rowAccessWindow
+	 * The number of rows to keep in memory for each sheet.
+	 * @return
+	 * false if the workbook cannot stream.
+	 * @throws BirtException
+	 */
+	public boolean startStreaming( int rowAccessWindow ) throws BirtException {
+		if( rowAccessWindow <= 0 ) {
+			return false;
+		}
+		Workbook streamingWb = wb;
+		if( ! ( wb instanceof SXSSFWorkbook ) ) {
+			streamingWb = ( emitter instanceof ExcelEmitter ) ? ((ExcelEmitter)emitter).convertToStreamingWorkbook( wb, rowAccessWindow ) : null;
+			if( streamingWb == null ) {
+				return false;
+			}
+		}
+		// Rows are about to leave memory, so any deferred row heights must be applied now
+		if( currentSheet != null ) {
+			resolveRowHeights();
 		}
+		streamingWindow = rowAccessWindow;
+		int flushedRow = -1;
+		if( streamingWb != wb ) {
+			if( currentSheet != null ) {
+				if( currentSheet.getPhysicalNumberOfRows() > 0 ) {
+					flushedRow = currentSheet.getLastRowNum();
+				}
+				currentSheet = streamingWb.getSheetAt( wb.getSheetIndex( currentSheet ) );
+			}
+			wb = streamingWb;
+		}
+		applyStreamingWindow();
+		// The rows of an in-memory sheet stay behind in the workbook that was wrapped
+		highestFlushedRow = flushedRow;
+		return true;
+	}
+	
+	/**
+	 * Carry out any deferred row height measurements for the current sheet.
+	 * @throws BirtException
+	 */
+	public void resolveRowHeights() throws BirtException {
+		long start = System.nanoTime();
+		geometry.resolveRowHeights( currentSheet );
+		metrics.addGeometryTime( System.nanoTime() - start );
+	}
+	
+	/**
+	 * Apply the streaming window to the current sheet, which is necessary for sheets created after a spilling workbook switched to streaming.
+	 * <br/>
+	 * This must be called for each new sheet, because it also resets the record of which rows have been written out.
+	 */
+	public void applyStreamingWindow() {
+		highestFlushedRow = -1;
+		if( ( streamingWindow > 0 ) && ( currentSheet instanceof SXSSFSheet ) ) {
+			((SXSSFSheet)currentSheet).setRandomAccessWindowSize( streamingWindow );
+		}
+	}
+	
+	/**
+	 * Test whether the current sheet has grown beyond the streaming threshold without the workbook having started streaming.
+	 */
+	public boolean streamingThresholdReached() {
+		return ( streamingThreshold > 0 ) && ! isStreaming() && ( rowNum >= streamingThreshold );
+	}
+	
+	/**
+	 * Switch to streaming if the current sheet has grown beyond the streaming threshold.
+	 * @throws BirtException
+	 */
+	public void checkStreamingThreshold() throws BirtException {
+		if( streamingThresholdReached() ) {
+			log.debug( "Sheet has reached ", rowNum, " rows, switching to streaming" );
+			if( ! startStreaming( ExcelEmitter.DEFAULT_STREAMING_WINDOW ) ) {
+				log.warn( 0, "Streaming is not supported for this output format, " + ExcelEmitter.STREAMING_THRESHOLD + " will be ignored", null );
+				streamingThreshold = 0;
+			}
+		}
+	}
+	
+	/**
+	 * Write out all the rows of the current sheet that are still held in memory.
+	 * <br/>
+	 * This only has any effect for streaming workbooks, the rows are written to a temporary file that is copied into the package when the workbook is saved.
+	 * @throws IOException
+	 */
+	public void spillCurrentSheet() throws IOException {
+		if( currentSheet instanceof SXSSFSheet ) {
+			highestFlushedRow = Math.max( highestFlushedRow, currentSheet.getLastRowNum() );
+			((SXSSFSheet)currentSheet).flushRows( 0 );
+		}
+	}
+	
+	/**
+	 * Test whether a row on the current sheet can still be created or modified.
+	 * <br/>
+	 * When the workbook is streaming any row above the row access window has already been written out and is no longer available.
+	 * SXSSF flushes rows in ascending order, so every row below the first row still in the window has been written;
+	 * the highest such row is remembered so that the answer is still correct once the window has been emptied.
+	 * @param rowNum
+	 * The index of the row to test.
+	 * @return
+	 * true if the row exists, or can be created, on the current sheet.
+	 */
+	public boolean rowIsAvailable( int rowNum ) {
+		if( currentSheet.getRow( rowNum ) != null ) {
+			return true;
+		}
+		if( isStreaming() ) {
+			Iterator<Row> iter = currentSheet.rowIterator();
+			if( iter.hasNext() ) {
+				highestFlushedRow = Math.max( highestFlushedRow, iter.next().getRowNum() - 1 );
+			}
+			return rowNum > highestFlushedRow;
+		}
+		return true;
+	}
+	
+	public void addColumnWidthEstimator(ColumnWidthEstimator estimator) {
+		columnWidthEstimators.add( estimator );
+	}
+	
+	public void removeColumnWidthEstimator(ColumnWidthEstimator estimator) {
+		columnWidthEstimators.remove( estimator );
+	}
+	
+	/**
+	 * Record the start of a detail band (or grid) for the column width estimator of an open table.
+	 * <br/>
+	 * The first time this is called for an estimator, the merged regions and cells that are already in its sample rows
+	 * (such as the cells of a parent table beside a nested table) are considered too, as they would be if the sheet were read back when the table ends.
+	 * @param estimator
+	 * The estimator for the table.
+	 * @param rowNum
+	 * The first row of the detail band.
+	 */
+	public void startColumnWidthDetails( ColumnWidthEstimator estimator, int rowNum ) {
+		boolean firstDetails = ! estimator.hasStartedDetails();
+		estimator.startDetails( rowNum );
+		if( firstDetails ) {
+			int lastRow = estimator.getLastSampleRow();
+			for( CellRangeAddress region : mergedRegions.findRegionsOverlapping( rowNum, lastRow ) ) {
+				estimator.recordMergedRegion( region );
+			}
+			recordWrittenCellWidths( estimator, rowNum, lastRow, 0, Integer.MAX_VALUE );
+		}
+	}
+	
+	/**
+	 * Pass the cells that have already been written in an area of the current sheet to a column width estimator.
+	 */
+	private void recordWrittenCellWidths( ColumnWidthEstimator estimator, int firstRow, int lastRow, int firstCol, int lastCol ) {
+		lastRow = Math.min( lastRow, currentSheet.getLastRowNum() );
+		for( int rowNum = firstRow; rowNum <= lastRow; ++rowNum ) {
+			Row row = currentSheet.getRow( rowNum );
+			if( row != null ) {
+				for( Cell cell : row ) {
+					if( ( cell.getColumnIndex() >= firstCol ) && ( cell.getColumnIndex() <= lastCol ) ) {
+						estimator.recordCell( cell );
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Record a cell whose value and style have been set, so that it can contribute to the widths of the columns of the open tables.
+	 * @param cell
+	 * The cell that has been written.
+	 */
+	public void recordCellWidth( Cell cell ) {
+		for( ColumnWidthEstimator estimator : columnWidthEstimators ) {
+			estimator.recordCell( cell );
+		}
+	}
+	
+	/**
+	 * Record that the rows above the given row are finished, so the column width estimators of the open tables need not keep their cells.
+	 * @param rowNum
+	 * The index of the first row that may still change.
+	 */
+	public void finishColumnWidthRowsAbove( int rowNum ) {
+		for( ColumnWidthEstimator estimator : columnWidthEstimators ) {
+			estimator.finishRowsAbove( rowNum );
+		}
+	}
+	
+	/**
+	 * Add a merged region to the current sheet.
+	 * <br/>
+	 * Merged cells do not contribute to column widths, so all merged regions should be added via this method.
+	 * <br/>
+	 * The region is not added to the POI sheet until addMergedRegionsToSheet is called at the end of the page.
+	 * @param region
+	 * The region to merge.
+	 */
+	public void addMergedRegion( CellRangeAddress region ) {
+		mergedRegions.add( region );
+		metrics.addMergedRegion();
+		for( ColumnWidthEstimator estimator : columnWidthEstimators ) {
+			estimator.recordMergedRegion( region );
+		}
+	}
+	
+	/**
+	 * Find the merged region on the current sheet whose top left cell is at the given location.
+	 * @return
+	 * The merged region, or null if no merged region begins at the location.
+	 */
+	public CellRangeAddress getMergedRegionBegunBy( int row, int col ) {
+		return mergedRegions.findRegionBegunBy( row, col );
+	}
+	
+	/**
+	 * Remove the merged region on the current sheet whose top left cell is at the given location.
+	 * <br/>
+	 * The cells of the region are considered for column widths again, including any that have already been written.
+	 */
+	public void removeMergedRegionBegunBy( int row, int col ) {
+		CellRangeAddress region = mergedRegions.removeRegionBegunBy( row, col );
+		if( region != null ) {
+			metrics.removeMergedRegion();
+			for( ColumnWidthEstimator estimator : columnWidthEstimators ) {
+				estimator.recordUnmergedRegion( region );
+				recordWrittenCellWidths( estimator, region.getFirstRow(), region.getLastRow(), region.getFirstColumn(), region.getLastColumn() );
+			}
+		}
+	}
+	
+	/**
+	 * Add the merged regions for the current sheet to the POI sheet, at the end of the page.
+	 */
+	public void addMergedRegionsToSheet() {
+		mergedRegions.addTo( currentSheet );
+	}
+	
+	/**
+	 * Remove a row from the current sheet, forgetting anything that has been recorded about it.
+	 * @param row
+	 * The row to remove.
+	 */
+	public void removeRow( Row row ) {
+		geometry.discardRow( row.getRowNum() );
+		for( ColumnWidthEstimator estimator : columnWidthEstimators ) {
+			estimator.removeRow( row.getRowNum() );
+		}
+		currentSheet.removeRow( row );
+		metrics.removeRow();
+	}
+	
+	public void insertBorderOverload(AreaBorders defn) {
 		areaBorders.add( defn );
 	}
 	
 	public void removeBorderOverload(AreaBorders defn) {
-		if( areaBorders != null ) {
-			areaBorders.remove(defn);
-		}
+		areaBorders.remove(defn);
+	}
+	
+	public void clearBorderOverloads() {
+		areaBorders.clear();
+	}
+	
+	/**
+	 * Get the border overrides that may apply to cells on a row.
+	 * @param row
+	 * The row being written.
+	 * @return
+	 * The border overrides, in the order that they should be applied.
+	 */
+	public List<AreaBorders> getBorderOverloads( int row ) {
+		return areaBorders.getBorders( row );
+	}
+	
+	/**
+	 * Get the border overrides that may apply to a cell.
+	 * The result is only valid until the next call to this method.
+	 * @param row
+	 * The row of the cell.
+	 * @param column
+	 * The column of the cell.
+	 * @return
+	 * The border overrides, in the order that they should be applied.
+	 */
+	public List<AreaBorders> findBorderOverloads( int row, int column ) {
+		return areaBorders.findBorders( row, column );
 	}
 	
 	public boolean cellIsMergedWithBorders( int row, int column ) {
-		if( areaBorders != null ) {
-			for( AreaBorders areaBorder : areaBorders ) {
-				if( ( areaBorder.isMergedCells ) 
-						&& ( areaBorder.top == row )
-						&& ( areaBorder.left == column ) ) {
-					return true;
-				}
+		for( AreaBorders areaBorder : areaBorders.getBorders( row ) ) {
+			if( ( areaBorder.isMergedCells ) 
+					&& ( areaBorder.top == row )
+					&& ( areaBorder.left == column ) ) {
+				return true;
 			}
-			
 		}
 		return false;
 	}
 	
 	public boolean rowHasMergedCellsWithBorders( int row ) {
-		if( areaBorders != null ) {
-			for( AreaBorders areaBorder : areaBorders ) {
-				if( ( areaBorder.isMergedCells ) 
-						&& ( areaBorder.top <= row )
-						&& ( areaBorder.bottom >= row ) ) {
-					return true;
-				}
-			}			
+		for( AreaBorders areaBorder : areaBorders.getBorders( row ) ) {
+			if( ( areaBorder.isMergedCells ) 
+					&& ( areaBorder.top <= row )
+					&& ( areaBorder.bottom >= row ) ) {
+				return true;
+			}
 		}
 		return false;
 	}
 	
 	public void addRowSpan(int rowX, int colX, int rowY, int colY) {
-		log.debug( "addRowSpan [" + rowX + "," + colX + "] - [" + rowY + "," + colY + "]" );
-	    rowSpans.add(new Area(new Coordinate(rowX, colX), new Coordinate(rowY, colY)));
+		if( log.isDebugEnabled() ) {
+			log.debug( "addRowSpan [" + rowX + "," + colX + "] - [" + rowY + "," + colY + "]" );
+		}
+	    rowSpans.add(new Area(rowX, colX, rowY, colY));
 	}
 	
     public int computeNumberSpanBefore(int row, int col) {
-        int i = 0;
-        for(Area a : rowSpans) {
-        	log.debug( "Considering span [ ", a.x.getRow(), ",", a.x.getCol(), "]-[", a.y.getRow(), ",", a.y.getCol(), "] for ", row, ",", col );
-        	
-        	// I'm now not removing passed spans, so do check a.y.row()
-        	if( a.y.getRow() < row ) {
-        		continue;
-        	}
-        	
-            //Correct this col to know the real col number
-            if(a.x.getCol() <= col) {
-                col += (a.y.getCol() - a.x.getCol()) + 1;
-            }
-            if(row > a.x.getRow() //Span on first appearance is ok. 
-                && a.x.getCol() <= col //This span is before this column
-                ) {
-                i += (a.y.getCol() - a.x.getCol()) + 1;
-            }
-        }
-        return i;
+    	return rowSpans.computeNumberSpanBefore(row, col);
     }
     
     public void clearRowSpans() {
     	rowSpans.clear();
     }
     
+    /**
+     * Remove the row spans whose top left cell is in either the given row or the given column.
+     */
+    public void removeRowSpans( int row, int col ) {
+    	rowSpans.removeSpansInRowOrColumn( row, col );
+    }
+    
     public int findRowsSpanned( int rowX, int colX ) {
-    	for( Area a : rowSpans ) {
-    		if( ( a.x.getRow() == rowX ) && ( a.x.getCol() == colX ) ) {
-    			return a.y.getRow() - a.x.getRow();
-    		}
-    	}
-    	return 0;
+    	return rowSpans.findRowsSpanned( rowX, colX );
     }
 }
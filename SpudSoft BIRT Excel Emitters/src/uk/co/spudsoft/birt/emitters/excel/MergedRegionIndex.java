@@ -0,0 +1,145 @@
+/********************************************************************************
+* (C) Copyright 2011, by James Talbut.
+*
+*   This program is free software: you can redistribute it and/or modify
+*   it under the terms of the GNU General Public License as published by
+*   the Free Software Foundation, either version 3 of the License, or
+*   (at your option) any later version.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of
+*   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*   GNU General Public License for more details.
+*
+*   You should have received a copy of the GNU General Public License
+*   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*   [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+*   in the United States and other countries.]
+********************************************************************************/
+
+
+package uk.co.spudsoft.birt.emitters.excel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/**
+ * MergedRegionIndex holds the merged regions for the current sheet until the sheet is complete.
+ * <p>
+ * Looking up a merged region in a POI sheet means walking every merged region on the sheet,
+ * so the regions are indexed by their top left cell here and only added to the sheet, in the order that they were created, when the page ends.
+ * </p>
+ * @author Jim Talbut
+ *
+ */
+public class MergedRegionIndex {
+
+	/**
+	 * Every region on the sheet, in the order added, with null in the slots of regions that have been removed.
+	 */
+	private List<CellRangeAddress> regions = new ArrayList<CellRangeAddress>();
+	/**
+	 * For each slot in regions, the slot of the next region added with the same top left cell, or -1 if there is none.
+	 */
+	private int[] nextWithSameTopLeft = new int[ 16 ];
+	/**
+	 * The slot of the first region (that has not been removed) for each top left cell.
+	 */
+	private CoordinateMap<Integer> slotsByTopLeft = new CoordinateMap<Integer>();
+
+	public void add( CellRangeAddress region ) {
+		int slot = regions.size();
+		regions.add( region );
+		if( slot == nextWithSameTopLeft.length ) {
+			nextWithSameTopLeft = Arrays.copyOf( nextWithSameTopLeft, slot * 2 );
+		}
+		nextWithSameTopLeft[ slot ] = -1;
+		Integer first = slotsByTopLeft.get( region.getFirstRow(), region.getFirstColumn() );
+		if( first == null ) {
+			slotsByTopLeft.put( region.getFirstRow(), region.getFirstColumn(), slot );
+		} else {
+			int last = first;
+			while( nextWithSameTopLeft[ last ] >= 0 ) {
+				last = nextWithSameTopLeft[ last ];
+			}
+			nextWithSameTopLeft[ last ] = slot;
+		}
+	}
+
+	/**
+	 * Find the merged region whose top left cell is at the given location.
+	 * @return
+	 * The first region added that begins at the location, or null if there is none.
+	 */
+	public CellRangeAddress findRegionBegunBy( int row, int col ) {
+		Integer slot = slotsByTopLeft.get( row, col );
+		return slot == null ? null : regions.get( slot );
+	}
+
+	/**
+	 * Find the merged regions that cover any of a range of rows.
+	 * @param firstRow
+	 * The first row of the range.
+	 * @param lastRow
+	 * The last row of the range.
+	 * @return
+	 * The regions, in the order that they were added.
+	 */
+	public List<CellRangeAddress> findRegionsOverlapping( int firstRow, int lastRow ) {
+		List<CellRangeAddress> result = new ArrayList<CellRangeAddress>();
+		for( CellRangeAddress region : regions ) {
+			if( ( region != null ) && ( region.getFirstRow() <= lastRow ) && ( region.getLastRow() >= firstRow ) ) {
+				result.add( region );
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Remove the merged region whose top left cell is at the given location.
+	 * If more than one region begins at the location only the first one added is removed.
+	 * <br/>
+	 * The slot of the region is emptied rather than removed, so that the order of the other regions is kept without moving them.
+	 * @return
+	 * The region removed, or null if no region begins at the location.
+	 */
+	public CellRangeAddress removeRegionBegunBy( int row, int col ) {
+		Integer slot = slotsByTopLeft.remove( row, col );
+		if( slot == null ) {
+			return null;
+		}
+		int next = nextWithSameTopLeft[ slot ];
+		if( next >= 0 ) {
+			slotsByTopLeft.put( row, col, next );
+		}
+		return regions.set( slot, null );
+	}
+
+	/**
+	 * Add all the merged regions to a sheet, in the order that they were created, and forget them.
+	 * @param sheet
+	 * The sheet that the regions belong to.
+	 */
+	public void addTo( Sheet sheet ) {
+		for( CellRangeAddress region : regions ) {
+			if( region != null ) {
+				sheet.addMergedRegion( region );
+			}
+		}
+		clear();
+	}
+
+	/**
+	 * Remove all regions without adding them to a sheet.
+	 */
+	public void clear() {
+		regions.clear();
+		slotsByTopLeft.clear();
+	}
+
+}
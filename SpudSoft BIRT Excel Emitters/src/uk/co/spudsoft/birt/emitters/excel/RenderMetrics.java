@@ -0,0 +1,251 @@
+/********************************************************************************
+* (C) Copyright 2011, by James Talbut.
+*
+*   This program is free software: you can redistribute it and/or modify
+*   it under the terms of the GNU General Public License as published by
+*   the Free Software Foundation, either version 3 of the License, or
+*   (at your option) any later version.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of
+*   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*   GNU General Public License for more details.
+*
+*   You should have received a copy of the GNU General Public License
+*   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*   [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+*   in the United States and other countries.]
+********************************************************************************/
+
+package uk.co.spudsoft.birt.emitters.excel;
+
+/**
+ * RenderMetrics records what a single render produced and where it spent its time.
+ * <p>
+ * The metrics are gathered as the render progresses and are complete once the workbook has been written
+ * (or the render has failed), at which point they are passed to the RenderMetricsListener (if one was given in the MetricsListener option)
+ * and, when running within the ExcelEmitterPlugin, added to the statistics published via JMX.
+ * </p><p>
+ * Times are in nanoseconds.
+ * The content callback time covers everything from the start of the report to the end of the content,
+ * so it includes the geometry and image placement times, which are also reported separately.
+ * </p>
+ * @author Jim Talbut
+ *
+ */
+public class RenderMetrics {
+
+	private long cells;
+	private long rows;
+	private int sheets;
+	private int stylesCreated;
+	private long styleRequests;
+	private int fontsCreated;
+	private long fontRequests;
+	private long mergedRegions;
+	private int images;
+	private long imageBytes;
+	private int names;
+
+	private long callbackNanos;
+	private long geometryNanos;
+	private long imagePlacementNanos;
+	private long writeNanos;
+	private boolean failed;
+
+	public void addCell() {
+		++cells;
+	}
+
+	public void addRow() {
+		++rows;
+	}
+
+	public void removeRow() {
+		--rows;
+	}
+
+	public void addSheet() {
+		++sheets;
+	}
+
+	public void addMergedRegion() {
+		++mergedRegions;
+	}
+
+	public void removeMergedRegion() {
+		--mergedRegions;
+	}
+
+	/**
+	 * Record an image added to the workbook.
+	 * @param bytes
+	 * The size of the image data.
+	 */
+	public void addImage( int bytes ) {
+		++images;
+		imageBytes += bytes;
+	}
+
+	public void addName() {
+		++names;
+	}
+
+	/**
+	 * Record the CellStyles created, and the number of times that a CellStyle was requested from the StyleManager.
+	 */
+	public void setStyleCounts( int created, long requests ) {
+		this.stylesCreated = created;
+		this.styleRequests = requests;
+	}
+
+	/**
+	 * Record the Fonts created, and the number of times that a Font was requested from the FontManager.
+	 */
+	public void setFontCounts( int created, long requests ) {
+		this.fontsCreated = created;
+		this.fontRequests = requests;
+	}
+
+	public void addGeometryTime( long nanos ) {
+		geometryNanos += nanos;
+	}
+
+	public void addImagePlacementTime( long nanos ) {
+		imagePlacementNanos += nanos;
+	}
+
+	public void setCallbackTime( long nanos ) {
+		callbackNanos = nanos;
+	}
+
+	public void setWriteTime( long nanos ) {
+		writeNanos = nanos;
+	}
+
+	/**
+	 * Record that the render failed, either in a callback or while writing the workbook.
+	 */
+	public void setFailed() {
+		failed = true;
+	}
+
+	/**
+	 * The number of cells written with content or style by the content handlers.
+	 */
+	public long getCells() {
+		return cells;
+	}
+
+	/**
+	 * The number of rows created, less those removed as blank.
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	public int getSheets() {
+		return sheets;
+	}
+
+	public int getStylesCreated() {
+		return stylesCreated;
+	}
+
+	public long getStyleRequests() {
+		return styleRequests;
+	}
+
+	/**
+	 * The proportion of CellStyle requests that were satisfied by an existing CellStyle.
+	 */
+	public double getStyleHitRatio() {
+		return hitRatio( stylesCreated, styleRequests );
+	}
+
+	public int getFontsCreated() {
+		return fontsCreated;
+	}
+
+	public long getFontRequests() {
+		return fontRequests;
+	}
+
+	/**
+	 * The proportion of Font requests that were satisfied by an existing Font.
+	 */
+	public double getFontHitRatio() {
+		return hitRatio( fontsCreated, fontRequests );
+	}
+
+	public long getMergedRegions() {
+		return mergedRegions;
+	}
+
+	public int getImages() {
+		return images;
+	}
+
+	public long getImageBytes() {
+		return imageBytes;
+	}
+
+	public int getNames() {
+		return names;
+	}
+
+	public long getCallbackNanos() {
+		return callbackNanos;
+	}
+
+	/**
+	 * The time spent measuring row heights and applying column widths.
+	 * <br/>
+	 * Sampling cells for column widths is not timed, because timing it would cost as much as the sampling itself.
+	 */
+	public long getGeometryNanos() {
+		return geometryNanos;
+	}
+
+	public long getImagePlacementNanos() {
+		return imagePlacementNanos;
+	}
+
+	public long getWriteNanos() {
+		return writeNanos;
+	}
+
+	/**
+	 * True if the render failed, in which case the metrics only cover the part of the render that was carried out.
+	 */
+	public boolean isFailed() {
+		return failed;
+	}
+
+	private static double hitRatio( long created, long requests ) {
+		if( requests <= 0 ) {
+			return 0.0;
+		}
+		return Math.max( 0.0, 1.0 - (double)created / requests );
+	}
+
+	@Override
+	public String toString() {
+		return "cells=" + cells
+				+ ", rows=" + rows
+				+ ", sheets=" + sheets
+				+ ", styles=" + stylesCreated + "/" + styleRequests
+				+ ", fonts=" + fontsCreated + "/" + fontRequests
+				+ ", mergedRegions=" + mergedRegions
+				+ ", images=" + images + " (" + imageBytes + " bytes)"
+				+ ", names=" + names
+				+ ", callbacks=" + ( callbackNanos / 1000000 ) + "ms"
+				+ ", geometry=" + ( geometryNanos / 1000000 ) + "ms"
+				+ ", images=" + ( imagePlacementNanos / 1000000 ) + "ms"
+				+ ", write=" + ( writeNanos / 1000000 ) + "ms"
+				+ ( failed ? ", failed" : "" )
+				;
+	}
+
+}
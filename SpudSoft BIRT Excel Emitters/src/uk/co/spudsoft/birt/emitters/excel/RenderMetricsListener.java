@@ -0,0 +1,37 @@
+/********************************************************************************
+* (C) Copyright 2011, by James Talbut.
+*
+*   This program is free software: you can redistribute it and/or modify
+*   it under the terms of the GNU General Public License as published by
+*   the Free Software Foundation, either version 3 of the License, or
+*   (at your option) any later version.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of
+*   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*   GNU General Public License for more details.
+*
+*   You should have received a copy of the GNU General Public License
+*   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*   [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+*   in the United States and other countries.]
+********************************************************************************/
+
+package uk.co.spudsoft.birt.emitters.excel;
+
+/**
+ * A RenderMetricsListener is told about the metrics of each render that it is passed to (as the ExcelEmitter.MetricsListener render option).
+ * @author Jim Talbut
+ *
+ */
+public interface RenderMetricsListener {
+
+	/**
+	 * Called when the workbook has been written, or when the render fails (see RenderMetrics.isFailed).
+	 * @param metrics
+	 * The metrics for the render.
+	 */
+	public void renderComplete( RenderMetrics metrics );
+
+}
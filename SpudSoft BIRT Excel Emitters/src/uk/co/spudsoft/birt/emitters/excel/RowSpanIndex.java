@@ -0,0 +1,193 @@
+/********************************************************************************
+* (C) Copyright 2011, by James Talbut.
+*
+*   This program is free software: you can redistribute it and/or modify
+*   it under the terms of the GNU General Public License as published by
+*   the Free Software Foundation, either version 3 of the License, or
+*   (at your option) any later version.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of
+*   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*   GNU General Public License for more details.
+*
+*   You should have received a copy of the GNU General Public License
+*   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*   [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+*   in the United States and other countries.]
+********************************************************************************/
+
+package uk.co.spudsoft.birt.emitters.excel;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import uk.co.spudsoft.birt.emitters.excel.framework.Logger;
+
+/**
+ * RowSpanIndex records the cells on the current sheet that span more than one row.
+ * <p>
+ * The number of spans before a cell depends upon the order in which the spans were added
+ * (because each span before the cell moves the column being considered to the right),
+ * so the spans that are still open have to be considered in that order.
+ * To keep this cheap the spans that end above the most recently queried row are retired from the list of open spans,
+ * which is safe because a span that ends above the queried row never contributes to it.
+ * Rows are usually queried in increasing order, but nested tables return to the row that they started on,
+ * so a query above the retired rows falls back to considering every span.
+ * </p><p>
+ * Spans are also indexed by their top left cell, for findRowsSpanned.
+ * </p>
+ * @author Jim Talbut
+ *
+ */
+public class RowSpanIndex {
+
+	private Logger log;
+	/**
+	 * Every span on the sheet, in the order added.
+	 */
+	private List<Area> spans = new ArrayList<Area>();
+	/**
+	 * The spans that end on or below openFromRow, in the order added.
+	 */
+	private List<Area> openSpans = new ArrayList<Area>();
+	/**
+	 * Every span that ends above this row has been removed from openSpans.
+	 */
+	private int openFromRow;
+	/**
+	 * The first span added for each top left cell.
+	 */
+	private CoordinateMap<Area> spansByTopLeft = new CoordinateMap<Area>();
+
+	public RowSpanIndex(Logger log) {
+		this.log = log;
+	}
+
+	/**
+	 * Record a span.
+	 * @param area
+	 * The span, from its top left to its bottom right cells.
+	 */
+	public void add( Area area ) {
+		spans.add( area );
+		if( area.getLastRow() >= openFromRow ) {
+			openSpans.add( area );
+		}
+		if( ! spansByTopLeft.containsKey( area.getFirstRow(), area.getFirstCol() ) ) {
+			spansByTopLeft.put( area.getFirstRow(), area.getFirstCol(), area );
+		}
+	}
+
+	/**
+	 * Count the columns, taken up by spans from the rows above, that come before a cell.
+	 * @param row
+	 * The row of the cell.
+	 * @param col
+	 * The column of the cell, disregarding the spans.
+	 * @return
+	 * The number of columns taken up by spans before the cell.
+	 */
+	public int computeNumberSpanBefore( int row, int col ) {
+		List<Area> candidates = spans;
+		if( row >= openFromRow ) {
+			retireSpansEndingAbove( row );
+			candidates = openSpans;
+		}
+
+		int i = 0;
+		for( Area a : candidates ) {
+			int firstRow = a.getFirstRow();
+			int firstCol = a.getFirstCol();
+			int lastRow = a.getLastRow();
+			int lastCol = a.getLastCol();
+			if( log.isDebugEnabled() ) {
+				log.debug( "Considering span [ ", firstRow, ",", firstCol, "]-[", lastRow, ",", lastCol, "] for ", row, ",", col );
+			}
+
+			// I'm now not removing passed spans, so do check the last row
+			if( lastRow < row ) {
+				continue;
+			}
+
+			//Correct this col to know the real col number
+			if(firstCol <= col) {
+				col += (lastCol - firstCol) + 1;
+			}
+			if(row > firstRow //Span on first appearance is ok.
+				&& firstCol <= col //This span is before this column
+				) {
+				i += (lastCol - firstCol) + 1;
+			}
+		}
+		return i;
+	}
+
+	private void retireSpansEndingAbove( int row ) {
+		if( row == openFromRow ) {
+			return ;
+		}
+		List<Area> stillOpen = new ArrayList<Area>( openSpans.size() );
+		for( Area a : openSpans ) {
+			if( a.getLastRow() >= row ) {
+				stillOpen.add( a );
+			}
+		}
+		openSpans = stillOpen;
+		openFromRow = row;
+	}
+
+	/**
+	 * Find the number of rows (after the first) spanned by the span starting at a cell.
+	 * @return
+	 * The number of additional rows spanned, or zero if no span starts at the cell.
+	 */
+	public int findRowsSpanned( int rowX, int colX ) {
+		Area a = spansByTopLeft.get( rowX, colX );
+		if( a != null ) {
+			return a.getLastRow() - a.getFirstRow();
+		}
+		return 0;
+	}
+
+	/**
+	 * Remove every span whose top left cell is in either the given row or the given column.
+	 */
+	public void removeSpansInRowOrColumn( int row, int col ) {
+		boolean removed = false;
+		for( Iterator<Area> iter = spans.iterator(); iter.hasNext(); ) {
+			Area a = iter.next();
+			if( ( a.getFirstRow() == row ) || ( a.getFirstCol() == col ) ) {
+				iter.remove();
+				removed = true;
+			}
+		}
+		if( removed ) {
+			for( Iterator<Area> iter = openSpans.iterator(); iter.hasNext(); ) {
+				Area a = iter.next();
+				if( ( a.getFirstRow() == row ) || ( a.getFirstCol() == col ) ) {
+					iter.remove();
+				}
+			}
+			spansByTopLeft.clear();
+			for( Area a : spans ) {
+				if( ! spansByTopLeft.containsKey( a.getFirstRow(), a.getFirstCol() ) ) {
+					spansByTopLeft.put( a.getFirstRow(), a.getFirstCol(), a );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove all spans, at the end of a sheet.
+	 */
+	public void clear() {
+		spans.clear();
+		openSpans.clear();
+		openFromRow = 0;
+		spansByTopLeft.clear();
+	}
+
+}
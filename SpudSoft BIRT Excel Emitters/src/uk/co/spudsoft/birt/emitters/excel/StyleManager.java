@@ -20,9 +20,9 @@
 
 package uk.co.spudsoft.birt.emitters.excel;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Font;
@@ -46,27 +46,102 @@ import uk.co.spudsoft.birt.emitters.excel.framework.Logger;
 public class StyleManager {
 	
 	/**
-	 * StylePair maintains the relationship between a BIRT style and a POI style.
+	 * StyleKey wraps a BIRT style so that it can be used to look up equivalent styles in a hash map.
+	 * <br/>
+	 * The hash code is calculated once, from exactly the properties compared by stylesEquivalent, so the BIRT style must not be modified whilst the key is in use.
+	 * <br/>
+	 * The BIRT style is interned in the valuePool so that most comparisons of equal values are by reference, but the hash does not depend upon it.
 	 * @author Jim Talbut
 	 *
 	 */
-	private class StylePair {
-		public BirtStyle birtStyle;
-		public CellStyle poiStyle;
+	private static class StyleKey {
+		private BirtStyle birtStyle;
+		private int hash;
 		
-		public StylePair(BirtStyle birtStyle, CellStyle poiStyle) {
+		public StyleKey(BirtStyle birtStyle) {
 			this.birtStyle = birtStyle;
-			this.poiStyle = poiStyle;
+			this.hash = styleHashCode(birtStyle);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if( this == obj ) {
+				return true;
+			}
+			if( ! ( obj instanceof StyleKey ) ) {
+				return false;
+			}
+			StyleKey other = (StyleKey)obj;
+			return ( hash == other.hash ) && stylesEquivalent( birtStyle, other.birtStyle );
+		}
+	}
+	
+	/**
+	 * BorderedStyleKey identifies a request to add a set of borders to an existing POI style.
+	 * @author Jim Talbut
+	 *
+	 */
+	private static class BorderedStyleKey {
+		private short sourceIndex;
+		private CSSValue[] borders;
+		private int hash;
+		
+		public BorderedStyleKey(short sourceIndex, CSSValue[] borders) {
+			this.sourceIndex = sourceIndex;
+			this.borders = borders;
+			int result = sourceIndex;
+			for( int i = 0; i < borders.length; ++i ) {
+				result = 31 * result + StyleManagerUtils.cssValueHashCode( borders[ i ] );
+			}
+			this.hash = result;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if( this == obj ) {
+				return true;
+			}
+			if( ! ( obj instanceof BorderedStyleKey ) ) {
+				return false;
+			}
+			BorderedStyleKey other = (BorderedStyleKey)obj;
+			if( ( hash != other.hash ) || ( sourceIndex != other.sourceIndex ) ) {
+				return false;
+			}
+			for( int i = 0; i < borders.length; ++i ) {
+				if( ! StyleManagerUtils.objectsEqual( borders[ i ], other.borders[ i ] ) ) {
+					return false;
+				}
+			}
+			return true;
 		}
 	}
 	
 	private Workbook workbook;
 	private FontManager fm;
-	private List<StylePair> styles = new ArrayList<StylePair>();
+	private Map<Short, BirtStyle> styles = new HashMap<Short, BirtStyle>();
+	private Map<StyleKey, CellStyle> styleIndex = new HashMap<StyleKey, CellStyle>();
+	private Map<BorderedStyleKey, CellStyle> borderedStyles = new HashMap<BorderedStyleKey, CellStyle>();
+	private CSSValuePool valuePool = new CSSValuePool();
 	private StyleManagerUtils smu;
 	private CSSEngine cssEngine;
 	private Logger log;
 	private Locale locale;
+	/**
+	 * Statistics for RenderMetrics.
+	 */
+	private int stylesCreated;
+	private long styleRequests;
 
 	/**
 	 * @param workbook
@@ -93,10 +168,28 @@ public class StyleManager {
 		return fm;
 	}
 	
+	/**
+	 * The number of CellStyles created by this StyleManager.
+	 */
+	public int getStylesCreated() {
+		return stylesCreated;
+	}
+	
+	/**
+	 * The number of CellStyles requested from this StyleManager.
+	 */
+	public long getStyleRequests() {
+		return styleRequests;
+	}
+	
 	public CSSEngine getCssEngine() {
 		return cssEngine;
 	}
 	
+	public CSSValuePool getValuePool() {
+		return valuePool;
+	}
+	
 	
 	static int COMPARE_CSS_PROPERTIES[] = {
 		StyleConstants.STYLE_TEXT_ALIGN,
@@ -128,7 +221,7 @@ public class StyleManager {
 	 * @return
 	 * true if style1 and style2 would produce identical CellStyles if passed to createStyle.
 	 */
-	private boolean stylesEquivalent( BirtStyle style1, BirtStyle style2) {
+	private static boolean stylesEquivalent( BirtStyle style1, BirtStyle style2) {
 		
 		// System.out.println( "style1: " + style1 );
 		// System.out.println( "style2: " + style2 );
@@ -163,6 +256,28 @@ public class StyleManager {
 		return true;
 	}
 	
+	/**
+	 * Calculate a hash code for a BIRT style that is consistent with stylesEquivalent.
+	 * <br/>
+	 * Values are hashed on their CSS text, which equal values share, and the data format on its patterns (which stylesEquivalent compares by pattern alone).
+	 * @param style
+	 * The BIRT style to hash.
+	 * @return
+	 * A hash code based upon the properties compared by stylesEquivalent.
+	 */
+	private static int styleHashCode( BirtStyle style ) {
+		int result = 1;
+		for( int i = 0; i < COMPARE_CSS_PROPERTIES.length; ++i ) {
+			result = 31 * result + StyleManagerUtils.cssValueHashCode( style.getProperty( COMPARE_CSS_PROPERTIES[ i ] ) );
+		}
+		result = 31 * result + StyleManagerUtils.cssValueHashCode( style.getProperty( BirtStyle.TEXT_ROTATION ) );
+		result = 31 * result + StyleManagerUtils.dataFormatHashCode( (DataFormatValue)style.getProperty( StyleConstants.STYLE_DATA_FORMAT ) );
+		for( int i = 0; i < FontManager.COMPARE_CSS_PROPERTIES.length; ++i ) {
+			result = 31 * result + StyleManagerUtils.cssValueHashCode( style.getProperty( FontManager.COMPARE_CSS_PROPERTIES[ i ] ) );
+		}
+		return result;
+	}
+	
 	/**
 	 * Create a new POI CellStyle based upon a BIRT style.
 	 * @param birtStyle
@@ -172,6 +287,7 @@ public class StyleManager {
 	 */
 	private CellStyle createStyle( BirtStyle birtStyle ) {
 		CellStyle poiStyle = workbook.createCellStyle();
+		++stylesCreated;
 		// Font
 		Font font = fm.getFont(birtStyle);
 		if( font != null ) {
@@ -209,26 +325,27 @@ public class StyleManager {
 			poiStyle.setRotation( (short) ((FloatValue)rotation).getFloatValue() );
 		}
 
-		styles.add(new StylePair( birtStyle.clone(), poiStyle ) );
+		BirtStyle storedStyle = birtStyle.clone();
+		styles.put( poiStyle.getIndex(), storedStyle );
+		styleIndex.put( new StyleKey( storedStyle ), poiStyle );
 		return poiStyle;
 	}
 
 	public CellStyle getStyle( BirtStyle birtStyle ) {
-		for(StylePair stylePair : styles) {
-			if(stylesEquivalent(birtStyle, stylePair.birtStyle)) {
-				// System.err.println( "Equivalent :\n\t" + birtStyle + "\n\t" + stylePair.birtStyle );
-				return stylePair.poiStyle;
-			}
+		++styleRequests;
+		valuePool.intern( birtStyle );
+		CellStyle poiStyle = styleIndex.get( new StyleKey( birtStyle ) );
+		if( poiStyle != null ) {
+			return poiStyle;
 		}
 		
 		return createStyle(birtStyle);		
 	}
 	
 	private BirtStyle birtStyleFromCellStyle( CellStyle source ) {
-		for(StylePair stylePair : styles) {
-			if( source.equals(stylePair.poiStyle) ) {
-				return stylePair.birtStyle.clone();
-			}
+		BirtStyle birtStyle = styles.get( source.getIndex() );
+		if( birtStyle != null ) {
+			return birtStyle.clone();
 		}
 		
 		return new BirtStyle(cssEngine);
@@ -272,6 +389,17 @@ public class StyleManager {
 			, CSSValue borderStyleTop, CSSValue borderWidthTop, CSSValue borderColourTop 
 			) {
 
+		BorderedStyleKey key = new BorderedStyleKey( source.getIndex(), new CSSValue[] { 
+				borderStyleBottom, borderWidthBottom, borderColourBottom 
+				, borderStyleLeft, borderWidthLeft, borderColourLeft 
+				, borderStyleRight, borderWidthRight, borderColourRight 
+				, borderStyleTop, borderWidthTop, borderColourTop 
+				} );
+		CellStyle memoStyle = borderedStyles.get( key );
+		if( memoStyle != null ) {
+			return memoStyle;
+		}
+		
 		BirtStyle birtStyle = birtStyleFromCellStyle( source );
 		if( ( borderStyleBottom != null ) && ( borderWidthBottom != null ) && ( borderColourBottom != null ) ){
 			birtStyle.setProperty( StyleConstants.STYLE_BORDER_BOTTOM_STYLE, borderStyleBottom );
@@ -295,6 +423,7 @@ public class StyleManager {
 		}
 		
 		CellStyle newStyle = getStyle( birtStyle );
+		borderedStyles.put( key, newStyle );
 		return newStyle;
 	}
 	
@@ -24,6 +24,7 @@ import java.awt.font.FontRenderContext;
 import java.awt.font.LineBreakMeasurer;
 import java.awt.font.TextAttribute;
 import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -31,13 +32,18 @@ import java.net.MalformedURLException;
 import java.net.URLConnection;
 import java.text.AttributedString;
 import java.text.DateFormat;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.DataFormatter;
 import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.PrintSetup;
 import org.apache.poi.ss.usermodel.RichTextString;
@@ -72,6 +78,79 @@ public abstract class StyleManagerUtils {
 	
 	protected static final FontRenderContext frc = new FontRenderContext(null, true, true);
 	
+	/**
+	 * The maximum number of text heights to remember.
+	 */
+	private static final int MAX_CACHED_TEXT_HEIGHTS = 1024;
+	
+	/**
+	 * TextHeightKey identifies everything that can affect the result of calculateTextHeightPoints.
+	 * <br/>
+	 * Fonts are identified by their index in the workbook, POI fonts are not modified once FontManager has created them.
+	 * @author Jim Talbut
+	 *
+	 */
+	private static class TextHeightKey {
+		private String text;
+		private short defaultFontIndex;
+		private double widthMM;
+		private int[] runs;
+		private int hash;
+		
+		public TextHeightKey(String text, Font defaultFont, double widthMM, List< RichTextRun> richTextRuns) {
+			this.text = text;
+			this.defaultFontIndex = defaultFont.getIndex();
+			this.widthMM = widthMM;
+			this.runs = new int[ richTextRuns.size() * 2 ];
+			for( int i = 0; i < richTextRuns.size(); ++i ) {
+				RichTextRun run = richTextRuns.get( i );
+				runs[ i * 2 ] = run.startIndex;
+				runs[ i * 2 + 1 ] = run.font.getIndex();
+			}
+			long widthBits = Double.doubleToLongBits( widthMM );
+			this.hash = ( ( text.hashCode() * 31 + defaultFontIndex ) * 31 + (int)( widthBits ^ ( widthBits >>> 32 ) ) ) * 31 + Arrays.hashCode( runs );
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if( this == obj ) {
+				return true;
+			}
+			if( ! ( obj instanceof TextHeightKey ) ) {
+				return false;
+			}
+			TextHeightKey other = (TextHeightKey)obj;
+			return ( hash == other.hash )
+					&& ( defaultFontIndex == other.defaultFontIndex )
+					&& ( Double.compare( widthMM, other.widthMM ) == 0 )
+					&& text.equals( other.text )
+					&& Arrays.equals( runs, other.runs );
+		}
+	}
+	
+	/**
+	 * Least recently used cache of the results of calculateTextHeightPoints.
+	 * <br/>
+	 * Text heights may be calculated on more than one thread (see GeometryPass), so access to this (and fontAttributes) is synchronized.
+	 */
+	@SuppressWarnings("serial")
+	private Map<TextHeightKey, Float> textHeights = new LinkedHashMap<TextHeightKey, Float>( 16, 0.75f, true ) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<TextHeightKey, Float> eldest) {
+			return size() > MAX_CACHED_TEXT_HEIGHTS;
+		}
+	};
+	
+	/**
+	 * The AWT text attributes for each POI font, by font index.
+	 */
+	private Map<Short, Map<TextAttribute, Object>> fontAttributes = new HashMap<Short, Map<TextAttribute, Object>>();
+	
 	public interface Factory {
 		StyleManagerUtils create(Logger log);
 	}
@@ -94,6 +173,22 @@ public abstract class StyleManagerUtils {
 	 */
 	public abstract RichTextString createRichTextString(String value);
 	
+	/**
+	 * Set a plain string as the value of an empty cell.
+	 * <br/>
+	 * The base implementation always uses the workbook's shared string table, 
+	 * implementations that support inline strings may use them once the shared string table reaches inlineThreshold entries.
+	 * @param cell
+	 * The cell whose value is to be set.
+	 * @param value
+	 * The string to put in the cell.
+	 * @param inlineThreshold
+	 * The number of unique strings above which new strings should be written inline, or zero to always use the shared string table.
+	 */
+	public void setStringCellValue(Cell cell, String value, int inlineThreshold) {
+		cell.setCellValue(value);
+	}
+	
 	/**
 	 * Compare two objects in a null-safe manner.
 	 * @param lhs
@@ -101,10 +196,50 @@ public abstract class StyleManagerUtils {
 	 * @param rhs
 	 * The second object to compare.
 	 * @return
-	 * true is both objects are null or lhs.equals(rhs), otherwise false.
+	 * true is both objects are null, are the same instance, or lhs.equals(rhs), otherwise false.
 	 */
 	public static boolean objectsEqual(Object lhs, Object rhs) {
-		return (lhs == null) ? (rhs == null) : lhs.equals(rhs);  
+		return (lhs == rhs) || ((lhs != null) && lhs.equals(rhs));  
+	}
+	
+	/**
+	 * Calculate a hash code for a CSSValue in a null-safe manner.
+	 * <br/>
+	 * Values that are equal according to objectsEqual will always produce the same hash code.
+	 * @param value
+	 * The value to hash.
+	 * @return
+	 * A hash code based upon the CSS text of value, or zero if value is null.
+	 */
+	public static int cssValueHashCode(CSSValue value) {
+		if( value == null ) {
+			return 0;
+		}
+		String cssText = value.getCssText();
+		return ( cssText == null ) ? 0 : cssText.hashCode();
+	}
+	
+	/**
+	 * Calculate a hash code for a DataFormatValue that is consistent with dataFormatsEquivalent.
+	 * @param dataFormat
+	 * The data format to hash.
+	 * @return
+	 * A hash code based upon the patterns in dataFormat, or zero if dataFormat is null.
+	 */
+	public static int dataFormatHashCode( DataFormatValue dataFormat ) {
+		if( dataFormat == null ) {
+			return 0;
+		}
+		int result = 1;
+		result = 31 * result + objectHashCode( dataFormat.getNumberPattern() );
+		result = 31 * result + objectHashCode( dataFormat.getDatePattern() );
+		result = 31 * result + objectHashCode( dataFormat.getDateTimePattern() );
+		result = 31 * result + objectHashCode( dataFormat.getTimePattern() );
+		return result;
+	}
+	
+	private static int objectHashCode(Object value) {
+		return ( value == null ) ? 0 : value.hashCode();
 	}
 	
 	public static boolean dataFormatsEquivalent( DataFormatValue dataFormat1, DataFormatValue dataFormat2 ) {
@@ -686,11 +821,22 @@ public abstract class StyleManagerUtils {
 	 * The index of the last character to be attributed (inclusive). 
 	 */
 	protected void addFontAttributes( AttributedString attrString, Font font, int startIdx, int endIdx) {
-		attrString.addAttribute(TextAttribute.FAMILY, font.getFontName(), startIdx, endIdx);
-		attrString.addAttribute(TextAttribute.SIZE, (float)font.getFontHeightInPoints(), startIdx, endIdx);
-        if (font.getBoldweight() == Font.BOLDWEIGHT_BOLD) attrString.addAttribute(TextAttribute.WEIGHT, TextAttribute.WEIGHT_BOLD, startIdx, endIdx);
-        if (font.getItalic() ) attrString.addAttribute(TextAttribute.POSTURE, TextAttribute.POSTURE_OBLIQUE, startIdx, endIdx);
-        if (font.getUnderline() == Font.U_SINGLE ) attrString.addAttribute(TextAttribute.UNDERLINE, TextAttribute.UNDERLINE_ON, startIdx, endIdx);
+		Map<TextAttribute, Object> attributes;
+		synchronized( fontAttributes ) {
+			attributes = fontAttributes.get( font.getIndex() );
+		}
+		if( attributes == null ) {
+			attributes = new HashMap<TextAttribute, Object>();
+			attributes.put(TextAttribute.FAMILY, font.getFontName());
+			attributes.put(TextAttribute.SIZE, (float)font.getFontHeightInPoints());
+	        if (font.getBoldweight() == Font.BOLDWEIGHT_BOLD) attributes.put(TextAttribute.WEIGHT, TextAttribute.WEIGHT_BOLD);
+	        if (font.getItalic() ) attributes.put(TextAttribute.POSTURE, TextAttribute.POSTURE_OBLIQUE);
+	        if (font.getUnderline() == Font.U_SINGLE ) attributes.put(TextAttribute.UNDERLINE, TextAttribute.UNDERLINE_ON);
+	        synchronized( fontAttributes ) {
+	        	fontAttributes.put( font.getIndex(), attributes );
+	        }
+		}
+		attrString.addAttributes(attributes, startIdx, endIdx);
 	}
 	
 	/**
@@ -728,6 +874,26 @@ public abstract class StyleManagerUtils {
 	 * The heigh, in points, of a box big enough to contain the formatted sourceText.
 	 */
 	public float calculateTextHeightPoints( String sourceText, Font defaultFont, double widthMM, List< RichTextRun> richTextRuns ) {
+		TextHeightKey key = new TextHeightKey( sourceText, defaultFont, widthMM, richTextRuns );
+		Float height;
+		synchronized( textHeights ) {
+			height = textHeights.get( key );
+		}
+		if( height == null ) {
+			height = measureTextHeightPoints( sourceText, defaultFont, widthMM, richTextRuns );
+			synchronized( textHeights ) {
+				textHeights.put( key, height );
+			}
+		}
+		return height;
+	}
+	
+	/**
+	 * Measure the height of a string formatted according to a set of RichTextRuns and fitted within a give width.
+	 * <br/>
+	 * This does the work for calculateTextHeightPoints, without any caching.
+	 */
+	private float measureTextHeightPoints( String sourceText, Font defaultFont, double widthMM, List< RichTextRun> richTextRuns ) {
 		log.debug( "Calculating height for ", sourceText);
 		
 		final float widthPt = (float)(72 * Math.max( 0, widthMM - 6 ) / 25.4); 
@@ -754,7 +920,9 @@ public abstract class StyleManagerUtils {
 				}
 			}
 			
-			log.debug( "Adding attribute - [", 0, " - ", runEnd, "] = ", defaultFont.getFontName(), " ", defaultFont.getFontHeightInPoints(), "pt" );
+			if( log.isDebugEnabled() ) {
+				log.debug( "Adding attribute - [", 0, " - ", runEnd, "] = ", defaultFont.getFontName(), " ", defaultFont.getFontHeightInPoints(), "pt" );
+			}
 			addFontAttributes(attrString, font, 0, textLine.isEmpty() ? 1 : runEnd );
 
 			for( ++richTextRunIndex; ( richTextRunIndex < richTextRuns.size() ) && ( richTextRuns.get( richTextRunIndex ).startIndex < lineStartIndex + textLine.length() ) ; ++richTextRunIndex ) {
@@ -767,7 +935,9 @@ public abstract class StyleManagerUtils {
 						endIdx = textLine.length();
 					}
 					if( startIdx < endIdx ) {
-						log.debug( "Adding attribute: [", startIdx, " - ", endIdx, "] = ", run.font.getFontName(), " ", run.font.getFontHeightInPoints(), "pt" );
+						if( log.isDebugEnabled() ) {
+							log.debug( "Adding attribute: [", startIdx, " - ", endIdx, "] = ", run.font.getFontName(), " ", run.font.getFontHeightInPoints(), "pt" );
+						}
 						addFontAttributes(attrString, run.font, startIdx, endIdx );
 					}
 				}
@@ -783,16 +953,93 @@ public abstract class StyleManagerUtils {
 		         if( layout.getDescent() + layout.getLeading() > heightAdjustment ) {
 		        	 heightAdjustment = layout.getDescent() + layout.getLeading();
 		         }
-		         log.debug ( "Line: ", textLine, " gives height ", lineHeight, "(", layout.getAscent(), "/", layout.getDescent(), "/", layout.getLeading(), ")");
+		         if( log.isDebugEnabled() ) {
+			         log.debug ( "Line: ", textLine, " gives height ", lineHeight, "(", layout.getAscent(), "/", layout.getDescent(), "/", layout.getLeading(), ")");
+		         }
 		         totalHeight += lineHeight;
 			}
 			totalHeight += heightAdjustment;
 			
 		}
-		log.debug( "Height calculated as ", totalHeight );
+		if( log.isDebugEnabled() ) {
+			log.debug( "Height calculated as ", totalHeight );
+		}
 		return totalHeight;
 	}
 	
+	/**
+	 * Calculate the width of the character used as the unit of column widths ('0') in the default font of a workbook.
+	 * @param wb
+	 * The workbook whose default font (font 0) should be used.
+	 * @return
+	 * The advance of the default character, truncated to an integer as SheetUtil does.
+	 */
+	public double calculateDefaultCharWidth( Workbook wb ) {
+		AttributedString attrString = new AttributedString( "0" );
+		addFontAttributes( attrString, wb.getFontAt( (short)0 ), 0, 1 );
+		TextLayout layout = new TextLayout( attrString.getIterator(), frc );
+		return (int)layout.getAdvance();
+	}
+	
+	/**
+	 * Calculate the width required by the contents of a single cell.
+	 * <br/>
+	 * This is the calculation that SheetUtil.getColumnWidth carries out for each cell (that is not merged) in a column.
+	 * @param cell
+	 * The cell to measure.
+	 * @param formatter
+	 * The DataFormatter used to format numeric values.
+	 * @param defaultCharWidth
+	 * The result of calculateDefaultCharWidth.
+	 * @return
+	 * The width required, in characters, or -1 if the cell has no value to be measured.
+	 */
+	public double calculateCellWidth( Cell cell, DataFormatter formatter, double defaultCharWidth ) {
+		CellStyle style = cell.getCellStyle();
+		int cellType = cell.getCellType();
+		if( cellType == Cell.CELL_TYPE_FORMULA ) {
+			cellType = cell.getCachedFormulaResultType();
+		}
+		
+		String[] lines = null;
+		if( cellType == Cell.CELL_TYPE_STRING ) {
+			lines = cell.getRichStringCellValue().getString().split("\n");
+		} else if( cellType == Cell.CELL_TYPE_NUMERIC ) {
+			String value;
+			try {
+				value = formatter.formatCellValue( cell );
+			} catch( Exception ex ) {
+				value = String.valueOf( cell.getNumericCellValue() );
+			}
+			lines = new String[] { value };
+		} else if( cellType == Cell.CELL_TYPE_BOOLEAN ) {
+			lines = new String[] { String.valueOf( cell.getBooleanCellValue() ).toUpperCase() };
+		}
+		if( lines == null ) {
+			return -1;
+		}
+		
+		Font font = cell.getSheet().getWorkbook().getFontAt( style.getFontIndex() );
+		double width = -1;
+		for( String line : lines ) {
+			String text = line + "0";
+			AttributedString attrString = new AttributedString( text );
+			addFontAttributes( attrString, font, 0, text.length() );
+			TextLayout layout = new TextLayout( attrString.getIterator(), frc );
+			double boundsWidth;
+			if( style.getRotation() != 0 ) {
+				AffineTransform trans = new AffineTransform();
+				trans.concatenate( AffineTransform.getRotateInstance( style.getRotation() * 2.0 * Math.PI / 360.0 ) );
+				trans.concatenate( AffineTransform.getScaleInstance( 1, 2.0 ) );
+				boundsWidth = layout.getOutline( trans ).getBounds().getWidth();
+			} else {
+				boundsWidth = layout.getBounds().getWidth();
+			}
+			width = Math.max( width, boundsWidth / defaultCharWidth + style.getIndention() );
+		}
+		return width;
+	}
+	
 	protected String contrastColour( int colour[] ) {
 		if( ( colour[ 0 ] == 0 ) && ( colour[ 1 ] == 0 ) && ( colour[ 2 ] == 0 ) ) {
 			return "white";
@@ -889,6 +1136,7 @@ public abstract class StyleManagerUtils {
 	/**
 	 * Place a border around a region on the current sheet.
 	 * This is used to apply borders to entire rows or entire tables.
+	 * Rows that have already been streamed out of the workbook are skipped.
 	 * @param colStart
 	 * The column marking the left-side boundary of the region.
 	 * @param colEnd
@@ -967,7 +1215,9 @@ public abstract class StyleManagerUtils {
 						if( ( col == colStart ) || ( col == colEnd ) || ( row == rowStart ) || ( row == rowEnd ) ) {
 							Cell styleCell = styleRow.getCell(col);
 							if( styleCell == null ) {
-								log.debug( "Creating cell[", row, ",", col, "]");
+								if( log.isDebugEnabled() ) {
+									log.debug( "Creating cell[", row, ",", col, "]");
+								}
 								styleCell = styleRow.createCell(col);
 							}
 							if( styleCell != null ) {
@@ -1084,13 +1334,22 @@ public abstract class StyleManagerUtils {
 			}
 			if( ( lastCell != null ) && ( lastCell.getRowIndex() < endRow - 1 ) ) {
 				CellRangeAddress range = new CellRangeAddress(lastCell.getRowIndex(), endRow - 1, lastCell.getColumnIndex(), lastCell.getColumnIndex());
-				log.debug( "Extend: merging from [", range.getFirstRow(), ",", range.getFirstColumn(), "] to [", range.getLastRow(), ",", range.getLastColumn(), "]" );
-				state.currentSheet.addMergedRegion(range);
+				if( log.isDebugEnabled() ) {
+					log.debug( "Extend: merging from [", range.getFirstRow(), ",", range.getFirstColumn(), "] to [", range.getLastRow(), ",", range.getLastColumn(), "]" );
+				}
+				state.addMergedRegion(range);
 				for( int rowNum = lastCell.getRowIndex() + 1; rowNum < endRow; ++rowNum ) {
 					Row row = state.currentSheet.getRow(rowNum);
+					if( ( row == null ) && ! state.rowIsAvailable(rowNum) ) {
+						if( log.isDebugEnabled() ) {
+							log.debug( "Row ", rowNum, " has already been streamed out, not extending column ", colNum, " into it" );
+						}
+						continue;
+					}
 					if( row == null ) {
 						log.error(0, "Creating a row (for column " + colNum + "), this really shouldn't be necessary", null);
 						row = state.currentSheet.createRow(rowNum);
+						state.getMetrics().addRow();
 					}
 					Cell cell = row.createCell(colNum);
 					cell.setCellStyle( lastCell.getCellStyle() );
@@ -21,17 +21,21 @@
 package uk.co.spudsoft.birt.emitters.excel;
 
 import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.FillPatternType;
 import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.RichTextString;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.model.SharedStringsTable;
+import org.apache.poi.xssf.usermodel.XSSFCell;
 import org.apache.poi.xssf.usermodel.XSSFCellStyle;
 import org.apache.poi.xssf.usermodel.XSSFColor;
 import org.apache.poi.xssf.usermodel.XSSFFont;
 import org.apache.poi.xssf.usermodel.XSSFRichTextString;
 import org.apache.poi.xssf.usermodel.XSSFShape;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.apache.poi.xssf.usermodel.extensions.XSSFCellBorder.BorderSide;
 import org.eclipse.birt.report.engine.content.IPageContent;
 import org.eclipse.birt.report.engine.content.IStyle;
@@ -40,6 +44,8 @@ import org.eclipse.birt.report.engine.css.engine.StyleConstants;
 import org.eclipse.birt.report.engine.css.engine.value.css.CSSConstants;
 import org.eclipse.birt.report.engine.ir.DimensionType;
 import org.eclipse.birt.report.model.api.util.ColorUtil;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCell;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.STCellType;
 import org.w3c.dom.css.CSSValue;
 
 import uk.co.spudsoft.birt.emitters.excel.framework.Logger;
@@ -76,6 +82,21 @@ public class StyleManagerXUtils extends StyleManagerUtils {
 		return result;
 	}
 
+	@Override
+	public void setStringCellValue(Cell cell, String value, int inlineThreshold) {
+		if( ( inlineThreshold > 0 ) && ( cell instanceof XSSFCell ) ) {
+			SharedStringsTable sst = ((XSSFWorkbook)cell.getSheet().getWorkbook()).getSharedStringSource();
+			if( sst.getUniqueCount() >= inlineThreshold ) {
+				// The shared string table holds every unique string (twice) until the workbook is written, beyond the threshold that costs more than it saves
+				CTCell ctCell = ((XSSFCell)cell).getCTCell();
+				ctCell.setT( STCellType.INLINE_STR );
+				ctCell.setIs( new XSSFRichTextString( value ).getCTRst() );
+				return ;
+			}
+		}
+		cell.setCellValue(value);
+	}
+
 	/**
 	 * Converts a BIRT border style into a POI BorderStyle.
 	 * @param birtBorder
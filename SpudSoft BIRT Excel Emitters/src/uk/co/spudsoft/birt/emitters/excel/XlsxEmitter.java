@@ -20,7 +20,13 @@
 
 package uk.co.spudsoft.birt.emitters.excel;
 
+import java.io.File;
+import java.lang.reflect.Method;
+
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.streaming.SheetDataWriter;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 /**
@@ -46,5 +52,56 @@ public class XlsxEmitter extends ExcelEmitter {
 	protected Workbook createWorkbook() {
 		return new XSSFWorkbook();
 	}
+
+	@Override
+	protected Workbook createStreamingWorkbook( int rowAccessWindow ) {
+		SXSSFWorkbook wb = new SXSSFWorkbook( new XSSFWorkbook(), rowAccessWindow );
+		if( rowAccessWindow < 0 ) {
+			// Entire sheets will be spilled, it's worth compressing them whilst they wait for the package to be written
+			wb.setCompressTempFiles( true );
+		}
+		return wb;
+	}
+	
+	/**
+	 * SXSSFWorkbook writes the rows of each sheet in the wrapped workbook ahead of the rows it has streamed,
+	 * so the rows already created are written out with everything that XSSF supports (shared strings, outlines).
+	 */
+	@Override
+	protected Workbook convertToStreamingWorkbook( Workbook wb, int rowAccessWindow ) {
+		if( ! ( wb instanceof XSSFWorkbook ) ) {
+			return null;
+		}
+		return new SXSSFWorkbook( (XSSFWorkbook)wb, rowAccessWindow );
+	}
+	
+	/**
+	 * Delete the temporary files that hold the rows of streaming sheets.
+	 * <br/>
+	 * This version of POI has no SXSSFWorkbook.dispose(), and only deletes these files when the JVM exits (or a writer is finalized),
+	 * which is too late for a report server, so the files are found through the package private sheet data writers.
+	 */
+	@Override
+	protected void disposeWorkbook( Workbook wb ) {
+		if( ! ( wb instanceof SXSSFWorkbook ) ) {
+			return ;
+		}
+		try {
+			Method getSheetDataWriter = SXSSFSheet.class.getDeclaredMethod( "getSheetDataWriter" );
+			getSheetDataWriter.setAccessible( true );
+			Method getTempFile = SheetDataWriter.class.getDeclaredMethod( "getTempFile" );
+			getTempFile.setAccessible( true );
+			for( int i = 0; i < wb.getNumberOfSheets(); ++i ) {
+				SheetDataWriter writer = (SheetDataWriter)getSheetDataWriter.invoke( wb.getSheetAt( i ) );
+				writer.close();
+				File tempFile = (File)getTempFile.invoke( writer );
+				if( ! tempFile.delete() ) {
+					log.debug( "Unable to delete ", tempFile );
+				}
+			}
+		} catch( Exception ex ) {
+			log.warn( 0, "Unable to delete the temporary files of the streaming workbook", ex );
+		}
+	}
 	
 }
@@ -0,0 +1,132 @@
+/********************************************************************************
+* (C) Copyright 2011, by James Talbut.
+*
+*   This program is free software: you can redistribute it and/or modify
+*   it under the terms of the GNU General Public License as published by
+*   the Free Software Foundation, either version 3 of the License, or
+*   (at your option) any later version.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of
+*   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*   GNU General Public License for more details.
+*
+*   You should have received a copy of the GNU General Public License
+*   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*   [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+*   in the United States and other countries.]
+********************************************************************************/
+
+package uk.co.spudsoft.birt.emitters.excel.framework;
+
+import uk.co.spudsoft.birt.emitters.excel.handlers.IHandler;
+
+/**
+ * The EventTracer records the most recent events of a single render in a ring buffer that is allocated when the tracer is created.
+ * <br/>
+ * When the tracer is disabled (a capacity of zero) recording does nothing at all.
+ * The buffer is only formatted when it is dumped to the log, which is done on failure or on request.
+ * <p>
+ * Each event records the callback (or other event name, which should be a constant), the path of the handler that was current,
+ * the row and column being processed and an event specific detail value (such as a style index).
+ * The path is taken when the event is recorded, because handlers are reused and may be somewhere else by the time the buffer is dumped.
+ * </p>
+ * @author Jim Talbut
+ *
+ */
+public class EventTracer {
+
+	/**
+	 * Value recorded as the detail of events that have none.
+	 */
+	public static final int NO_DETAIL = -1;
+
+	private int capacity;
+	private String[] events;
+	private String[] paths;
+	private int[] rows;
+	private int[] cols;
+	private int[] details;
+	private long[] times;
+	/**
+	 * The total number of events recorded, the next event is written at count % capacity.
+	 */
+	private long count;
+
+	/**
+	 * @param capacity
+	 * The number of events to keep, zero (or less) to disable the tracer.
+	 */
+	public EventTracer( int capacity ) {
+		this.capacity = Math.max( 0, capacity );
+		this.events = new String[ this.capacity ];
+		this.paths = new String[ this.capacity ];
+		this.rows = new int[ this.capacity ];
+		this.cols = new int[ this.capacity ];
+		this.details = new int[ this.capacity ];
+		this.times = new long[ this.capacity ];
+	}
+
+	public boolean isEnabled() {
+		return capacity > 0;
+	}
+
+	/**
+	 * Record an event.
+	 * @param event
+	 * The name of the event, which should be a constant.
+	 * @param handler
+	 * The handler that was current when the event occurred.
+	 * @param row
+	 * The row being processed.
+	 * @param col
+	 * The column being processed.
+	 * @param detail
+	 * An event specific value, or NO_DETAIL.
+	 */
+	public void record( String event, IHandler handler, int row, int col, int detail ) {
+		if( capacity == 0 ) {
+			return ;
+		}
+		int index = (int)( count % capacity );
+		events[ index ] = event;
+		paths[ index ] = ( handler == null ) ? null : handler.getPath();
+		rows[ index ] = row;
+		cols[ index ] = col;
+		details[ index ] = detail;
+		times[ index ] = System.nanoTime();
+		++count;
+	}
+
+	/**
+	 * Write the events in the buffer to the log, oldest first.
+	 * @param log
+	 * The Logger to write the events to.
+	 * @param reason
+	 * Description of why the events are being written.
+	 */
+	public void dump( Logger log, String reason ) {
+		if( capacity == 0 ) {
+			return ;
+		}
+		long first = Math.max( 0, count - capacity );
+		StringBuilder msg = new StringBuilder();
+		msg.append( reason ).append( ", the last " ).append( count - first ).append( " of " ).append( count ).append( " events were:" );
+		long startTime = ( count > first ) ? times[ (int)( first % capacity ) ] : 0;
+		for( long i = first; i < count; ++i ) {
+			int index = (int)( i % capacity );
+			msg.append( "\n\t" ).append( i ).append( " +" ).append( ( times[ index ] - startTime ) / 1000 ).append( "us " )
+				.append( events[ index ] )
+				.append( " [" ).append( rows[ index ] ).append( ',' ).append( cols[ index ] ).append( ']' );
+			if( details[ index ] != NO_DETAIL ) {
+				msg.append( " (" ).append( details[ index ] ).append( ')' );
+			}
+			if( paths[ index ] != null ) {
+				msg.append( ' ' ).append( paths[ index ] );
+			}
+		}
+		log.info( 0, msg.toString(), null );
+	}
+
+}
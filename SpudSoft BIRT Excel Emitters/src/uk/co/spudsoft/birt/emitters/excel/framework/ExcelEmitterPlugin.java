@@ -20,6 +20,11 @@
 
 package uk.co.spudsoft.birt.emitters.excel.framework;
 
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.eclipse.core.runtime.Plugin;
 import org.osgi.framework.BundleContext;
 
@@ -47,6 +52,8 @@ public class ExcelEmitterPlugin extends Plugin {
 	}
 	
 	private Logger logger;
+	private RenderStatistics statistics = new RenderStatistics();
+	private ObjectName statisticsName;
 
 	/*
 	 * (non-Javadoc)
@@ -56,6 +63,16 @@ public class ExcelEmitterPlugin extends Plugin {
 		super.start(bundleContext);
 		plugin = this;
 		logger = new Logger(getLog(), bundleContext.getBundle().getSymbolicName());		
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName( RenderStatistics.OBJECT_NAME );
+			if( ! server.isRegistered( name ) ) {
+				server.registerMBean( statistics, name );
+				statisticsName = name;
+			}
+		} catch( Exception ex ) {
+			logger.warn( 0, "Unable to register render statistics with JMX", ex );
+		}
 	}
 
 	/*
@@ -63,6 +80,14 @@ public class ExcelEmitterPlugin extends Plugin {
 	 * @see org.osgi.framework.BundleActivator#stop(org.osgi.framework.BundleContext)
 	 */
 	public void stop(BundleContext bundleContext) throws Exception {
+		if( statisticsName != null ) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean( statisticsName );
+			} catch( Exception ex ) {
+				logger.warn( 0, "Unable to unregister render statistics from JMX", ex );
+			}
+			statisticsName = null;
+		}
 		super.stop(bundleContext);
 	}
 	
@@ -74,5 +99,14 @@ public class ExcelEmitterPlugin extends Plugin {
 	public Logger getLogger() {
 		return logger;
 	}
+	
+	/**
+	 * Get the statistics for all renders carried out by the plugin, which are published via JMX.
+	 * @return
+	 * The statistics.
+	 */
+	public RenderStatistics getStatistics() {
+		return statistics;
+	}
 
 }
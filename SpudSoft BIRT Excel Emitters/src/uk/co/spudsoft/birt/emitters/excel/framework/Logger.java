@@ -107,6 +107,17 @@ public class Logger {
 		}
 	}
 	
+	/**
+	 * Check whether debug messages will be output.
+	 * <br/>
+	 * Callers on hot paths should test this before calling debug, so that the varargs array and any boxed arguments are not built for nothing.
+	 * @return
+	 * true if debug messages are output.
+	 */
+	public boolean isDebugEnabled() {
+		return ( eclipseLog != null ) ? debug : backupLog.isDebugEnabled();
+	}
+	
 	/** 
 	 * Log a message with debug severity. 
 	 * @param message
@@ -0,0 +1,143 @@
+/********************************************************************************
+* (C) Copyright 2011, by James Talbut.
+*
+*   This program is free software: you can redistribute it and/or modify
+*   it under the terms of the GNU General Public License as published by
+*   the Free Software Foundation, either version 3 of the License, or
+*   (at your option) any later version.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of
+*   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*   GNU General Public License for more details.
+*
+*   You should have received a copy of the GNU General Public License
+*   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*   [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+*   in the United States and other countries.]
+********************************************************************************/
+
+
+package uk.co.spudsoft.birt.emitters.excel.framework;
+
+import uk.co.spudsoft.birt.emitters.excel.RenderMetrics;
+
+/**
+ * RenderStatistics accumulates the RenderMetrics of every render carried out by the plugin, for publication via JMX.
+ * <br/>
+ * Renders can run concurrently, so all access is synchronized.
+ * @author Jim Talbut
+ *
+ */
+public class RenderStatistics implements RenderStatisticsMBean {
+	
+	/**
+	 * The name that the statistics are registered under with the platform MBean server.
+	 */
+	public static final String OBJECT_NAME = "uk.co.spudsoft.birt.emitters.excel:type=RenderStatistics";
+	
+	private long renders;
+	private long failedRenders;
+	private long totalCells;
+	private long totalRows;
+	private long totalSheets;
+	private long totalImageBytes;
+	private long totalCallbackNanos;
+	private long totalGeometryNanos;
+	private long totalImagePlacementNanos;
+	private long totalWriteNanos;
+	private String lastRender;
+	
+	/**
+	 * Add the metrics of a completed or failed render.
+	 * @param metrics
+	 * The metrics for the render.
+	 */
+	public synchronized void record( RenderMetrics metrics ) {
+		++renders;
+		if( metrics.isFailed() ) {
+			++failedRenders;
+		}
+		totalCells += metrics.getCells();
+		totalRows += metrics.getRows();
+		totalSheets += metrics.getSheets();
+		totalImageBytes += metrics.getImageBytes();
+		totalCallbackNanos += metrics.getCallbackNanos();
+		totalGeometryNanos += metrics.getGeometryNanos();
+		totalImagePlacementNanos += metrics.getImagePlacementNanos();
+		totalWriteNanos += metrics.getWriteNanos();
+		lastRender = metrics.toString();
+	}
+
+	@Override
+	public synchronized long getRenders() {
+		return renders;
+	}
+
+	@Override
+	public synchronized long getFailedRenders() {
+		return failedRenders;
+	}
+
+	@Override
+	public synchronized long getTotalCells() {
+		return totalCells;
+	}
+
+	@Override
+	public synchronized long getTotalRows() {
+		return totalRows;
+	}
+
+	@Override
+	public synchronized long getTotalSheets() {
+		return totalSheets;
+	}
+
+	@Override
+	public synchronized long getTotalImageBytes() {
+		return totalImageBytes;
+	}
+
+	@Override
+	public synchronized long getTotalCallbackMillis() {
+		return totalCallbackNanos / 1000000;
+	}
+
+	@Override
+	public synchronized long getTotalGeometryMillis() {
+		return totalGeometryNanos / 1000000;
+	}
+
+	@Override
+	public synchronized long getTotalImagePlacementMillis() {
+		return totalImagePlacementNanos / 1000000;
+	}
+
+	@Override
+	public synchronized long getTotalWriteMillis() {
+		return totalWriteNanos / 1000000;
+	}
+
+	@Override
+	public synchronized String getLastRender() {
+		return lastRender;
+	}
+
+	@Override
+	public synchronized void reset() {
+		renders = 0;
+		failedRenders = 0;
+		totalCells = 0;
+		totalRows = 0;
+		totalSheets = 0;
+		totalImageBytes = 0;
+		totalCallbackNanos = 0;
+		totalGeometryNanos = 0;
+		totalImagePlacementNanos = 0;
+		totalWriteNanos = 0;
+		lastRender = null;
+	}
+
+}
@@ -0,0 +1,61 @@
+/********************************************************************************
+* (C) Copyright 2011, by James Talbut.
+*
+*   This program is free software: you can redistribute it and/or modify
+*   it under the terms of the GNU General Public License as published by
+*   the Free Software Foundation, either version 3 of the License, or
+*   (at your option) any later version.
+*
+*   This program is distributed in the hope that it will be useful,
+*   but WITHOUT ANY WARRANTY; without even the implied warranty of
+*   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*   GNU General Public License for more details.
+*
+*   You should have received a copy of the GNU General Public License
+*   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*
+*   [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+*   in the United States and other countries.]
+********************************************************************************/
+
+
+package uk.co.spudsoft.birt.emitters.excel.framework;
+
+/**
+ * Management interface for RenderStatistics.
+ * @author Jim Talbut
+ *
+ */
+public interface RenderStatisticsMBean {
+
+	public long getRenders();
+	
+	/**
+	 * The number of renders that failed, which are included in getRenders and the totals as far as they got.
+	 */
+	public long getFailedRenders();
+	
+	public long getTotalCells();
+	
+	public long getTotalRows();
+	
+	public long getTotalSheets();
+	
+	public long getTotalImageBytes();
+	
+	public long getTotalCallbackMillis();
+	
+	public long getTotalGeometryMillis();
+	
+	public long getTotalImagePlacementMillis();
+	
+	public long getTotalWriteMillis();
+	
+	/**
+	 * The metrics of the most recent render, as a single line.
+	 */
+	public String getLastRender();
+	
+	public void reset();
+	
+}
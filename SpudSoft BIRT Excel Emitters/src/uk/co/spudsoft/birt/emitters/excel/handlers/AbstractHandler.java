@@ -44,6 +44,16 @@ public class AbstractHandler implements IHandler {
 		this.element = element;
 	}
 	
+	/**
+	 * Prepare this handler to process another element with the same parent, as if it had just been constructed.
+	 * @param element
+	 * The element to be processed.
+	 */
+	protected void reuse(IContent element) {
+		this.element = element;
+		this.backgroundColour = null;
+	}
+	
 	@Override
 	public void notifyHandler(HandlerState state) {
 	}
@@ -142,6 +152,7 @@ public class AbstractHandler implements IHandler {
 		Name name = state.currentSheet.getWorkbook().getName(bookmark);
 		if( name == null ) {
 			name = state.currentSheet.getWorkbook().createName();
+			state.getMetrics().addName();
 			name.setNameName( bookmark ); 
 			name.setRefersToFormula( formula );
 		} else {
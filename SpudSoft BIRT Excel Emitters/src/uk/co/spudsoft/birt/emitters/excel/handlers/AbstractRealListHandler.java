@@ -1,8 +1,5 @@
 package uk.co.spudsoft.birt.emitters.excel.handlers;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.eclipse.birt.core.exception.BirtException;
 import org.eclipse.birt.report.engine.content.IListBandContent;
 import org.eclipse.birt.report.engine.content.IListContent;
@@ -10,7 +7,6 @@ import org.eclipse.birt.report.engine.content.IListGroupContent;
 
 import uk.co.spudsoft.birt.emitters.excel.AreaBorders;
 import uk.co.spudsoft.birt.emitters.excel.BirtStyle;
-import uk.co.spudsoft.birt.emitters.excel.EmitterServices;
 import uk.co.spudsoft.birt.emitters.excel.ExcelEmitter;
 import uk.co.spudsoft.birt.emitters.excel.HandlerState;
 import uk.co.spudsoft.birt.emitters.excel.framework.Logger;
@@ -25,7 +21,7 @@ public class AbstractRealListHandler extends AbstractHandler implements NestedTa
 	
 	private AreaBorders borderDefn;
 
-	private List< NestedTableHandler > nestedTables;
+	private NestedTableIndex nestedTables = new NestedTableIndex();
 	
 	public AbstractRealListHandler(Logger log, IHandler parent, IListContent list) {
 		super(log, parent, list);
@@ -33,42 +29,41 @@ public class AbstractRealListHandler extends AbstractHandler implements NestedTa
 
 	@Override
 	public void addNestedTable( NestedTableHandler nestedTableHandler ) {
-		if( nestedTables == null ) {
-			nestedTables = new ArrayList<NestedTableHandler>();
-		}
 		log.debug( "Adding nested table: ", nestedTableHandler );
 		nestedTables.add(nestedTableHandler);
 	}
 	
 	@Override
 	public boolean rowHasNestedTable( int rowNum ) {
-		if( nestedTables != null ) {
-			for( NestedTableHandler nestedTableHandler : nestedTables ) {
-				if( nestedTableHandler.includesRow( rowNum ) ) {
-					log.debug( "Row ", rowNum, " has nested table ", nestedTableHandler );
-					return true;
-				}
+		NestedTableHandler nestedTableHandler = nestedTables.findTableIncluding( rowNum );
+		if( nestedTableHandler != null ) {
+			if( log.isDebugEnabled() ) {
+				log.debug( "Row ", rowNum, " has nested table ", nestedTableHandler );
 			}
+			return true;
+		}
+		if( log.isDebugEnabled() ) {
+			log.debug( "Row ", rowNum, " has no nested tables" );
 		}
-		log.debug( "Row ", rowNum, " has no nested tables" );
 		return false;
 	}
 	
 	@Override
 	public int extendRowBy( int rowNum ) {
 		int offset = 1;
-		if( nestedTables != null ) {
-			for( NestedTableHandler nestedTableHandler : nestedTables ) {
-				int nestedTablesOffset = nestedTableHandler.extendParentsRowBy( rowNum );
-				if( nestedTablesOffset > offset ) {
+		NestedTableHandler nestedTableHandler = nestedTables.findTableExtending( rowNum );
+		if( nestedTableHandler != null ) {
+			int nestedTablesOffset = nestedTableHandler.extendParentsRowBy( rowNum );
+			if( nestedTablesOffset > offset ) {
+				if( log.isDebugEnabled() ) {
 					log.debug( "Row ", rowNum, " is extended by ", nestedTablesOffset, " thanks to ", nestedTableHandler );
-					offset = nestedTablesOffset;
 				}
+				offset = nestedTablesOffset;
 			}
 		}
 		return offset;
 	}
-	
+
 	@Override
 	public void startList(HandlerState state, IListContent list) throws BirtException {
 		startRow = state.rowNum;
@@ -103,16 +98,16 @@ public class AbstractRealListHandler extends AbstractHandler implements NestedTa
 			createName(state, prepareName( list.getBookmark() ), startRow, 0, state.rowNum - 1, 0);
 		}
 		
-		if( EmitterServices.booleanOption( state.getRenderOptions(), list, ExcelEmitter.DISPLAYFORMULAS_PROP, false ) ) {
+		if( state.getOptions().booleanOption( list, ExcelEmitter.DISPLAYFORMULAS_PROP, false ) ) {
 			state.currentSheet.setDisplayFormulas(true);
 		}
-		if( ! EmitterServices.booleanOption( state.getRenderOptions(), list, ExcelEmitter.DISPLAYGRIDLINES_PROP, true ) ) {
+		if( ! state.getOptions().booleanOption( list, ExcelEmitter.DISPLAYGRIDLINES_PROP, true ) ) {
 			state.currentSheet.setDisplayGridlines(false);
 		}
-		if( ! EmitterServices.booleanOption( state.getRenderOptions(), list, ExcelEmitter.DISPLAYROWCOLHEADINGS_PROP, true ) ) {
+		if( ! state.getOptions().booleanOption( list, ExcelEmitter.DISPLAYROWCOLHEADINGS_PROP, true ) ) {
 			state.currentSheet.setDisplayRowColHeadings(false);
 		}
-		if( ! EmitterServices.booleanOption( state.getRenderOptions(), list, ExcelEmitter.DISPLAYZEROS_PROP, true ) ) {
+		if( ! state.getOptions().booleanOption( list, ExcelEmitter.DISPLAYZEROS_PROP, true ) ) {
 			state.currentSheet.setDisplayZeros(false);
 		}
 	}
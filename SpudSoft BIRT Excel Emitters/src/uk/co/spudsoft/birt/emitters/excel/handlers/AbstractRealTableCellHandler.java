@@ -6,6 +6,7 @@ import org.eclipse.birt.core.exception.BirtException;
 import org.eclipse.birt.report.engine.content.IAutoTextContent;
 import org.eclipse.birt.report.engine.content.ICellContent;
 import org.eclipse.birt.report.engine.content.IContainerContent;
+import org.eclipse.birt.report.engine.content.IContent;
 import org.eclipse.birt.report.engine.content.IDataContent;
 import org.eclipse.birt.report.engine.content.IForeignContent;
 import org.eclipse.birt.report.engine.content.IImageContent;
@@ -14,7 +15,6 @@ import org.eclipse.birt.report.engine.content.IListContent;
 import org.eclipse.birt.report.engine.content.ITableContent;
 import org.eclipse.birt.report.engine.content.ITextContent;
 import org.eclipse.birt.report.engine.content.impl.CellContent;
-import org.eclipse.birt.report.engine.css.engine.StyleConstants;
 import org.eclipse.birt.report.engine.emitter.IContentEmitter;
 import org.eclipse.birt.report.engine.ir.CellDesign;
 import org.eclipse.birt.report.engine.layout.pdf.util.HTML2Content;
@@ -33,6 +33,28 @@ public class AbstractRealTableCellHandler extends CellContentHandler {
 		super(emitter, log, parent, cell);
 		column = cell.getColumn();
 	}
+	
+	/**
+	 * Prepare this handler to process another cell in the same row.
+	 * @param element
+	 * The cell to be processed, which must be an ICellContent.
+	 */
+	@Override
+	protected void reuse(IContent element) {
+		super.reuse(element);
+		column = ((ICellContent)element).getColumn();
+		parentRow = null;
+		containsTable = false;
+	}
+	
+	/**
+	 * Returns true if this handler can be reused for another cell in the same row once the current cell has ended.
+	 * <br/>
+	 * A cell that contains a nested table or list is not reused, because the nested handlers keep a reference to it.
+	 */
+	public boolean isReusable() {
+		return ! containsTable;
+	}
 
 	@Override
 	public void notifyHandler(HandlerState state) {
@@ -45,20 +67,22 @@ public class AbstractRealTableCellHandler extends CellContentHandler {
 
 	@Override
 	public void startCell(HandlerState state, ICellContent cell) throws BirtException {
-		log.debug( "Cell - " 
-				+ "BIRT[" 
-					+ cell.getRow()
-					+ ( cell.getRowSpan() > 1 ? "-" + (cell.getRow() + cell.getRowSpan()-1) : "" )
-					+ ","
-					+ cell.getColumn() 
-					+ ( cell.getColSpan() > 1 ? "-" + (cell.getColumn() + cell.getColSpan()-1) : "" )
-					+ "]"
-				+ " state[" 
-					+ state.rowNum
-					+ ","
-					+ state.colNum 
-					+ "]"
-				);
+		if( log.isDebugEnabled() ) {
+			log.debug( "Cell - " 
+					+ "BIRT[" 
+						+ cell.getRow()
+						+ ( cell.getRowSpan() > 1 ? "-" + (cell.getRow() + cell.getRowSpan()-1) : "" )
+						+ ","
+						+ cell.getColumn() 
+						+ ( cell.getColSpan() > 1 ? "-" + (cell.getColumn() + cell.getColSpan()-1) : "" )
+						+ "]"
+					+ " state[" 
+						+ state.rowNum
+						+ ","
+						+ state.colNum 
+						+ "]"
+					);
+		}
 		resumeCell(state);
 	}
 	
@@ -77,17 +101,20 @@ public class AbstractRealTableCellHandler extends CellContentHandler {
 	public void interruptCell(HandlerState state, boolean includeFormatOnly) throws BirtException {
 		
 		if( state == null ) {
-			System.err.println( "state == null" );
+			log.error( 0, "interruptCell called without state", null );
 		} else if( state.currentSheet == null ) {
-			System.err.println( "state.currentSheet == null" );
+			log.error( 0, "interruptCell called without a current sheet", null );
 		} else if( state.currentSheet.getRow(state.rowNum) == null ) {
-			System.err.println( "state.currentSheet.getRow(" + state.rowNum + ") == null" );			
+			log.error( 0, "interruptCell called for row " + state.rowNum + ", which does not exist", null );
+			state.getTracer().dump( log, "Row " + state.rowNum + " does not exist" );
 		}
 
 		if( ( lastValue != null ) || includeFormatOnly ) {
 			Cell currentCell = state.currentSheet.getRow(state.rowNum).getCell( column );
 			if( currentCell == null ) {
-				log.debug( "Creating cell[", state.rowNum, ",", column, "]");
+				if( log.isDebugEnabled() ) {
+					log.debug( "Creating cell[", state.rowNum, ",", column, "]");
+				}
 				currentCell = state.currentSheet.getRow(state.rowNum).createCell( column );
 			}
 					
@@ -99,17 +126,21 @@ public class AbstractRealTableCellHandler extends CellContentHandler {
 				int endCol = state.colNum + cell.getColSpan() - 1;
                 
                 if(cell.getRowSpan() > 1) {
-                	log.debug( "Adding row span [", state.rowNum, ",", state.colNum, "] to [", endRow, ",", endCol, "]" );
+                	if( log.isDebugEnabled() ) {
+	                	log.debug( "Adding row span [", state.rowNum, ",", state.colNum, "] to [", endRow, ",", endCol, "]" );
+                	}
                     state.addRowSpan(state.rowNum, state.colNum, endRow, endCol);
                 }
 				
-                int offset = state.computeNumberSpanBefore(state.rowNum, state.colNum);
-                log.debug( "Offset for [", state.rowNum, ",", state.colNum, "] calculated as ", offset);
-                log.debug( "Merging [", state.rowNum, ",", state.colNum + offset, "] to [", endRow, ",", endCol + offset, "]" );
-                log.debug( "Should be merging ? [", state.rowNum, ",", column, "] to [", endRow, ",", column + cell.getColSpan() - 1, "]" );
+                if( log.isDebugEnabled() ) {
+	                int offset = state.computeNumberSpanBefore(state.rowNum, state.colNum);
+	                log.debug( "Offset for [", state.rowNum, ",", state.colNum, "] calculated as ", offset);
+	                log.debug( "Merging [", state.rowNum, ",", state.colNum + offset, "] to [", endRow, ",", endCol + offset, "]" );
+	                log.debug( "Should be merging ? [", state.rowNum, ",", column, "] to [", endRow, ",", column + cell.getColSpan() - 1, "]" );
+                }
                 // CellRangeAddress newMergedRegion = new CellRangeAddress( state.rowNum, endRow, state.colNum + offset, endCol + offset );
                 CellRangeAddress newMergedRegion = new CellRangeAddress( state.rowNum, endRow, column, column + cell.getColSpan() - 1 );
-                state.currentSheet.addMergedRegion( newMergedRegion );
+                state.addMergedRegion( newMergedRegion );
                                 
 				colSpan = cell.getColSpan();
 			}
@@ -123,7 +154,9 @@ public class AbstractRealTableCellHandler extends CellContentHandler {
 			--colSpan;
 			while( colSpan > 0 ) {
 				++absoluteColumn;
-				log.debug( "Creating cell[", state.rowNum, ",", absoluteColumn, "]");
+				if( log.isDebugEnabled() ) {
+					log.debug( "Creating cell[", state.rowNum, ",", absoluteColumn, "]");
+				}
 				Cell currentCell = state.currentSheet.getRow(state.rowNum).createCell( absoluteColumn );
 				endCellContent(state, null, null, currentCell);
 				++state.colNum;
@@ -139,16 +172,16 @@ public class AbstractRealTableCellHandler extends CellContentHandler {
 	
 	@Override
 	public void startContainer(HandlerState state, IContainerContent container) throws BirtException {
-		// log.debug( "Container display = " + getStyleProperty( container, StyleConstants.STYLE_DISPLAY, "block") );
-		if( ! "inline".equals( getStyleProperty( container, StyleConstants.STYLE_DISPLAY, "block") ) ) {
+		// log.debug( "Container display = " + state.getStyleCache().getDisplay( container ) );
+		if( ! "inline".equals( state.getStyleCache().getDisplay( container ) ) ) {
 			lastCellContentsWasBlock = true;
 		}
 	}
 	
 	@Override
 	public void endContainer(HandlerState state, IContainerContent container) throws BirtException {
-		// log.debug( "Container display = " + getStyleProperty( container, StyleConstants.STYLE_DISPLAY, "block") );
-		if( ! "inline".equals( getStyleProperty( container, StyleConstants.STYLE_DISPLAY, "block") ) ) {
+		// log.debug( "Container display = " + state.getStyleCache().getDisplay( container ) );
+		if( ! "inline".equals( state.getStyleCache().getDisplay( container ) ) ) {
 			lastCellContentsWasBlock = true;
 		}
 	}
@@ -218,12 +251,12 @@ public class AbstractRealTableCellHandler extends CellContentHandler {
 	public void emitText(HandlerState state, ITextContent text) throws BirtException {
 		String textText = text.getText();
 		log.debug( "text:", textText );
-		emitContent(state,text,textText, ( ! "inline".equals( getStyleProperty(text, StyleConstants.STYLE_DISPLAY, "block") ) ) );
+		emitContent(state,text,textText, ( ! "inline".equals( state.getStyleCache().getDisplay( text ) ) ) );
 	}
 
 	@Override
 	public void emitData(HandlerState state, IDataContent data) throws BirtException {
-		emitContent(state,data,data.getValue(), ( ! "inline".equals( getStyleProperty(data, StyleConstants.STYLE_DISPLAY, "block") ) ) );
+		emitContent(state,data,data.getValue(), ( ! "inline".equals( state.getStyleCache().getDisplay( data ) ) ) );
 	}
 
 	@Override
@@ -231,12 +264,12 @@ public class AbstractRealTableCellHandler extends CellContentHandler {
 		// String labelText = ( label.getLabelText() != null ) ? label.getLabelText() : label.getText();
 		String labelText = ( label.getText() != null ) ? label.getText() : label.getLabelText();
 		log.debug( "labelText:", labelText );
-		emitContent(state,label,labelText, ( ! "inline".equals( getStyleProperty(label, StyleConstants.STYLE_DISPLAY, "block") ) ));
+		emitContent(state,label,labelText, ( ! "inline".equals( state.getStyleCache().getDisplay( label ) ) ));
 	}
 
 	@Override
 	public void emitAutoText(HandlerState state, IAutoTextContent autoText) throws BirtException {
-		emitContent(state,autoText,autoText.getText(), ( ! "inline".equals( getStyleProperty(autoText, StyleConstants.STYLE_DISPLAY, "block") ) ) );
+		emitContent(state,autoText,autoText.getText(), ( ! "inline".equals( state.getStyleCache().getDisplay( autoText ) ) ) );
 	}
 
 	@Override
@@ -246,7 +279,7 @@ public class AbstractRealTableCellHandler extends CellContentHandler {
 		if ( IForeignContent.HTML_TYPE.equalsIgnoreCase( foreign.getRawType( ) ) )
 		{
 			HTML2Content.html2Content( foreign );
-			contentVisitor.visitChildren( foreign, null );			
+			getContentVisitor().visitChildren( foreign, null );			
 		}
 	}
 
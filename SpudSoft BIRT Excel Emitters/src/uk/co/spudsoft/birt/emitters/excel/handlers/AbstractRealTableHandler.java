@@ -1,9 +1,5 @@
 package uk.co.spudsoft.birt.emitters.excel.handlers;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import org.apache.poi.ss.util.SheetUtil;
 import org.eclipse.birt.core.exception.BirtException;
 import org.eclipse.birt.report.engine.content.ITableBandContent;
 import org.eclipse.birt.report.engine.content.ITableContent;
@@ -13,9 +9,8 @@ import org.eclipse.birt.report.engine.ir.GridItemDesign;
 
 import uk.co.spudsoft.birt.emitters.excel.AreaBorders;
 import uk.co.spudsoft.birt.emitters.excel.BirtStyle;
-import uk.co.spudsoft.birt.emitters.excel.EmitterServices;
+import uk.co.spudsoft.birt.emitters.excel.ColumnWidthEstimator;
 import uk.co.spudsoft.birt.emitters.excel.ExcelEmitter;
-import uk.co.spudsoft.birt.emitters.excel.FilteredSheet;
 import uk.co.spudsoft.birt.emitters.excel.HandlerState;
 import uk.co.spudsoft.birt.emitters.excel.framework.Logger;
 
@@ -32,7 +27,12 @@ public class AbstractRealTableHandler extends AbstractHandler implements ITableH
 	private BirtStyle tableStyle;
 	private AreaBorders borderDefn;
 	
-	private List< NestedTableHandler > nestedTables;
+	private NestedTableIndex nestedTables = new NestedTableIndex();
+	
+	/**
+	 * Widths required by the columns of the table, accumulated as the cells are written.
+	 */
+	private ColumnWidthEstimator columnWidths;
 
 	public AbstractRealTableHandler(Logger log, IHandler parent, ITableContent table) {
 		super(log, parent, table);
@@ -45,37 +45,36 @@ public class AbstractRealTableHandler extends AbstractHandler implements ITableH
 	
 	@Override
 	public void addNestedTable( NestedTableHandler nestedTableHandler ) {
-		if( nestedTables == null ) {
-			nestedTables = new ArrayList<NestedTableHandler>();
-		}
 		log.debug( "Adding nested table: ", nestedTableHandler );
 		nestedTables.add(nestedTableHandler);
 	}
 	
 	@Override
 	public boolean rowHasNestedTable( int rowNum ) {
-		if( nestedTables != null ) {
-			for( NestedTableHandler nestedTableHandler : nestedTables ) {
-				if( nestedTableHandler.includesRow( rowNum ) ) {
-					log.debug( "Row ", rowNum, " has nested table ", nestedTableHandler );
-					return true;
-				}
+		NestedTableHandler nestedTableHandler = nestedTables.findTableIncluding( rowNum );
+		if( nestedTableHandler != null ) {
+			if( log.isDebugEnabled() ) {
+				log.debug( "Row ", rowNum, " has nested table ", nestedTableHandler );
 			}
+			return true;
+		}
+		if( log.isDebugEnabled() ) {
+			log.debug( "Row ", rowNum, " has no nested tables" );
 		}
-		log.debug( "Row ", rowNum, " has no nested tables" );
 		return false;
 	}
 	
 	@Override
 	public int extendRowBy( int rowNum ) {
 		int offset = 1;
-		if( nestedTables != null ) {
-			for( NestedTableHandler nestedTableHandler : nestedTables ) {
-				int nestedTablesOffset = nestedTableHandler.extendParentsRowBy( rowNum );
-				if( nestedTablesOffset > offset ) {
+		NestedTableHandler nestedTableHandler = nestedTables.findTableExtending( rowNum );
+		if( nestedTableHandler != null ) {
+			int nestedTablesOffset = nestedTableHandler.extendParentsRowBy( rowNum );
+			if( nestedTablesOffset > offset ) {
+				if( log.isDebugEnabled() ) {
 					log.debug( "Row ", rowNum, " is extended by ", nestedTablesOffset, " thanks to ", nestedTableHandler );
-					offset = nestedTablesOffset;
 				}
+				offset = nestedTablesOffset;
 			}
 		}
 		return offset;
@@ -100,14 +99,27 @@ public class AbstractRealTableHandler extends AbstractHandler implements ITableH
 			}
 		}
 		
-		tableStyle = new BirtStyle( table );
+		tableStyle = state.getStyleCache().getStyle( table );
 		borderDefn = AreaBorders.create( -1, startCol, startCol + table.getColumnCount() - 1, startRow, tableStyle );
 		if( borderDefn != null ) {
 			state.insertBorderOverload(borderDefn);
 		}
 		
+		if( ! ExcelEmitter.GEOMETRY_NONE.equals( state.geometryMode ) ) {
+			columnWidths = new ColumnWidthEstimator( 
+					ExcelEmitter.GEOMETRY_APPROXIMATE.equals( state.geometryMode ) ? null : state.getSmu()
+					, state.getWb()
+					, table.getColumnCount()
+					, state.autoColWidthsSampleRows 
+					);
+			state.addColumnWidthEstimator( columnWidths );
+		}
+		
 		if( table.getGenerateBy() instanceof GridItemDesign ) {
 			startDetailsRow = state.rowNum;
+			if( columnWidths != null ) {
+				state.startColumnWidthDetails( columnWidths, state.rowNum );
+			}
 		}
 	}
 	
@@ -115,6 +127,12 @@ public class AbstractRealTableHandler extends AbstractHandler implements ITableH
 	public void endTable(HandlerState state, ITableContent table) throws BirtException {
 		if( table.getGenerateBy() instanceof GridItemDesign ) {
 			endDetailsRow = state.rowNum;
+			if( columnWidths != null ) {
+				columnWidths.endDetails();
+			}
+		}
+		if( columnWidths != null ) {
+			state.removeColumnWidthEstimator( columnWidths );
 		}
 		
 		log.debug( "Applying bottom border to [", state.rowNum - 1, ",", startCol, "] - [", state.rowNum - 1, ",", startCol + table.getColumnCount() - 1, "]" );
@@ -126,50 +144,57 @@ public class AbstractRealTableHandler extends AbstractHandler implements ITableH
 		
 		log.debug( "Details rows from ", startDetailsRow, " to ", endDetailsRow );
 		
-		if( ( startDetailsRow > 0 ) && ( endDetailsRow > startDetailsRow ) ) {
-			boolean forceAutoColWidths = EmitterServices.booleanOption( state.getRenderOptions(), table, ExcelEmitter.FORCEAUTOCOLWIDTHS_PROP, false );
+		if( ( startDetailsRow > 0 ) 
+				&& ( endDetailsRow > startDetailsRow ) 
+				&& ( columnWidths != null ) ) {
+			long start = System.nanoTime();
+			boolean forceAutoColWidths = state.getOptions().booleanOption( table, ExcelEmitter.FORCEAUTOCOLWIDTHS_PROP, false );
 			for( int col = 0; col < table.getColumnCount(); ++col ) {
 				int oldWidth = state.currentSheet.getColumnWidth(col);
 				if( forceAutoColWidths || ( oldWidth == 256 * state.currentSheet.getDefaultColumnWidth() ) ) {
-					FilteredSheet filteredSheet = new FilteredSheet( state.currentSheet, startDetailsRow, Math.min(endDetailsRow, startDetailsRow + 12) );
-			        double calcWidth = SheetUtil.getColumnWidth( filteredSheet, col, false );
-
-			        if (calcWidth > 1.0) {
-			        	calcWidth *= 256;
-			            int maxColumnWidth = 255*256; // The maximum column width for an individual cell is 255 characters
-			            if (calcWidth > maxColumnWidth) {
-			            	calcWidth = maxColumnWidth;
-			            }
-			            if( calcWidth > oldWidth ) {
-			            	state.currentSheet.setColumnWidth( col, (int)(calcWidth) );
-			            }
-			        }
+					double calcWidth = columnWidths.getColumnWidth( col, state.autoColWidthsPercentile );
+					if (calcWidth > 1.0) {
+						calcWidth *= 256;
+						int maxColumnWidth = 255*256; // The maximum column width for an individual cell is 255 characters
+						if (calcWidth > maxColumnWidth) {
+							calcWidth = maxColumnWidth;
+						}
+						if( calcWidth > oldWidth ) {
+							state.currentSheet.setColumnWidth( col, (int)(calcWidth) );
+						}
+					}
 				}
 			}
+			state.getMetrics().addGeometryTime( System.nanoTime() - start );
 		}
 		
 		if( table.getBookmark() != null ) {
 			createName(state, prepareName( table.getBookmark() ), startRow, 0, state.rowNum - 1, table.getColumnCount() - 1);
 		}
 		
-		if( EmitterServices.booleanOption( state.getRenderOptions(), table, ExcelEmitter.DISPLAYFORMULAS_PROP, false ) ) {
+		if( state.getOptions().booleanOption( table, ExcelEmitter.DISPLAYFORMULAS_PROP, false ) ) {
 			state.currentSheet.setDisplayFormulas(true);
 		}
-		if( ! EmitterServices.booleanOption( state.getRenderOptions(), table, ExcelEmitter.DISPLAYGRIDLINES_PROP, true ) ) {
+		if( ! state.getOptions().booleanOption( table, ExcelEmitter.DISPLAYGRIDLINES_PROP, true ) ) {
 			state.currentSheet.setDisplayGridlines(false);
 		}
-		if( ! EmitterServices.booleanOption( state.getRenderOptions(), table, ExcelEmitter.DISPLAYROWCOLHEADINGS_PROP, true ) ) {
+		if( ! state.getOptions().booleanOption( table, ExcelEmitter.DISPLAYROWCOLHEADINGS_PROP, true ) ) {
 			state.currentSheet.setDisplayRowColHeadings(false);
 		}
-		if( ! EmitterServices.booleanOption( state.getRenderOptions(), table, ExcelEmitter.DISPLAYZEROS_PROP, true ) ) {
+		if( ! state.getOptions().booleanOption( table, ExcelEmitter.DISPLAYZEROS_PROP, true ) ) {
 			state.currentSheet.setDisplayZeros(false);
 		}
 	}
 
 	@Override
 	public void startTableBand(HandlerState state, ITableBandContent band) throws BirtException {
-		if( ( band.getBandType() == ITableBandContent.BAND_DETAIL ) && ( startDetailsRow < 0 ) ) {
-			startDetailsRow = state.rowNum;
+		if( band.getBandType() == ITableBandContent.BAND_DETAIL ) {
+			if( startDetailsRow < 0 ) {
+				startDetailsRow = state.rowNum;
+			}
+			if( columnWidths != null ) {
+				state.startColumnWidthDetails( columnWidths, state.rowNum );
+			}
 		}
 		currentBand = band;
 	}
@@ -178,6 +203,9 @@ public class AbstractRealTableHandler extends AbstractHandler implements ITableH
 	public void endTableBand(HandlerState state, ITableBandContent band) throws BirtException {
 		if( band.getBandType() == ITableBandContent.BAND_DETAIL ) {
 			endDetailsRow = state.rowNum - 1;
+			if( columnWidths != null ) {
+				columnWidths.endDetails();
+			}
 		}
 		currentBand = null;
 	}
@@ -6,6 +6,7 @@ import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Row;
 import org.eclipse.birt.core.exception.BirtException;
+import org.eclipse.birt.report.engine.content.IContent;
 import org.eclipse.birt.report.engine.content.IRowContent;
 import org.eclipse.birt.report.engine.ir.DimensionType;
 import org.eclipse.birt.report.model.api.util.DimensionUtil;
@@ -13,7 +14,6 @@ import org.eclipse.birt.report.model.api.util.DimensionUtil;
 import uk.co.spudsoft.birt.emitters.excel.AreaBorders;
 import uk.co.spudsoft.birt.emitters.excel.BirtStyle;
 import uk.co.spudsoft.birt.emitters.excel.CellImage;
-import uk.co.spudsoft.birt.emitters.excel.EmitterServices;
 import uk.co.spudsoft.birt.emitters.excel.ExcelEmitter;
 import uk.co.spudsoft.birt.emitters.excel.HandlerState;
 import uk.co.spudsoft.birt.emitters.excel.StyleManagerUtils;
@@ -34,6 +34,22 @@ public abstract class AbstractRealTableRowHandler extends AbstractHandler {
 		super(log, parent, row);
 		this.startCol = startCol;
 	}
+	
+	/**
+	 * Prepare this handler to process another row in the same table.
+	 * @param element
+	 * The row to be processed, which must be an IRowContent.
+	 */
+	@Override
+	protected void reuse(IContent element) {
+		super.reuse(element);
+		currentRow = null;
+		birtRowStartedAtPoiRow = 0;
+		birtRowStartedAtPoiCol = 0;
+		myRow = 0;
+		rowStyle = null;
+		borderDefn = null;
+	}
 
 	@Override
 	public void startRow(HandlerState state, IRowContent row) throws BirtException {
@@ -50,24 +66,43 @@ public abstract class AbstractRealTableRowHandler extends AbstractHandler {
 			createName(state, prepareName( row.getBookmark() ), birtRowStartedAtPoiRow, 0, state.rowNum - 1, currentRow.getLastCellNum() - 1 );
 		}
 		
+		if( ! isNested() ) {
+			// Nothing returns to the rows of a top level row once it has ended
+			state.finishColumnWidthRowsAbove( state.rowNum );
+			// Images have to be placed before their rows leave memory, which includes the rows left behind when the workbook starts streaming
+			if( state.isStreaming() || state.streamingThresholdReached() ) {
+				PageHandler pageHandler = getAncestor(PageHandler.class);
+				if( pageHandler != null ) {
+					pageHandler.processCellImages(state, state.rowNum);
+				}
+			}
+			state.checkStreamingThreshold();
+		}
+		
 		state.setHandler(parent);		
 	}
 	
 	protected abstract boolean isNested();
 	
 	public void resumeRow(HandlerState state) {
-		log.debug( "Resume row at ", state.rowNum );
+		if( log.isDebugEnabled() ) {
+			log.debug( "Resume row at ", state.rowNum );
+		}
 
 		myRow = state.rowNum;
 		if( state.currentSheet.getRow(state.rowNum) == null ) {
-			log.debug( "Creating row ", state.rowNum );
+			if( log.isDebugEnabled() ) {
+				log.debug( "Creating row ", state.rowNum );
+			}
 			currentRow = state.currentSheet.createRow( state.rowNum );
+			state.getMetrics().addRow();
 		} else {
 			currentRow = state.currentSheet.getRow( state.rowNum );
 		}
 		state.requiredRowHeightInPoints = 0;		
+		state.getGeometry().startRow();
 		
-		rowStyle = new BirtStyle( (IRowContent)element );
+		rowStyle = state.getStyleCache().getStyle( (IRowContent)element );
 		borderDefn = AreaBorders.create( myRow, 0, ((IRowContent)element).getTable().getColumnCount() - 1, myRow, rowStyle );
 		if( borderDefn != null ) {
 			state.insertBorderOverload(borderDefn);
@@ -75,15 +110,19 @@ public abstract class AbstractRealTableRowHandler extends AbstractHandler {
 	}
 	
 	public void interruptRow(HandlerState state) throws BirtException {
-		log.debug( "Interrupt row at ", state.rowNum );
+		if( log.isDebugEnabled() ) {
+			log.debug( "Interrupt row at ", state.rowNum );
+		}
 		currentRow = state.currentSheet.getRow( state.rowNum );
 	
-		boolean blankRow = EmitterServices.booleanOption( state.getRenderOptions(), element, ExcelEmitter.REMOVE_BLANK_ROWS, true );
+		boolean blankRow = state.getOptions().booleanOption( element, ExcelEmitter.REMOVE_BLANK_ROWS, true );
 
-		log.debug( "currentRow.getRowNum() == ", currentRow.getRowNum(), ", state.rowNum == ", state.rowNum );
+		if( log.isDebugEnabled() ) {
+			log.debug( "currentRow.getRowNum() == ", currentRow.getRowNum(), ", state.rowNum == ", state.rowNum );
+		}
 		
 		if( state.rowHasMergedCellsWithBorders( state.rowNum ) ) {
-			for( AreaBorders areaBorder : state.areaBorders ) {
+			for( AreaBorders areaBorder : state.getBorderOverloads( state.rowNum ) ) {
 				if( ( areaBorder.isMergedCells ) 
 						&& ( areaBorder.top <= state.rowNum )
 						&& ( areaBorder.bottom >= state.rowNum ) ) {
@@ -91,9 +130,11 @@ public abstract class AbstractRealTableRowHandler extends AbstractHandler {
 					for( int column = areaBorder.left; column <= areaBorder.right; ++column ) {
 						if( currentRow.getCell(column) == null ) {
 							BirtStyle birtCellStyle = new BirtStyle( state.getSm().getCssEngine() );
-							log.debug( "Creating cell[", state.rowNum, ",", column, "]");
+							if( log.isDebugEnabled() ) {
+								log.debug( "Creating cell[", state.rowNum, ",", column, "]");
+							}
 							Cell cell = state.currentSheet.getRow(state.rowNum).createCell( column );
-							state.getSmu().applyAreaBordersToCell(state.areaBorders, cell, birtCellStyle, state.rowNum, column);
+							state.getSmu().applyAreaBordersToCell(state.findBorderOverloads( state.rowNum, column ), cell, birtCellStyle, state.rowNum, column);
 							CellStyle cellStyle = state.getSm().getStyle(birtCellStyle);
 							cell.setCellStyle(cellStyle);
 						}
@@ -144,30 +185,41 @@ public abstract class AbstractRealTableRowHandler extends AbstractHandler {
         }
         
 		if( blankRow || ( ( ! rowHasNestedTable ) && ( ! isNested() ) && ( currentRow.getPhysicalNumberOfCells() == 0 ) ) ) {
-			log.debug( "Removing row ", currentRow.getRowNum() );
-			state.currentSheet.removeRow(currentRow);
+			if( log.isDebugEnabled() ) {
+				log.debug( "Removing row ", currentRow.getRowNum() );
+			}
+			state.removeRow(currentRow);
 		} else {
 			DimensionType height = ((IRowContent)element).getHeight();
+			boolean heightReplaced = false;
 			if(height != null) {
 				if( DimensionUtil.isAbsoluteUnit(height.getUnits())) {
 					double points = height.convertTo(DimensionType.UNITS_PT);
 					currentRow.setHeightInPoints((float)points);
+					heightReplaced = true;
 				}
 			}
 			if( state.requiredRowHeightInPoints > currentRow.getHeightInPoints() ) {
 				currentRow.setHeightInPoints( state.requiredRowHeightInPoints );
 			}
+			state.getGeometry().endRow(currentRow.getRowNum(), heightReplaced);
 			
 			if( rowHasNestedTable ) {
 				int increase = ((NestedTableContainer)parent).extendRowBy( state.rowNum );
-				log.debug( "Incrementing rowNum from ", state.rowNum, " to ", state.rowNum + increase );
+				if( log.isDebugEnabled() ) {
+					log.debug( "Incrementing rowNum from ", state.rowNum, " to ", state.rowNum + increase );
+				}
 				state.rowNum += increase;
 				state.getSmu().extendRows( state, birtRowStartedAtPoiRow, birtRowStartedAtPoiCol, state.rowNum, state.colNum );
 			} else if( currentRow.getPhysicalNumberOfCells() > 0 ){
-				log.debug( "Incrementing rowNum from ", state.rowNum );
+				if( log.isDebugEnabled() ) {
+					log.debug( "Incrementing rowNum from ", state.rowNum );
+				}
 				state.rowNum += 1;
 			} else {
-				log.debug( "Not incrementing rowNum from ", state.rowNum, " because there are no cells on row ", currentRow.getPhysicalNumberOfCells() );
+				if( log.isDebugEnabled() ) {
+					log.debug( "Not incrementing rowNum from ", state.rowNum, " because there are no cells on row ", currentRow.getPhysicalNumberOfCells() );
+				}
 			}
 		}
 		
@@ -7,8 +7,8 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
@@ -17,7 +17,6 @@ import org.apache.poi.ss.usermodel.Hyperlink;
 import org.apache.poi.ss.usermodel.RichTextString;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.util.CellRangeAddress;
 import org.eclipse.birt.core.exception.BirtException;
 import org.eclipse.birt.report.engine.content.ICellContent;
 import org.eclipse.birt.report.engine.content.IContent;
@@ -32,13 +31,12 @@ import org.eclipse.birt.report.engine.layout.emitter.Image;
 import org.eclipse.birt.report.engine.presentation.ContentEmitterVisitor;
 import org.w3c.dom.css.CSSValue;
 
-import uk.co.spudsoft.birt.emitters.excel.Area;
+import uk.co.spudsoft.birt.emitters.excel.ApproximateTextMetrics;
 import uk.co.spudsoft.birt.emitters.excel.AreaBorders;
 import uk.co.spudsoft.birt.emitters.excel.BirtStyle;
 import uk.co.spudsoft.birt.emitters.excel.CellImage;
 import uk.co.spudsoft.birt.emitters.excel.ClientAnchorConversions;
 import uk.co.spudsoft.birt.emitters.excel.Coordinate;
-import uk.co.spudsoft.birt.emitters.excel.EmitterServices;
 import uk.co.spudsoft.birt.emitters.excel.ExcelEmitter;
 import uk.co.spudsoft.birt.emitters.excel.HandlerState;
 import uk.co.spudsoft.birt.emitters.excel.RichTextRun;
@@ -78,9 +76,13 @@ public class CellContentHandler extends AbstractHandler {
 	 */
 	protected int colSpan;
 	/**
-	 * Visitor to enable processing of child elements created for foreign (HTML) elements.
+	 * The emitter, for the contentVisitor.
 	 */
-	protected ContentEmitterVisitor contentVisitor;
+	private IContentEmitter emitter;
+	/**
+	 * Visitor to enable processing of child elements created for foreign (HTML) elements, created when first needed.
+	 */
+	private ContentEmitterVisitor contentVisitor;
 	/** 
 	 * Override the cell alignment to this instead, unless zero
 	 */
@@ -97,14 +99,38 @@ public class CellContentHandler extends AbstractHandler {
 
 	public CellContentHandler(IContentEmitter emitter, Logger log, IHandler parent, ICellContent cell) {
 		super(log, parent, cell);
-		contentVisitor = new ContentEmitterVisitor( emitter );
+		this.emitter = emitter;
+		colSpan = 1;
+	}
+	
+	@Override
+	protected void reuse(IContent element) {
+		super.reuse(element);
+		lastValue = null;
+		lastElement = null;
+		richTextRuns.clear();
+		lastCellContentsWasBlock = false;
+		lastCellContentsRequiresSpace = false;
 		colSpan = 1;
+		preferredAlignment = null;
+		hyperlinkUrl = null;
+		hyperlinkBookmark = null;
+	}
+	
+	/**
+	 * Get the visitor used to process child elements created for foreign (HTML) elements.
+	 */
+	protected ContentEmitterVisitor getContentVisitor() {
+		if( contentVisitor == null ) {
+			contentVisitor = new ContentEmitterVisitor( emitter );
+		}
+		return contentVisitor;
 	}
 
 	@Override
 	public void startCell(HandlerState state, ICellContent cell) throws BirtException {
 		if( cell.getBookmark() != null ) {
-			System.err.println( "Bookmark: " + cell.getBookmark() );
+			log.debug( "Bookmark: ", cell.getBookmark() );
 		}
 	}
 
@@ -120,13 +146,9 @@ public class CellContentHandler extends AbstractHandler {
 		
 		BirtStyle birtCellStyle = null;
 		if( birtCell != null ) {
-			birtCellStyle = new BirtStyle( birtCell );
-			if( element != null ) {
-				// log.debug( "Overlaying style from ", element );
-				birtCellStyle.overlay( element );
-			}
+			birtCellStyle = state.getStyleCache().getStyle( birtCell, element );
 		} else if( element != null ) {
-			birtCellStyle = new BirtStyle( element );			
+			birtCellStyle = state.getStyleCache().getStyle( element );			
 		} else {
 			birtCellStyle = new BirtStyle( state.getSm().getCssEngine() );
 		}
@@ -155,7 +177,7 @@ public class CellContentHandler extends AbstractHandler {
 
 				smu.correctFontColorIfBackground( birtCellStyle );
 				for( RichTextRun run  : richTextRuns ) {
-					run.font = smu.correctFontColorIfBackground( sm.getFontManager(), state.getWb(), birtCellStyle, run.font ); 
+					run.font = sm.getFontManager().correctFontColorIfBackground( birtCellStyle, run.font ); 
 				}
 				
 				if( ! richTextRuns.isEmpty() ) {
@@ -164,21 +186,27 @@ public class CellContentHandler extends AbstractHandler {
 					Font lastFont = richTextRuns.get(0).font;
 					for( int i = 0; i < richTextRuns.size(); ++i ) {
 						RichTextRun run = richTextRuns.get(i);
-						log.debug( "Run: ", run.startIndex, " font :", run.font ); 
+						if( log.isDebugEnabled() ) {
+							log.debug( "Run: ", run.startIndex, " font :", run.font ); 
+						}
 						if( ! lastFont.equals( run.font ) ) {
-							log.debug("Applying ", runStart, " - ", run.startIndex );
+							if( log.isDebugEnabled() ) {
+								log.debug("Applying ", runStart, " - ", run.startIndex );
+							}
 							rich.applyFont(runStart, run.startIndex, lastFont);
 							runStart = run.startIndex;
 							lastFont = richTextRuns.get(i).font;						
 						}
 					}
 					
-					log.debug("Finalising with ", runStart, " - ", lastString.length() );
+					if( log.isDebugEnabled() ) {
+						log.debug("Finalising with ", runStart, " - ", lastString.length() );
+					}
 					rich.applyFont(runStart, lastString.length(), lastFont);
 
-					setCellContents( cell, rich );
+					setCellContents( state, cell, rich );
 				} else {
-					setCellContents( cell, lastString );
+					setCellContents( state, cell, lastString );
 				}
 
 				if( lastString.contains("\n") ) {
@@ -194,12 +222,12 @@ public class CellContentHandler extends AbstractHandler {
 				}
 				
 			} else {
-				setCellContents( cell, lastValue );
+				setCellContents( state, cell, lastValue );
 			}
 		}
 		
 		int colIndex = cell.getColumnIndex();
-		state.getSmu().applyAreaBordersToCell(state.areaBorders, cell, birtCellStyle, state.rowNum, colIndex);
+		state.getSmu().applyAreaBordersToCell(state.findBorderOverloads( state.rowNum, colIndex ), cell, birtCellStyle, state.rowNum, colIndex);
 		
 		if((birtCell != null) && (( birtCell.getColSpan() > 1 )||( birtCell.getRowSpan() > 1 ))) {
 			AreaBorders mergedRegionBorders = AreaBorders.createForMergedCells( state.rowNum + birtCell.getRowSpan() - 1, colIndex, colIndex + birtCell.getColSpan() - 1, state.rowNum, birtCellStyle );
@@ -208,20 +236,37 @@ public class CellContentHandler extends AbstractHandler {
 			}
 		}
 		
-		String customNumberFormat = EmitterServices.stringOption(state.getRenderOptions(), element, ExcelEmitter.CUSTOM_NUMBER_FORMAT, null);
+		String customNumberFormat = state.getOptions().stringOption( element, ExcelEmitter.CUSTOM_NUMBER_FORMAT, null);
 		if( customNumberFormat != null ) {
 			StyleManagerUtils.setNumberFormat(birtCellStyle, ExcelEmitter.CUSTOM_NUMBER_FORMAT + customNumberFormat, null);
 		}
 		
 		setCellStyle(sm, cell, birtCellStyle, lastValue);
+		state.recordCellWidth(cell);
+		state.getMetrics().addCell();
+		if( state.getTracer().isEnabled() ) {
+			state.getTracer().record( "cellStyle", this, cell.getRowIndex(), cell.getColumnIndex(), cell.getCellStyle().getIndex() );
+		}
 
 		// Excel auto calculates the row height (if it isn't specified) as long as the cell isn't merged - if it is merged I have to do it
-		if( ( colSpan > 1 ) && ( ( lastValue instanceof String ) || ( lastValue instanceof RichTextString ) ) ) {
+		if( ( colSpan > 1 ) 
+				&& ( ( lastValue instanceof String ) || ( lastValue instanceof RichTextString ) ) 
+				&& ! ExcelEmitter.GEOMETRY_NONE.equals( state.geometryMode ) ) {
 			Font defaultFont = state.getWb().getFontAt(cell.getCellStyle().getFontIndex());
 			double cellWidth = spanWidthMillimetres( state.currentSheet, cell.getColumnIndex(), cell.getColumnIndex() + colSpan - 1 );
-			float cellDesiredHeight = smu.calculateTextHeightPoints( cell.getStringCellValue(), defaultFont, cellWidth, richTextRuns ); 
-			if( cellDesiredHeight > state.requiredRowHeightInPoints ) {
-				state.requiredRowHeightInPoints = cellDesiredHeight;
+			TextHeightMeasurement measurement = new TextHeightMeasurement( 
+					ExcelEmitter.GEOMETRY_APPROXIMATE.equals( state.geometryMode ) ? null : smu
+					, cell.getStringCellValue(), defaultFont, cellWidth, richTextRuns 
+					);
+			if( state.deferRowHeights() ) {
+				state.getGeometry().addRowHeight( measurement );
+			} else {
+				long start = System.nanoTime();
+				float cellDesiredHeight = measurement.call(); 
+				state.getMetrics().addGeometryTime( System.nanoTime() - start );
+				if( cellDesiredHeight > state.requiredRowHeightInPoints ) {
+					state.requiredRowHeightInPoints = cellDesiredHeight;
+				}
 			}
 		}
 			
@@ -230,6 +275,40 @@ public class CellContentHandler extends AbstractHandler {
 		richTextRuns.clear();
 	}
 	
+	/**
+	 * TextHeightMeasurement captures everything needed to calculate the height of the text in a merged cell, so that it can be measured later on another thread.
+	 * @author Jim Talbut
+	 *
+	 */
+	private static class TextHeightMeasurement implements Callable< Float > {
+		private StyleManagerUtils smu;
+		private String text;
+		private Font defaultFont;
+		private double widthMM;
+		private List< RichTextRun > richTextRuns;
+
+		/**
+		 * @param smu
+		 * The StyleManagerUtils to measure the text exactly, or null to use ApproximateTextMetrics.
+		 */
+		public TextHeightMeasurement(StyleManagerUtils smu, String text, Font defaultFont, double widthMM, List< RichTextRun > richTextRuns) {
+			this.smu = smu;
+			this.text = text;
+			this.defaultFont = defaultFont;
+			this.widthMM = widthMM;
+			this.richTextRuns = new ArrayList< RichTextRun >( richTextRuns );
+		}
+
+		@Override
+		public Float call() {
+			if( smu == null ) {
+				return ApproximateTextMetrics.calculateTextHeightPoints( text, defaultFont, widthMM, richTextRuns );
+			} else {
+				return smu.calculateTextHeightPoints( text, defaultFont, widthMM, richTextRuns );
+			}
+		}
+	}
+	
 	/**
 	 * Calculate the width of a set of columns, in millimetres.
 	 * @param startCol
@@ -251,13 +330,17 @@ public class CellContentHandler extends AbstractHandler {
 	/**
 	 * Set the contents of an empty cell.
 	 * This should now be the only way in which a cell value is set (cells should not be modified). 
+	 * @param state
+	 * The handler state, which determines how strings are stored.
 	 * @param value
 	 * The value to set.
 	 * @param element
 	 * The BIRT element supplying the value, used to set the style of the cell.
 	 */
-	private <T> void setCellContents(Cell cell, Object value) {
-		log.debug( "Setting cell[", cell.getRow().getRowNum(), ",", cell.getColumnIndex(), "] value to ", value );
+	private <T> void setCellContents(HandlerState state, Cell cell, Object value) {
+		if( log.isDebugEnabled() ) {
+			log.debug( "Setting cell[", cell.getRow().getRowNum(), ",", cell.getColumnIndex(), "] value to ", value );
+		}
 		if( value instanceof Double ) {
 			// cell.setCellType(Cell.CELL_TYPE_NUMERIC);
 			cell.setCellValue((Double)value);
@@ -284,7 +367,7 @@ public class CellContentHandler extends AbstractHandler {
 			lastValue = value;
 		} else if( value instanceof String ) {
 			// cell.setCellType(Cell.CELL_TYPE_STRING);
-			cell.setCellValue((String)value);				
+			state.getSmu().setStringCellValue(cell, (String)value, state.inlineStringsThreshold);
 			lastValue = value;
 		} else if( value instanceof RichTextString ) {
 			// cell.setCellType(Cell.CELL_TYPE_STRING);
@@ -411,7 +494,7 @@ public class CellContentHandler extends AbstractHandler {
 		lastValue = newValue;
 		
 		if( element != null ) {
-			BirtStyle elementStyle = new BirtStyle(element);
+			BirtStyle elementStyle = state.getStyleCache().getStyle(element);
 			Font newFont = sm.getFontManager().getFont( elementStyle );
 			richTextRuns.add(new RichTextRun(oldValue.length(), newFont));
 
@@ -459,6 +542,7 @@ public class CellContentHandler extends AbstractHandler {
 				log.debug( "Unrecognised/unhandled image MIME type: ", image.getMIMEType() );
 			} else {
 				int imageIdx = wb.addPicture( data, imageType );
+				state.getMetrics().addImage( data.length );
 				
 				if( ( image.getHeight() == null ) || ( image.getWidth() == null ) ) {
 					Image birtImage = new Image();
@@ -489,21 +573,8 @@ public class CellContentHandler extends AbstractHandler {
 	}
 	
 	protected void removeMergedCell(HandlerState state, int row, int col) {
-		for( int mergeNum = 0; mergeNum < state.currentSheet.getNumMergedRegions(); ++mergeNum ) {
-			CellRangeAddress region = state.currentSheet.getMergedRegion(mergeNum);
-			if( ( region.getFirstRow() == row ) && ( region.getFirstColumn() == col ) ) {
-				state.currentSheet.removeMergedRegion(mergeNum);
-				break;
-			}
-		}
-		
-		for( Iterator<Area> iter = state.rowSpans.iterator(); iter.hasNext(); ) {
-			Area area = iter.next();
-			Coordinate topLeft = area.getX();
-			if( ( topLeft.getRow() == row ) || ( topLeft.getCol() == col ) ) {
-				iter.remove();
-			}
-		}
+		state.removeMergedRegionBegunBy( row, col );
+		state.removeRowSpans( row, col );
 	}
 	
 }
@@ -8,7 +8,6 @@ import org.eclipse.birt.report.engine.content.IImageContent;
 import org.eclipse.birt.report.engine.content.ILabelContent;
 import org.eclipse.birt.report.engine.content.IListContent;
 import org.eclipse.birt.report.engine.content.ITextContent;
-import org.eclipse.birt.report.engine.css.engine.StyleConstants;
 import org.eclipse.birt.report.engine.emitter.IContentEmitter;
 import org.eclipse.birt.report.engine.layout.pdf.util.HTML2Content;
 
@@ -30,13 +29,13 @@ public class NestedListContentHandler extends CellContentHandler {
 	public void emitText(HandlerState state, ITextContent text) throws BirtException {
 		String textText = text.getText();
 		log.debug( "text:", textText );
-		emitContent(state,text,textText, ( ! "inline".equals( getStyleProperty(text, StyleConstants.STYLE_DISPLAY, "block") ) ) );
+		emitContent(state,text,textText, ( ! "inline".equals( state.getStyleCache().getDisplay( text ) ) ) );
 		state.setHandler(parent);
 	}
 
 	@Override
 	public void emitData(HandlerState state, IDataContent data) throws BirtException {
-		emitContent(state,data,data.getValue(), ( ! "inline".equals( getStyleProperty(data, StyleConstants.STYLE_DISPLAY, "block") ) ) );
+		emitContent(state,data,data.getValue(), ( ! "inline".equals( state.getStyleCache().getDisplay( data ) ) ) );
 		state.setHandler(parent);
 	}
 
@@ -45,13 +44,13 @@ public class NestedListContentHandler extends CellContentHandler {
 		// String labelText = ( label.getLabelText() != null ) ? label.getLabelText() : label.getText();
 		String labelText = ( label.getText() != null ) ? label.getText() : label.getLabelText();
 		log.debug( "labelText:", labelText );
-		emitContent(state,label,labelText, ( ! "inline".equals( getStyleProperty(label, StyleConstants.STYLE_DISPLAY, "block") ) ));
+		emitContent(state,label,labelText, ( ! "inline".equals( state.getStyleCache().getDisplay( label ) ) ));
 		state.setHandler(parent);
 	}
 
 	@Override
 	public void emitAutoText(HandlerState state, IAutoTextContent autoText) throws BirtException {
-		emitContent(state,autoText,autoText.getText(), ( ! "inline".equals( getStyleProperty(autoText, StyleConstants.STYLE_DISPLAY, "block") ) ) );
+		emitContent(state,autoText,autoText.getText(), ( ! "inline".equals( state.getStyleCache().getDisplay( autoText ) ) ) );
 		state.setHandler(parent);
 	}
 
@@ -62,7 +61,7 @@ public class NestedListContentHandler extends CellContentHandler {
 		if ( IForeignContent.HTML_TYPE.equalsIgnoreCase( foreign.getRawType( ) ) )
 		{
 			HTML2Content.html2Content( foreign );
-			contentVisitor.visitChildren( foreign, null );			
+			getContentVisitor().visitChildren( foreign, null );			
 		}
 		state.setHandler(parent);
 	}
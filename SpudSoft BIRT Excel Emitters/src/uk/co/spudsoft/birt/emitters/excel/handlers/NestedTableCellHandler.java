@@ -1,14 +1,24 @@
 package uk.co.spudsoft.birt.emitters.excel.handlers;
 
 import org.eclipse.birt.report.engine.content.ICellContent;
+import org.eclipse.birt.report.engine.content.IContent;
 import org.eclipse.birt.report.engine.emitter.IContentEmitter;
 
 import uk.co.spudsoft.birt.emitters.excel.framework.Logger;
 
 public class NestedTableCellHandler extends AbstractRealTableCellHandler {
 
+	private int colOffset;
+	
 	public NestedTableCellHandler(IContentEmitter emitter, Logger log, IHandler parent, ICellContent cell, int colOffset) {
 		super(emitter, log, parent, cell);
+		this.colOffset = colOffset;
 		column = cell.getColumn() + colOffset;
 	}
+
+	@Override
+	protected void reuse(IContent element) {
+		super.reuse(element);
+		column = ((ICellContent)element).getColumn() + colOffset;
+	}
 }
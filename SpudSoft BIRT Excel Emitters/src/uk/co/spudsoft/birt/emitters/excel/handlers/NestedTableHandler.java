@@ -15,6 +15,10 @@ public class NestedTableHandler extends AbstractRealTableHandler {
 	private Coordinate topLeft;
 	private Coordinate bottomRight;
 	private int parentRowSpan;
+	/**
+	 * The handler for the previous row, which is reused for the next row.
+	 */
+	private NestedTableRowHandler rowHandler;
 	
 	@Override
 	public String toString() {
@@ -34,11 +38,24 @@ public class NestedTableHandler extends AbstractRealTableHandler {
 		return ( ( topLeft.getRow() <= rowNum ) && ( bottomRight.getRow() >= rowNum ) );
 	}
 	
+	public boolean endsAbove( int rowNum ) {
+		return bottomRight.getRow() < rowNum;
+	}
+	
+	/**
+	 * The only row of the parent that this table can extend, which is the last row spanned by the parent cell.
+	 */
+	public int getExtendedParentRow() {
+		return topLeft.getRow() + parentRowSpan - 1;
+	}
+	
 	public int extendParentsRowBy( int rowNum ) {
 		if( rowNum == topLeft.getRow() + parentRowSpan - 1 ) {
 			if( bottomRight.getRow() - topLeft.getRow() >= parentRowSpan - 1 ) {
 				int extension = 2 + bottomRight.getRow() - topLeft.getRow() - parentRowSpan;
-				log.debug( "Nested table ", this, " extends row ", rowNum, " by ", extension );
+				if( log.isDebugEnabled() ) {
+					log.debug( "Nested table ", this, " extends row ", rowNum, " by ", extension );
+				}
 				return extension;
 			}
 		}
@@ -49,7 +66,9 @@ public class NestedTableHandler extends AbstractRealTableHandler {
 	public void startTable(HandlerState state, ITableContent table) throws BirtException {
 		--state.colNum;
 		topLeft = new Coordinate(state.rowNum, state.colNum);
-		log.debug( "startTable called with topLeft = [", topLeft.getRow(), ", ", topLeft.getCol(), "]" );
+		if( log.isDebugEnabled() ) {
+			log.debug( "startTable called with topLeft = [", topLeft.getRow(), ", ", topLeft.getCol(), "]" );
+		}
 		super.startTable(state, table);
 		if( state.sheetName == null ) {
 			String name = table.getName();
@@ -61,8 +80,14 @@ public class NestedTableHandler extends AbstractRealTableHandler {
 
 	@Override
 	public void startRow(HandlerState state, IRowContent row) throws BirtException {
-		log.debug( "startRow called with topLeft = [", topLeft.getRow(), ", ", topLeft.getCol(), "]" );
-		NestedTableRowHandler rowHandler = new NestedTableRowHandler(log, this, row, topLeft.getCol());
+		if( log.isDebugEnabled() ) {
+			log.debug( "startRow called with topLeft = [", topLeft.getRow(), ", ", topLeft.getCol(), "]" );
+		}
+		if( rowHandler != null ) {
+			rowHandler.reuse(row);
+		} else {
+			rowHandler = new NestedTableRowHandler(log, this, row, topLeft.getCol());
+		}
 		
 		state.setHandler(rowHandler);
 		state.getHandler().startRow(state, row);
@@ -72,13 +97,17 @@ public class NestedTableHandler extends AbstractRealTableHandler {
 	public void endTable(HandlerState state, ITableContent table) throws BirtException {
 
 		bottomRight = new Coordinate(state.rowNum - 1, state.colNum);
+		// This handler is kept by its container, so let go of the handlers for its rows
+		rowHandler = null;
 		
 		super.endTable(state, table);
 
 		// Parent could be a ListHandler (all derive from TopLevelListHandler) or a CellHandler
 		// If it's a cell handler we need to undo the rowNum increment from the last nested table row
 		if( ! ( parent instanceof TopLevelListHandler ) ) {
-			log.debug( "Decrementing rowNum from ", state.rowNum );
+			if( log.isDebugEnabled() ) {
+				log.debug( "Decrementing rowNum from ", state.rowNum );
+			}
 			--state.rowNum;
 			--state.colNum;
 		}
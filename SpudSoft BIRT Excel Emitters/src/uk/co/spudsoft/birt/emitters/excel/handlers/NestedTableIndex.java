@@ -0,0 +1,93 @@
+package uk.co.spudsoft.birt.emitters.excel.handlers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * NestedTableIndex records the nested tables that have been completed within a table or list, for use as the rows of the container end.
+ * <p>
+ * A row can only be extended by a nested table that started on the last row spanned by its parent cell, 
+ * so the nested table that extends each row the furthest is found when the table is added.
+ * </p><p>
+ * Nested tables that end above the most recently queried row are retired from the tables considered by rowHasNestedTable.
+ * Rows are usually queried in increasing order, so a query above the retired rows falls back to considering every nested table.
+ * </p>
+ * @author Jim Talbut
+ *
+ */
+public class NestedTableIndex {
+	
+	/**
+	 * Every nested table, in the order added.
+	 */
+	private List<NestedTableHandler> tables = new ArrayList<NestedTableHandler>();
+	/**
+	 * The nested tables that end on or below activeFromRow, in the order added.
+	 */
+	private List<NestedTableHandler> activeTables = new ArrayList<NestedTableHandler>();
+	/**
+	 * Every nested table that ends above this row has been removed from activeTables.
+	 */
+	private int activeFromRow;
+	/**
+	 * The first nested table to extend each row by the largest amount, by row.
+	 */
+	private Map<Integer, NestedTableHandler> extendingTables = new HashMap<Integer, NestedTableHandler>();
+	
+	public void add( NestedTableHandler nestedTableHandler ) {
+		tables.add( nestedTableHandler );
+		if( ! nestedTableHandler.endsAbove( activeFromRow ) ) {
+			activeTables.add( nestedTableHandler );
+		}
+		
+		int extendedRow = nestedTableHandler.getExtendedParentRow();
+		NestedTableHandler current = extendingTables.get( extendedRow );
+		if( ( current == null ) 
+				|| ( nestedTableHandler.extendParentsRowBy( extendedRow ) > current.extendParentsRowBy( extendedRow ) ) ) {
+			extendingTables.put( extendedRow, nestedTableHandler );
+		}
+	}
+	
+	/**
+	 * Find a nested table that includes a row.
+	 * @param rowNum
+	 * The row.
+	 * @return
+	 * The first nested table added that includes the row, or null if no nested table includes it.
+	 */
+	public NestedTableHandler findTableIncluding( int rowNum ) {
+		List<NestedTableHandler> candidates = tables;
+		if( rowNum >= activeFromRow ) {
+			if( rowNum > activeFromRow ) {
+				for( Iterator<NestedTableHandler> iter = activeTables.iterator(); iter.hasNext(); ) {
+					if( iter.next().endsAbove( rowNum ) ) {
+						iter.remove();
+					}
+				}
+				activeFromRow = rowNum;
+			}
+			candidates = activeTables;
+		}
+		for( NestedTableHandler nestedTableHandler : candidates ) {
+			if( nestedTableHandler.includesRow( rowNum ) ) {
+				return nestedTableHandler;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Find the nested table that extends a row the furthest.
+	 * @param rowNum
+	 * The row.
+	 * @return
+	 * The first nested table added that extends the row by the largest amount, or null if no nested table can extend the row.
+	 */
+	public NestedTableHandler findTableExtending( int rowNum ) {
+		return extendingTables.get( rowNum );
+	}
+
+}
@@ -9,20 +9,34 @@ import uk.co.spudsoft.birt.emitters.excel.framework.Logger;
 
 public class NestedTableRowHandler extends AbstractRealTableRowHandler {
 
+	/**
+	 * The handler for the previous cell, which is reused for the next cell if possible.
+	 */
+	private NestedTableCellHandler cellHandler;
+
 	public NestedTableRowHandler(Logger log, IHandler parent, IRowContent row, int startCol) {
 		super(log, parent, row, startCol);
 	}
 
 	@Override
 	public void startRow(HandlerState state, IRowContent row) throws BirtException {
-		log.debug( "startRow called with colOffset = ", startCol );
+		if( log.isDebugEnabled() ) {
+			log.debug( "startRow called with colOffset = ", startCol );
+		}
 		super.startRow(state, row);
 	}
 
 	@Override
 	public void startCell(HandlerState state, ICellContent cell) throws BirtException {
-		log.debug( "startCell called with colOffset = ", startCol );
-		state.setHandler(new NestedTableCellHandler(state.getEmitter(), log, this, cell, startCol));
+		if( log.isDebugEnabled() ) {
+			log.debug( "startCell called with colOffset = ", startCol );
+		}
+		if( ( cellHandler != null ) && cellHandler.isReusable() ) {
+			cellHandler.reuse(cell);
+		} else {
+			cellHandler = new NestedTableCellHandler(state.getEmitter(), log, this, cell, startCol);
+		}
+		state.setHandler(cellHandler);
 		state.getHandler().startCell(state, cell);
 	}
 
@@ -1,13 +1,14 @@
 package uk.co.spudsoft.birt.emitters.excel.handlers;
 
+import java.io.IOException;
 import java.util.Collection;
+import java.util.Iterator;
 
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.ClientAnchor;
 import org.apache.poi.ss.usermodel.Drawing;
 import org.apache.poi.ss.usermodel.HeaderFooter;
 import org.apache.poi.ss.usermodel.PrintSetup;
-import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.eclipse.birt.core.exception.BirtException;
 import org.eclipse.birt.report.engine.content.IAutoTextContent;
@@ -103,7 +104,7 @@ public class PageHandler extends AbstractHandler {
 	private void outputStructuredHeaderFooter( HandlerState state, Collection birtHeaderFooter ) throws BirtException {
 		ContentEmitterVisitor visitor = new ContentEmitterVisitor(state.getEmitter());
 		for( Object content : birtHeaderFooter ) {
-			System.out.println( "content type = " + content.getClass() );
+			log.debug( "Structured header/footer content type = ", content.getClass() );
 			if( content instanceof IContent ) {
 				visitor.visit((IContent)content, null);
 			}
@@ -114,32 +115,34 @@ public class PageHandler extends AbstractHandler {
 	@Override
 	public void startPage(HandlerState state, IPageContent page) throws BirtException {
 		
-		if( EmitterServices.booleanOption( state.getRenderOptions(), page, ExcelEmitter.SINGLE_SHEET, false )  
+		if( state.getOptions().booleanOption( page, ExcelEmitter.SINGLE_SHEET, false )  
 				&& ( state.getWb().getNumberOfSheets() > 0 ) ) {
 			return ;
 		}
 		
 	    state.currentSheet = state.getWb().createSheet();
+	    state.getMetrics().addSheet();
+	    state.applyStreamingWindow();
 		log.debug("Page type: ", page.getPageType());
 		
 		if( page.getPageType() != null ) {
 			setupPageSize(state, page);
 		}
 		
-		if( EmitterServices.booleanOption( state.getRenderOptions(), page, ExcelEmitter.DISPLAYFORMULAS_PROP, false ) ) {
+		if( state.getOptions().booleanOption( page, ExcelEmitter.DISPLAYFORMULAS_PROP, false ) ) {
 			state.currentSheet.setDisplayFormulas(true);
 		}
-		if( ! EmitterServices.booleanOption( state.getRenderOptions(), page, ExcelEmitter.DISPLAYGRIDLINES_PROP, true ) ) {
+		if( ! state.getOptions().booleanOption( page, ExcelEmitter.DISPLAYGRIDLINES_PROP, true ) ) {
 			state.currentSheet.setDisplayGridlines(false);
 		}
-		if( ! EmitterServices.booleanOption( state.getRenderOptions(), page, ExcelEmitter.DISPLAYROWCOLHEADINGS_PROP, true ) ) {
+		if( ! state.getOptions().booleanOption( page, ExcelEmitter.DISPLAYROWCOLHEADINGS_PROP, true ) ) {
 			state.currentSheet.setDisplayRowColHeadings(false);
 		}
-		if( ! EmitterServices.booleanOption( state.getRenderOptions(), page, ExcelEmitter.DISPLAYZEROS_PROP, true ) ) {
+		if( ! state.getOptions().booleanOption( page, ExcelEmitter.DISPLAYZEROS_PROP, true ) ) {
 			state.currentSheet.setDisplayZeros(false);
 		}
 		
-		if( EmitterServices.booleanOption( state.getRenderOptions(), page, ExcelEmitter.STRUCTURED_HEADER, false ) ) {
+		if( state.getOptions().booleanOption( page, ExcelEmitter.STRUCTURED_HEADER, false ) ) {
 			outputStructuredHeaderFooter(state, page.getHeader());
 		} else {
 			processHeaderFooter(state, page.getHeader(), state.currentSheet.getHeader() );
@@ -152,12 +155,12 @@ public class PageHandler extends AbstractHandler {
 	@Override
 	public void endPage(HandlerState state, IPageContent page) throws BirtException {
 		
-		if( EmitterServices.booleanOption( state.getRenderOptions(), page, ExcelEmitter.SINGLE_SHEET, false )  
+		if( state.getOptions().booleanOption( page, ExcelEmitter.SINGLE_SHEET, false )  
 			&& ! state.reportEnding ) {
 			return ;
 		}		
 		
-		if( EmitterServices.booleanOption( state.getRenderOptions(), page, ExcelEmitter.STRUCTURED_HEADER, false ) ) {
+		if( state.getOptions().booleanOption( page, ExcelEmitter.STRUCTURED_HEADER, false ) ) {
 			outputStructuredHeaderFooter(state, page.getFooter());
 		} 
 		
@@ -175,30 +178,54 @@ public class PageHandler extends AbstractHandler {
 			state.sheetName = null;
 		} 
 
-		Drawing drawing = null;
-		if( ! state.images.isEmpty() ) {
-			drawing = state.currentSheet.createDrawingPatriarch();
-		}
-		for( CellImage cellImage : state.images ) {
-			processCellImage(state,drawing,cellImage);
+		state.resolveRowHeights();
+		processCellImages(state, Integer.MAX_VALUE);
+		state.addMergedRegionsToSheet();
+		try {
+			state.spillCurrentSheet();
+		} catch( IOException ex ) {
+			throw new BirtException( EmitterServices.getPluginName()
+					, "Unable to write sheet \"{0}\" to temporary file"
+					, new Object[] { state.currentSheet.getSheetName() }
+					, null
+					, ex 
+					);
 		}
-		state.images.clear();
 		state.rowNum = 0;
 		state.colNum = 0;
 		state.clearRowSpans();
-		state.areaBorders.clear();
+		state.clearBorderOverloads();
 		
 		state.currentSheet = null;
 	}
 	
-	private CellRangeAddress getMergedRegionBegunBy( Sheet sheet, int row, int col ) {
-		for( int i = 0; i < sheet.getNumMergedRegions(); ++i ) {
-			CellRangeAddress range = sheet.getMergedRegion(i);
-			if( ( range.getFirstColumn() == col ) && ( range.getFirstRow() == row ) ) {
-				return range;
+	/**
+	 * <p>
+	 * Place the images from the images list on the sheet and remove them from the list.
+	 * </p><p>
+	 * When streaming this is called as each top level row ends, so that images are placed before their rows leave the row access window.
+	 * </p>
+	 * @param limitRow
+	 * Only images whose rows (including any rows spanned) are all above this row will be placed.
+	 */
+	void processCellImages( HandlerState state, int limitRow ) {
+		if( state.images.isEmpty() ) {
+			return ;
+		}
+		long start = System.nanoTime();
+		Drawing drawing = null;
+		for( Iterator<CellImage> iter = state.images.iterator(); iter.hasNext(); ) {
+			CellImage cellImage = iter.next();
+			Coordinate location = cellImage.location;
+			if( location.getRow() + state.findRowsSpanned( location.getRow(), location.getCol() ) < limitRow ) {
+				if( drawing == null ) {
+					drawing = state.currentSheet.createDrawingPatriarch();
+				}
+				processCellImage(state,drawing,cellImage);
+				iter.remove();
 			}
 		}
-		return null;
+		state.getMetrics().addImagePlacementTime( System.nanoTime() - start );
 	}
 
 	/**
@@ -213,6 +240,10 @@ public class PageHandler extends AbstractHandler {
 	private void processCellImage( HandlerState state, Drawing drawing, CellImage cellImage ) {
 		Coordinate location = cellImage.location;
 		
+		if( state.currentSheet.getRow( location.getRow() ) == null ) {
+			log.warn( 0, "Row " + location.getRow() + " is no longer available, image cannot be placed", null );
+			return ;
+		}
 		Cell cell = state.currentSheet.getRow( location.getRow() ).getCell( location.getCol() );
 
 		IImageContent image = cellImage.image;		
@@ -235,7 +266,7 @@ public class PageHandler extends AbstractHandler {
             mmWidth = ClientAnchorConversions.pixels2Millimetres( image.getWidth().getMeasure() );
         }
 		// Allow image to span multiple columns
-		CellRangeAddress mergedRegion = getMergedRegionBegunBy( state.currentSheet, location.getRow(), location.getCol() );
+		CellRangeAddress mergedRegion = state.getMergedRegionBegunBy( location.getRow(), location.getCol() );
 		if( (cellImage.spanColumns) || ( mergedRegion != null ) ) {
 	        log.debug( "Image size: ", image.getWidth(), " translates as mmWidth = ", mmWidth );
 	        if( mmWidth > 0) {
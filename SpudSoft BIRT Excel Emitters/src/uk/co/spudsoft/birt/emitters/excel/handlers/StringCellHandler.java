@@ -12,7 +12,6 @@ import org.eclipse.birt.report.engine.content.IImageContent;
 import org.eclipse.birt.report.engine.content.ILabelContent;
 import org.eclipse.birt.report.engine.content.ITableContent;
 import org.eclipse.birt.report.engine.content.ITextContent;
-import org.eclipse.birt.report.engine.css.engine.StyleConstants;
 import org.eclipse.birt.report.engine.emitter.IContentEmitter;
 import org.eclipse.birt.report.engine.layout.pdf.util.HTML2Content;
 
@@ -45,15 +44,15 @@ public class StringCellHandler extends CellContentHandler {
 
 	public void visit( Object obj ) throws BirtException {
 		if( obj instanceof ICellContent ) {
-			contentVisitor.visitCell( (ICellContent)obj, null );
+			getContentVisitor().visitCell( (ICellContent)obj, null );
 		} else if( obj instanceof ILabelContent ) {
-			contentVisitor.visitLabel( (ILabelContent)obj, null );
+			getContentVisitor().visitLabel( (ILabelContent)obj, null );
 		} else if( obj instanceof ITextContent ) {
-			contentVisitor.visitText( (ITextContent)obj, null );
+			getContentVisitor().visitText( (ITextContent)obj, null );
 		}  else if( obj instanceof IAutoTextContent ) {
-			contentVisitor.visitAutoText( (IAutoTextContent)obj, null );
+			getContentVisitor().visitAutoText( (IAutoTextContent)obj, null );
 		}  else if( obj instanceof IForeignContent ) {
-			contentVisitor.visitForeign( (IForeignContent)obj, null );
+			getContentVisitor().visitForeign( (IForeignContent)obj, null );
 		} else {
 			log.warn(0, "Not visiting " + obj.getClass(), null);
 		}
@@ -86,24 +85,26 @@ public class StringCellHandler extends CellContentHandler {
 	public void emitText(HandlerState state, ITextContent text) throws BirtException {
 		String textText = text.getText();
 		log.debug( "text:", textText );
-		emitContent(state,text,textText, ( ! "inline".equals( getStyleProperty(text, StyleConstants.STYLE_DISPLAY, "block") ) ) );
+		emitContent(state,text,textText, ( ! "inline".equals( state.getStyleCache().getDisplay( text ) ) ) );
 	}
 
 	@Override
 	public void emitData(HandlerState state, IDataContent data) throws BirtException {
-		emitContent(state,data,data.getValue(), ( ! "inline".equals( getStyleProperty(data, StyleConstants.STYLE_DISPLAY, "block") ) ) );
+		emitContent(state,data,data.getValue(), ( ! "inline".equals( state.getStyleCache().getDisplay( data ) ) ) );
 	}
 
 	@Override
 	public void emitLabel(HandlerState state, ILabelContent label) throws BirtException {
 		String labelText = ( label.getLabelText() != null ) ? label.getLabelText() : label.getText();
-		log.debug( "labelText:" + labelText );
-		emitContent(state,label,labelText, ( ! "inline".equals( getStyleProperty(label, StyleConstants.STYLE_DISPLAY, "block") ) ));
+		if( log.isDebugEnabled() ) {
+			log.debug( "labelText:" + labelText );
+		}
+		emitContent(state,label,labelText, ( ! "inline".equals( state.getStyleCache().getDisplay( label ) ) ));
 	}
 
 	@Override
 	public void emitAutoText(HandlerState state, IAutoTextContent autoText) throws BirtException {
-		emitContent(state,autoText,autoText.getText(), ( ! "inline".equals( getStyleProperty(autoText, StyleConstants.STYLE_DISPLAY, "block") ) ) );
+		emitContent(state,autoText,autoText.getText(), ( ! "inline".equals( state.getStyleCache().getDisplay( autoText ) ) ) );
 	}
 
 	@Override
@@ -113,7 +114,7 @@ public class StringCellHandler extends CellContentHandler {
 		if ( IForeignContent.HTML_TYPE.equalsIgnoreCase( foreign.getRawType( ) ) )
 		{
 			HTML2Content.html2Content( foreign );
-			contentVisitor.visitChildren( foreign, null );			
+			getContentVisitor().visitChildren( foreign, null );			
 		}
 	}
 
@@ -123,7 +124,7 @@ public class StringCellHandler extends CellContentHandler {
 
 	@Override
 	public void endContainer(HandlerState state, IContainerContent container) throws BirtException {
-		lastCellContentsWasBlock = ( ! "inline".equals( getStyleProperty(container, StyleConstants.STYLE_DISPLAY, "block") ) );
+		lastCellContentsWasBlock = ( ! "inline".equals( state.getStyleCache().getDisplay( container ) ) );
 	}
 			
 	
@@ -7,7 +7,6 @@ import org.eclipse.birt.report.engine.content.IForeignContent;
 import org.eclipse.birt.report.engine.content.IImageContent;
 import org.eclipse.birt.report.engine.content.ILabelContent;
 import org.eclipse.birt.report.engine.content.ITextContent;
-import org.eclipse.birt.report.engine.css.engine.StyleConstants;
 import org.eclipse.birt.report.engine.emitter.IContentEmitter;
 import org.eclipse.birt.report.engine.layout.pdf.util.HTML2Content;
 
@@ -26,8 +25,9 @@ public class TopLevelContentHandler extends CellContentHandler {
 	public void emitText(HandlerState state, ITextContent text) throws BirtException {
 		log.debug( "Creating row ", state.rowNum, " for text" );
 		state.currentSheet.createRow( state.rowNum );
+		state.getMetrics().addRow();
 
-		emitContent(state, text, text.getText(), ( ! "inline".equals( getStyleProperty(text, StyleConstants.STYLE_DISPLAY, "block") ) ) );
+		emitContent(state, text, text.getText(), ( ! "inline".equals( state.getStyleCache().getDisplay( text ) ) ) );
 
 		Cell currentCell = state.currentSheet.getRow(state.rowNum).createCell( 0 );
 		currentCell.setCellType(Cell.CELL_TYPE_BLANK);
@@ -42,8 +42,9 @@ public class TopLevelContentHandler extends CellContentHandler {
 	public void emitData(HandlerState state, IDataContent data) throws BirtException {
 		log.debug( "Creating row ", state.rowNum, " for data" );
 		state.currentSheet.createRow( state.rowNum );
+		state.getMetrics().addRow();
 
-		emitContent(state, data, data.getValue(), ( ! "inline".equals( getStyleProperty(data, StyleConstants.STYLE_DISPLAY, "block") ) ) );
+		emitContent(state, data, data.getValue(), ( ! "inline".equals( state.getStyleCache().getDisplay( data ) ) ) );
 
 		Cell currentCell = state.currentSheet.getRow(state.rowNum).createCell( 0 );
 		currentCell.setCellType(Cell.CELL_TYPE_BLANK);
@@ -58,9 +59,10 @@ public class TopLevelContentHandler extends CellContentHandler {
 	public void emitLabel(HandlerState state, ILabelContent label) throws BirtException {
 		log.debug( "Creating row ", state.rowNum, " for label" );
 		state.currentSheet.createRow( state.rowNum );
+		state.getMetrics().addRow();
 
 		String labelText = ( label.getLabelText() != null ) ? label.getLabelText() : label.getText();
-		emitContent(state,label,labelText, ( ! "inline".equals( getStyleProperty(label, StyleConstants.STYLE_DISPLAY, "block") ) ));
+		emitContent(state,label,labelText, ( ! "inline".equals( state.getStyleCache().getDisplay( label ) ) ));
 
 		Cell currentCell = state.currentSheet.getRow(state.rowNum).createCell( 0 );
 		currentCell.setCellType(Cell.CELL_TYPE_BLANK);
@@ -78,7 +80,7 @@ public class TopLevelContentHandler extends CellContentHandler {
 		if ( IForeignContent.HTML_TYPE.equalsIgnoreCase( foreign.getRawType( ) ) )
 		{
 			HTML2Content.html2Content( foreign );
-			contentVisitor.visitChildren( foreign, null );			
+			getContentVisitor().visitChildren( foreign, null );			
 		}
 		
 		state.setHandler(parent);
@@ -88,6 +90,7 @@ public class TopLevelContentHandler extends CellContentHandler {
 	public void emitImage(HandlerState state, IImageContent image) throws BirtException {
 		log.debug( "Creating row ", state.rowNum, " for image" );
 		state.currentSheet.createRow( state.rowNum );
+		state.getMetrics().addRow();
 
 		recordImage(state, new Coordinate( state.rowNum, 0 ), image, true);
 		Cell currentCell = state.currentSheet.getRow(state.rowNum).createCell( 0 );
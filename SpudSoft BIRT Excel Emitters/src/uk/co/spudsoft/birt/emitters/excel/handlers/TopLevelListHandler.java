@@ -17,7 +17,6 @@ import org.eclipse.birt.report.engine.css.engine.value.css.CSSConstants;
 import org.eclipse.birt.report.engine.ir.ListGroupDesign;
 
 import uk.co.spudsoft.birt.emitters.excel.BirtStyle;
-import uk.co.spudsoft.birt.emitters.excel.EmitterServices;
 import uk.co.spudsoft.birt.emitters.excel.ExcelEmitter;
 import uk.co.spudsoft.birt.emitters.excel.HandlerState;
 import uk.co.spudsoft.birt.emitters.excel.framework.Logger;
@@ -59,7 +58,7 @@ public class TopLevelListHandler extends AbstractRealListHandler {
 		
 		
 		Object groupDesignObject = group.getGenerateBy();
-		System.err.println( "List group generated by " + group.getGenerateBy() );
+		log.debug( "List group generated by ", groupDesignObject );
 		if( groupDesignObject instanceof ListGroupDesign ) {
 			ListGroupDesign groupDesign = (ListGroupDesign)groupDesignObject;
 			if( CSSConstants.CSS_ALWAYS_VALUE.equals( groupDesign.getPageBreakBefore() )
@@ -85,7 +84,7 @@ public class TopLevelListHandler extends AbstractRealListHandler {
 			boolean disableGrouping = false;
 			
 			// Report user props and context first
-			if( EmitterServices.booleanOption( state.getRenderOptions(), group, ExcelEmitter.DISABLE_GROUPING, false ) ) {
+			if( state.getOptions().booleanOption( group, ExcelEmitter.DISABLE_GROUPING, false ) ) {
 				disableGrouping = true;
 			}
 
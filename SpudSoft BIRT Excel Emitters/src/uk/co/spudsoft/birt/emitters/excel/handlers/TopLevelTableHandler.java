@@ -8,7 +8,6 @@ import org.eclipse.birt.report.engine.content.IRowContent;
 import org.eclipse.birt.report.engine.content.ITableContent;
 import org.eclipse.birt.report.engine.content.ITableGroupContent;
 
-import uk.co.spudsoft.birt.emitters.excel.EmitterServices;
 import uk.co.spudsoft.birt.emitters.excel.ExcelEmitter;
 import uk.co.spudsoft.birt.emitters.excel.HandlerState;
 import uk.co.spudsoft.birt.emitters.excel.framework.Logger;
@@ -16,6 +15,10 @@ import uk.co.spudsoft.birt.emitters.excel.framework.Logger;
 public class TopLevelTableHandler extends AbstractRealTableHandler {
 	
 	private Stack<Integer> groupStarts;
+	/**
+	 * The handler for the previous row, which is reused for the next row.
+	 */
+	private TopLevelTableRowHandler rowHandler;
 	
 	public TopLevelTableHandler(Logger log,IHandler parent, ITableContent table) {
 		super(log, parent, table);
@@ -35,7 +38,7 @@ public class TopLevelTableHandler extends AbstractRealTableHandler {
 	public void endTable(HandlerState state, ITableContent table) throws BirtException {
 		super.endTable(state, table);
 		
-		boolean autoFilter = EmitterServices.booleanOption( state.getRenderOptions(), table, ExcelEmitter.AUTO_FILTER, false );
+		boolean autoFilter = state.getOptions().booleanOption( table, ExcelEmitter.AUTO_FILTER, false );
 		if( autoFilter ) {
 			log.debug( "Applying auto filter to [", this.startRow, ",", this.startCol, "] - [", this.endDetailsRow, ",", state.colNum - 1, "]" );
 			CellRangeAddress wholeTable = new CellRangeAddress(startRow, endDetailsRow, startCol, state.colNum - 1);
@@ -47,7 +50,12 @@ public class TopLevelTableHandler extends AbstractRealTableHandler {
 
 	@Override
 	public void startRow(HandlerState state, IRowContent row) throws BirtException {
-		state.setHandler(new TopLevelTableRowHandler(log, this, row));
+		if( rowHandler != null ) {
+			rowHandler.reuse(row);
+		} else {
+			rowHandler = new TopLevelTableRowHandler(log, this, row);
+		}
+		state.setHandler(rowHandler);
 		state.getHandler().startRow(state, row);
 	}
 
@@ -67,11 +75,12 @@ public class TopLevelTableHandler extends AbstractRealTableHandler {
 			boolean disableGrouping = false;
 			
 			// Report user props and context first
-			if( EmitterServices.booleanOption( state.getRenderOptions(), group, ExcelEmitter.DISABLE_GROUPING, false ) ) {
+			if( state.getOptions().booleanOption( group, ExcelEmitter.DISABLE_GROUPING, false ) ) {
 				disableGrouping = true;
 			}
 
-			if( ! disableGrouping ) {
+			// SXSSF groups rows by creating them in the workbook it wraps, which would duplicate the rows it has streamed
+			if( ! disableGrouping && ! state.isStreaming() ) {
 				state.currentSheet.groupRow(start, state.rowNum - 2);
 			}
 		}
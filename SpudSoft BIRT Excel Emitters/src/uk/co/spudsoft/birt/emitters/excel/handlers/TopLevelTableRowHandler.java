@@ -9,6 +9,11 @@ import uk.co.spudsoft.birt.emitters.excel.framework.Logger;
 
 public class TopLevelTableRowHandler extends AbstractRealTableRowHandler {
 
+	/**
+	 * The handler for the previous cell, which is reused for the next cell if possible.
+	 */
+	private TopLevelTableCellHandler cellHandler;
+
 	public TopLevelTableRowHandler(Logger log, IHandler parent, IRowContent row) {
 		super(log, parent, row, 0);
 	}
@@ -21,7 +26,12 @@ public class TopLevelTableRowHandler extends AbstractRealTableRowHandler {
 
 	@Override
 	public void startCell(HandlerState state, ICellContent cell) throws BirtException {
-		state.setHandler(new TopLevelTableCellHandler(state.getEmitter(), log, this, cell));
+		if( ( cellHandler != null ) && cellHandler.isReusable() ) {
+			cellHandler.reuse(cell);
+		} else {
+			cellHandler = new TopLevelTableCellHandler(state.getEmitter(), log, this, cell);
+		}
+		state.setHandler(cellHandler);
 		state.getHandler().startCell(state, cell);
 	}
 	